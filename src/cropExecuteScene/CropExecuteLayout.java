@@ -632,7 +632,7 @@ public class CropExecuteLayout extends VBox implements CreatorScene {
             @Override
             public void run() {
                 lpImagesGrid.setSelectedTile(lpImagesGrid.getGridTiles()[0]);
-                imageCropPane.setImage(lpImagesGrid.getGridTiles()[0].getImage());
+                imageCropPane.setImage(lpImagesGrid.getGridTiles()[0]);
             }
         });
     }
@@ -644,8 +644,8 @@ public class CropExecuteLayout extends VBox implements CreatorScene {
      */
     public void enableCrop(){
         //if there's no image in the crop pane for some reason, select the first on in the grid pane
-        if(imageCropPane.getImage() == null){
-            imageCropPane.setImage(lpImagesGrid.getAllImages()[0]);
+        if(!imageCropPane.hasImage()){
+            imageCropPane.setImage(lpImagesGrid.getGridTiles()[0]);
         }
         //make the crop rectangle appear
         useCrop = true;
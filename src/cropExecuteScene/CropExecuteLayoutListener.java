@@ -9,13 +9,20 @@ import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.stage.FileChooser;
 import main.Main;
+import utils.CropExporter;
+import utils.ImageLoader;
+import utils.LPCache;
+import utils.LPSidecar;
+import utils.LightSet;
+import utils.RasterConverter;
 import utils.Utils;
 
 import javax.imageio.ImageIO;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Consumer;
 
 /**
@@ -176,6 +183,8 @@ public class CropExecuteLayoutListener implements EventHandler<ActionEvent> {
             //otherwise, we can create an lp file straight from the images
             lpFile = createLPFileJPEGNoCrop();
         }
+        //the errors making the lp file have already been shown to the user
+        if(lpFile == null){return;}
 
         Main.showLoadingDialog("Running fitter...");
 
@@ -282,25 +291,44 @@ public class CropExecuteLayoutListener implements EventHandler<ActionEvent> {
 
         final Utils.BooleanHolder success = new Utils.BooleanHolder(true);
 
+        //images that couldn't be read, which may have been moved since the project was opened
+        final ConcurrentLinkedQueue<File> unreadable = new ConcurrentLinkedQueue<>();
+
         //convert the images in parallel
-        gridTileSet.parallelStream().forEach(new Consumer<ImageGridTile>() {
-            @Override
-            public void accept(ImageGridTile tile) {
-                //convert it to a jpeg, and replace its extension as .jpg
-                BufferedImage jpgImg = Utils.fxImageToBufferedJPEG(tile.getImage());
-                String tileNameNoExt = tile.getName().split("[.]")[0];
-                File destination = new File(convertedFolder.getAbsolutePath() + "/" + tileNameNoExt + ".jpg");
-
-                //write the file to the disk
-                try{
-                    ImageIO.write(jpgImg, "jpg", destination);
-                }catch (IOException e){
-                    e.printStackTrace();
-                    success.setTrue(false);
+        try{
+            gridTileSet.parallelStream().forEach(new Consumer<ImageGridTile>() {
+                @Override
+                public void accept(ImageGridTile tile) {
+                    Image frame = tile.getImage();
+                    if(frame == null){
+                        unreadable.add(tile.getImageFile());
+                        return;
+                    }
+
+                    //convert it to a jpeg, and replace its extension as .jpg
+                    BufferedImage jpgImg = RasterConverter.acquire(frame);
+                    String tileNameNoExt = tile.getName().split("[.]")[0];
+                    File destination = new File(convertedFolder.getAbsolutePath() + "/" + tileNameNoExt + ".jpg");
+
+                    //write the file to the disk
+                    try{
+                        ImageIO.write(jpgImg, "jpg", destination);
+                    }catch (IOException e){
+                        e.printStackTrace();
+                        success.setTrue(false);
+                    }finally{
+                        RasterConverter.release(jpgImg);
+                    }
                 }
-            }
-        });
-        Main.hideLoadingDialog();
+            });
+        }finally{
+            RasterConverter.clearPool();
+            Main.hideLoadingDialog();
+        }
+        if(!unreadable.isEmpty()){
+            Main.showFileReadingAlert("Couldn't read image: " + unreadable.peek().getAbsolutePath());
+            return null;
+        }
         if(!success.isTrue()){
             Main.showFileReadingAlert("Error in writing converted jpegs to disk.");
             return null;
@@ -344,31 +372,66 @@ public class CropExecuteLayoutListener implements EventHandler<ActionEvent> {
 
         if(firstTile.getName().endsWith(".jpg")){areJPEGS.setTrue(true);}
 
-        //crop all the image sin parallel
+        //crop all the images in parallel, only reading the crop rectangle from each file
+        ImageGridTile[] tiles = gridTileSet.toArray(new ImageGridTile[0]);
+        File[] sources = new File[tiles.length];
+        File[] destinations = new File[tiles.length];
+        for(int i = 0; i < tiles.length; i++){
+            sources[i] = tiles[i].getImageFile();
+            if(areJPEGS.isTrue()) {
+                destinations[i] = new File(croppedFolder.getAbsolutePath() + "/" + tiles[i].getName());
+            }else{
+                destinations[i] = new File(croppedFolder.getAbsolutePath() + "/" +
+                                                    tiles[i].getName().split("[.]")[0] + ".jpg");
+            }
+        }
+        boolean[] written = new CropExporter(ImageLoader.defaultNumWorkers()).export(sources, destinations,
+                                new Rectangle(cropParams[0], cropParams[1], cropParams[2], cropParams[3]));
+
+        //the images ImageIO couldn't read have to be cropped from the full image
+        HashSet<Integer> remaining = new HashSet<>();
+        for(int i = 0; i < tiles.length; i++){
+            if(!written[i]){remaining.add(i);}
+        }
+
         final Utils.BooleanHolder success = new Utils.BooleanHolder(true);
-        gridTileSet.parallelStream().forEach(new Consumer<ImageGridTile>() {
-            @Override
-            public void accept(ImageGridTile tile) {
-                Image croppedImage = Utils.cropImage(tile.getImage(), cropParams[0],
-                        cropParams[1], cropParams[2], cropParams[3]);
-                BufferedImage newImg = Utils.fxImageToBufferedJPEG(croppedImage);
-
-                File destination;
-                if(areJPEGS.isTrue()) {
-                    destination = new File(croppedFolder.getAbsolutePath() + "/" + tile.getName());
-                }else{
-                    destination = new File(croppedFolder.getAbsolutePath() + "/" +
-                                                        tile.getName().split("[.]")[0] + ".jpg");
-                }
-                try {
-                    ImageIO.write(newImg, "jpg", destination);
-                }catch(IOException e){
-                    e.printStackTrace();
-                    success.setTrue(false);
+
+        //images that couldn't be read, which may have been moved since the project was opened
+        final ConcurrentLinkedQueue<File> unreadable = new ConcurrentLinkedQueue<>();
+        try{
+            remaining.parallelStream().forEach(new Consumer<Integer>() {
+                @Override
+                public void accept(Integer index) {
+                    ImageGridTile tile = tiles[index];
+                    Image frame = tile.getImage();
+                    if(frame == null){
+                        unreadable.add(tile.getImageFile());
+                        return;
+                    }
+
+                    Image croppedImage = Utils.cropImage(frame, cropParams[0],
+                            cropParams[1], cropParams[2], cropParams[3]);
+                    BufferedImage newImg = RasterConverter.acquire(croppedImage);
+
+                    File destination = destinations[index];
+                    try {
+                        ImageIO.write(newImg, "jpg", destination);
+                    }catch(IOException e){
+                        e.printStackTrace();
+                        success.setTrue(false);
+                    }finally{
+                        RasterConverter.release(newImg);
+                    }
                 }
-            }
-        });
-        Main.hideLoadingDialog();
+            });
+        }finally{
+            RasterConverter.clearPool();
+            Main.hideLoadingDialog();
+        }
+        if(!unreadable.isEmpty()){
+            Main.showFileReadingAlert("Couldn't read image: " + unreadable.peek().getAbsolutePath());
+            return null;
+        }
         if(!success.isTrue()){
             Main.showFileReadingAlert("Error in writing cropped files to disk.");
             return null;
@@ -407,10 +470,13 @@ public class CropExecuteLayoutListener implements EventHandler<ActionEvent> {
 
         Main.showLoadingDialog("Creating new LP file...");
 
+        //the lights as they are in the new file, null until it has all been written
+        LightSet newLPData = null;
+
         BufferedWriter writer = null;
         try {
             //get the lp data from the original lp file
-            HashMap<String, Utils.Vector3f> originalLPData = Utils.readLPFile(Main.currentLPFile);
+            LightSet originalLPData = LPCache.getInstance().get(Main.currentLPFile);
             if (!newLPFile.exists()) { newLPFile.createNewFile(); }
 
             //write the number of images on the first ine fothe lp file
@@ -421,8 +487,9 @@ public class CropExecuteLayoutListener implements EventHandler<ActionEvent> {
             //location in the new lp file
             File originalImageFile;
             String name, x, y, z;
-            for(String key : originalLPData.keySet()){
-                originalImageFile = new File(key);
+            LightSet writtenData = new LightSet(originalLPData.size());
+            for(int i = 0; i < originalLPData.size(); i++){
+                originalImageFile = new File(originalLPData.getName(i));
 
                 //if the jpegs are uncropped, the name and location of the images will be the same as
                 //in the original lp file, otherwise,the location and/or extension needs tobe changed
@@ -436,12 +503,14 @@ public class CropExecuteLayoutListener implements EventHandler<ActionEvent> {
                     name = parentDirLoc + "/" + originalImageFile.getName().split("[.]")[0] + newExt;
                 }
 
-                x = String.valueOf(originalLPData.get(key).getX());
-                y = String.valueOf(originalLPData.get(key).getY());
-                z = String.valueOf(originalLPData.get(key).getZ());
+                x = String.valueOf(originalLPData.getX(i));
+                y = String.valueOf(originalLPData.getY(i));
+                z = String.valueOf(originalLPData.getZ(i));
                 //write the line tothe new lp file
                 writer.write(name + " " + x + " " + y + " " + z + System.lineSeparator());
+                writtenData.put(name, originalLPData.getX(i), originalLPData.getY(i), originalLPData.getZ(i));
             }
+            newLPData = writtenData;
 
         }catch(IOException e){
             e.printStackTrace();
@@ -461,6 +530,10 @@ public class CropExecuteLayoutListener implements EventHandler<ActionEvent> {
             }
         }
 
+        //the file could have been written over without its length or modified time changing, so read it again
+        LPCache.getInstance().remove(newLPFile);
+        if(newLPData != null){LPSidecar.write(newLPFile, newLPData);}
+
         return newLPFile;
     }
 
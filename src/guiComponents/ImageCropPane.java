@@ -1,5 +1,6 @@
 package guiComponents;
 
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.event.EventHandler;
@@ -17,6 +18,14 @@ import javafx.scene.input.PickResult;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.*;
+import utils.FrameCache;
+import utils.ImageHeaderScanner;
+import utils.ImageLoader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import static java.lang.Math.PI;
 import static java.lang.Math.ceil;
@@ -39,15 +48,33 @@ public class ImageCropPane extends BorderPane{
     /** Displays the image in the pane */
     private ImageView imageView;
 
-    /** The current image being displayed by the pane */
+    /** The current image being displayed by the pane, null while a frame is still being decoded */
     private Image image;
 
+    /** Width in pixels of the full size image the selectors are mapped to, known before the image is decoded */
+    private double imageWidth;
+
+    /** Height in pixels of the full size image the selectors are mapped to, known before the image is decoded */
+    private double imageHeight;
+
+    /** The tile whose frame is being decoded to be shown, or null if there isn't one */
+    private volatile ImageGridTile loadingTile;
+
+    /** Decodes the frames of the tiles shown off the FX thread, one at a time */
+    private ExecutorService frameLoader;
+
     /** The rectangular selector */
     private RectangleSelection bandSelection;
 
     /** The circular selector*/
     private CircleSelection circleSelection;
 
+    /** The [x, y, r] in the pixels of the image of other circles that have been chosen, shown but not movable */
+    private ArrayList<int[]> markers = new ArrayList<>();
+
+    /** The circles showing the {@link ImageCropPane#markers} */
+    private ArrayList<Circle> markerCircles = new ArrayList<>();
+
     /** Whether the rectangular selector is visible */
     private boolean cropActive = false;
 
@@ -240,7 +267,7 @@ public class ImageCropPane extends BorderPane{
      * Updates the size of the  rectangle and circular selectors when the size of the ImageCropPane is changed.
      */
     private void updatedCirclesAndRect(){
-        if(image == null){return;}
+        if(imageView.getImage() == null){return;}
 
         //fins the difference in size so we can scale the positions of the selectors by this change
         double newImageWidth = imageView.getBoundsInParent().getWidth();
@@ -251,6 +278,7 @@ public class ImageCropPane extends BorderPane{
 
         scaleCirclePos(deltaW, deltaH);
         scaleRectPos(deltaW, deltaH);
+        positionMarkers();
 
         //update the old sizes for the next change that is made
         oldImageWidth = newImageWidth;
@@ -280,11 +308,92 @@ public class ImageCropPane extends BorderPane{
      */
     public void setImage(Image image) {
         this.image = image;
+        imageWidth = image.getWidth();
+        imageHeight = image.getHeight();
+        loadingTile = null;
         imageView.setImage(image);
 
         //update the pane with the size of the image
         oldImageWidth = imageView.getBoundsInParent().getWidth();
         oldImageHeight = imageView.getBoundsInParent().getHeight();
+        positionMarkers();
+    }
+
+
+    /**
+     * Shows the full size frame of a tile in this pane. If the frame isn't in the {@link FrameCache} it is decoded on
+     * a background thread, and the tile's thumbnail is shown until it is ready, so the FX thread is never held up
+     * decoding a frame. A frame that is decoded after another tile has been shown is thrown away. Must be called on
+     * the FX thread.
+     *
+     * @param tile  tile to show the frame of
+     */
+    public void setImage(ImageGridTile tile){
+        Image frame = FrameCache.getInstance().getIfPresent(tile.getImageFile());
+        if(frame != null){
+            setImage(frame);
+            return;
+        }
+
+        //the selectors are mapped to the size of the full frame, which all the frames in the set share, so it's
+        //only read from the file if no frame has been shown yet
+        if(imageWidth <= 0){
+            try{
+                ImageHeaderScanner.ImageHeader header = ImageHeaderScanner.readHeader(tile.getImageFile());
+                imageWidth = header.getWidth();
+                imageHeight = header.getHeight();
+            }catch(IOException e){
+                e.printStackTrace();
+            }
+        }
+
+        image = null;
+        loadingTile = tile;
+        imageView.setImage(tile.getThumbnail());
+        oldImageWidth = imageView.getBoundsInParent().getWidth();
+        oldImageHeight = imageView.getBoundsInParent().getHeight();
+        positionMarkers();
+
+        if(frameLoader == null){frameLoader = ImageLoader.createExecutor("frame-loader", 1);}
+        frameLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                //the user has already moved on to another tile
+                if(loadingTile != tile){return;}
+
+                Image frame = tile.getImage();
+                Platform.runLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(loadingTile == tile && frame != null){setImage(frame);}
+                    }
+                });
+            }
+        });
+    }
+
+
+    /**
+     * @return {@link ImageCropPane#imageWidth}
+     */
+    public double getImageWidth() {
+        return imageWidth;
+    }
+
+
+    /**
+     * @return {@link ImageCropPane#imageHeight}
+     */
+    public double getImageHeight() {
+        return imageHeight;
+    }
+
+
+    /**
+     * @return whether an image or a thumbnail standing in for one is being shown
+     */
+    public boolean hasImage(){
+        return imageView.getImage() != null;
     }
 
 
@@ -293,6 +402,9 @@ public class ImageCropPane extends BorderPane{
      */
     public void clearImage(){
         this.image = null;
+        imageWidth = 0;
+        imageHeight = 0;
+        loadingTile = null;
         imageView.setImage(null);
     }
 
@@ -409,8 +521,6 @@ public class ImageCropPane extends BorderPane{
         double viewWidth = imageView.getBoundsInParent().getWidth();
         double viewHeight = imageView.getBoundsInParent().getHeight();
 
-        double imageWidth = image.getWidth();
-        double imageHeight = image.getHeight();
 
         widthField.setText(String.valueOf(Math.round(imageWidth * width / viewWidth)));
         heightField.setText(String.valueOf(Math.round(imageHeight * height / viewHeight)));
@@ -435,7 +545,6 @@ public class ImageCropPane extends BorderPane{
     public int getCropXInImage(){
         double viewWidth = imageView.getBoundsInParent().getWidth();
 
-        double imageWidth = image.getWidth();
 
         return (int) Math.round(imageWidth * bandSelection.rect.xProperty().get() / viewWidth);
     }
@@ -450,7 +559,6 @@ public class ImageCropPane extends BorderPane{
     public int getCropYInImage(){
         double viewHeight = imageView.getBoundsInParent().getHeight();
 
-        double imageHeight = image.getHeight();
 
         return (int) Math.round(imageHeight * bandSelection.rect.yProperty().get() / viewHeight);
     }
@@ -464,7 +572,6 @@ public class ImageCropPane extends BorderPane{
     public int getCropWidthInImage(){
         double viewWidth = imageView.getBoundsInParent().getWidth();
 
-        double imageWidth = image.getWidth();
 
         return (int) Math.round(imageWidth * bandSelection.rect.getWidth() / viewWidth);
     }
@@ -480,7 +587,6 @@ public class ImageCropPane extends BorderPane{
     public int getCropHeightInImage(){
         double viewHeight = imageView.getBoundsInParent().getHeight();
 
-        double imageHeight = image.getHeight();
 
         return (int) Math.round(imageHeight * bandSelection.rect.getHeight() / viewHeight);
     }
@@ -506,6 +612,67 @@ public class ImageCropPane extends BorderPane{
     }
 
 
+    /**
+     * Sets the circular selector to the position (x, y) in the image, with radius r, where these values are in the
+     * pixels of the actual image rather than the displayed image, such as a sphere found in the image by
+     * {@link utils.SphereFinder}.
+     *
+     * @param x     center x pos of the selector in the image
+     * @param y     center y pos of the selector in the image
+     * @param r     radius of the selector in the image
+     */
+    public void setCircleSelectionInImage(int x, int y, int r){
+        double viewWidth = imageView.getBoundsInParent().getWidth();
+
+
+        double onePixelDist = imageWidth / viewWidth;
+
+        setCircleSelection(x / onePixelDist, y / onePixelDist, r / onePixelDist);
+    }
+
+
+    /**
+     * Shows circles that have already been chosen, such as the other spheres in the image when there are several, as
+     * well as the circle selector. The circles are in the pixels of the image, and replace any shown before.
+     *
+     * @param circles   the [x, y, r] of each circle in the image
+     */
+    public void setMarkerCircles(List<int[]> circles){
+        imageLayer.getChildren().removeAll(markerCircles);
+        markerCircles.clear();
+        markers = new ArrayList<>(circles);
+
+        for(int i = 0; i < markers.size(); i++){
+            Circle marker = new Circle();
+            marker.setMouseTransparent(true);
+            marker.setStroke(circleSelection.circle.getStroke());
+            marker.setFill(circleSelection.circle.getFill());
+            marker.getStrokeDashArray().addAll(6.0, 4.0);
+            markerCircles.add(marker);
+        }
+        imageLayer.getChildren().addAll(markerCircles);
+        positionMarkers();
+    }
+
+
+    /**
+     * Moves the {@link ImageCropPane#markerCircles} to where their circles are in the image as it is displayed.
+     */
+    private void positionMarkers(){
+        if(imageView.getImage() == null || markers.isEmpty()){return;}
+
+        double onePixelDist = imageWidth / imageView.getBoundsInParent().getWidth();
+        if(Double.isInfinite(onePixelDist) || Double.isNaN(onePixelDist)){return;}
+
+        for(int i = 0; i < markers.size(); i++){
+            int[] xyr = markers.get(i);
+            markerCircles.get(i).setCenterX(xyr[0] / onePixelDist);
+            markerCircles.get(i).setCenterY(xyr[1] / onePixelDist);
+            markerCircles.get(i).setRadius(xyr[2] / onePixelDist);
+        }
+    }
+
+
     /**
      * Changes the colour of both the rectangle and circle selectors to the given value.
      *
@@ -530,6 +697,7 @@ public class ImageCropPane extends BorderPane{
                                             bandSelection.rect, circleSelection.centerCircle, circleSelection.circle,
                                             circleSelection.edgeCircle, circleSelection.hCenterLine,
                                             circleSelection.vCenterLine);
+        setColour(borderColour, fillColour, markerCircles.toArray(new Shape[markerCircles.size()]));
 
     }
 
@@ -557,7 +725,6 @@ public class ImageCropPane extends BorderPane{
     private int[] getCirclePosInImage(){
         double viewWidth = imageView.getBoundsInParent().getWidth();
 
-        double imageWidth = image.getWidth();
 
         double onePixelDist = imageWidth / viewWidth;
 
@@ -1,88 +1,67 @@
 package guiComponents;
 
 import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.BooleanPropertyBase;
-import javafx.css.PseudoClass;
-import javafx.event.EventHandler;
-import javafx.geometry.Insets;
-import javafx.geometry.Pos;
-import javafx.scene.Scene;
-import javafx.scene.control.CheckBox;
-import javafx.scene.control.Label;
-import javafx.scene.control.Tooltip;
-import javafx.scene.effect.DropShadow;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-import javafx.scene.input.MouseButton;
-import javafx.scene.input.MouseEvent;
-import javafx.scene.layout.BorderPane;
-import javafx.scene.layout.HBox;
-import javafx.scene.layout.VBox;
-import javafx.scene.paint.Color;
-import javafx.scene.text.TextAlignment;
-import javafx.stage.Stage;
-import main.Main;
+import utils.FrameCache;
+
+import java.io.File;
 
 /**
  * The grid tiles that are part of the {@link ScrollableImageGrid} or {@link ScrollableImageGridForCrop}. the Tiles have
- * an image in them, a name, and can have a tooltip when hovered over. When clicked the tiles become
- * highlighted like other focused widgets, and double clicking will create a new window with  a preview of the image.
- * These grid tiles are passed about in the app so that the images that the user is using do not have to be reloaded
- * everytime the scene is changed or whatever.
+ * an image in them, a name, and can have a reject comment shown as a tooltip when hovered over. When clicked the tiles
+ * become highlighted like other focused widgets, and double clicking will create a new window with  a preview of the
+ * image. These grid tiles are passed about in the app so that the images that the user is using do not have to be
+ * reloaded everytime the scene is changed or whatever. The tiles only hold a small thumbnail of their image, the full
+ * resolution image is loaded through the {@link FrameCache} when it is needed.
+ *
+ * A tile isn't a node itself, it's just the data for one. The grids only make {@link ImageGridTileView}s for the
+ * tiles that are on screen, and reuse them as the grid is scrolled, so a grid of hundreds of images is as light as a
+ * grid of a few.
  *
  * @see ScrollableImageGridForCrop
  * @see ScrollableImageGrid
+ * @see ImageGridTileView
  *
  * @author Jed Mills
  */
-public class ImageGridTile extends VBox {
+public class ImageGridTile {
 
     /** Name of the image in the grid tile*/
     private String name;
 
+    /** The file that the full resolution image of this tile is loaded from */
+    private File imageFile;
+
+    /** Small version of the image shown in the tile */
+    private Image thumbnail;
+
     /** Width of the whole tile */
     private int width;
 
     /** Height of the whole tile */
     private int height;
 
-    /** The border pane that contains the imageview */
-    private BorderPane borderPane;
-
-    /** Contains the image */
-    private ImageView imageView;
-
     /** The ScrollableImageGrid that this tile belongs to */
     private ScrollableImageGrid parent;
 
-    /** The tooltip that is displayed on mouse hover */
-    private Tooltip tooltip;
+    /** Whether the tile has a tick box */
+    private boolean hasTickBox;
 
-    /** New CSS psuedo class that allows this tile to be highlighted blue when clicked, like other JavaFX widgets */
-    private static PseudoClass TILE_SELECTED_CLASS = PseudoClass.getPseudoClass("selected");
+    /** Whether the tile can be clicked to highlight it */
+    private boolean clickable;
 
+    /** Whether a preview window opens when the tile is double clicked */
+    private boolean preview;
+
+    /** Reason the image was rejected, shown as a tooltip, or null if it hasn't been rejected */
+    private String rejectComment;
 
     /**
-     * Used for whether this tile is selected, to know if the clsss need to be styled with the blue highlight or not.
-     * This system works well with the CSS selectors.
+     * Used for whether this tile is selected, to know if the views showing it need to be styled with the blue
+     * highlight or not. This system works well with the CSS selectors.
      */
-    BooleanProperty selected = new BooleanPropertyBase(false) {
-
-        @Override
-        public void invalidated(){
-            pseudoClassStateChanged(TILE_SELECTED_CLASS, get());
-        }
-
-        @Override
-        public Object getBean() {
-            return ImageGridTile.this;
-        }
-
-        @Override
-        public String getName() {
-            return "selected";
-        }
-    };
+    private BooleanProperty selected = new SimpleBooleanProperty(this, "selected", false);
 
 
     /**
@@ -90,141 +69,49 @@ public class ImageGridTile extends VBox {
      *
      * @param parent        the ScrollableImageGrid that this tle belonsg tp
      * @param name          name for this ti;e
-     * @param image         image to display in this tile
+     * @param imageFile     file the full resolution image of this tile is loaded from
+     * @param thumbnail     small version of the image to display in this tile
      * @param width         width of the whole tile
      * @param height        height of the whole tile
      * @param hasTickBox    whether the tile has a tick box
      * @param clickable     whether the tile can be clicked to highlight it
      * @param preview       whether a preview pane will open on double click
      */
-    public ImageGridTile(ScrollableImageGrid parent, String name, Image image, int width,
+    public ImageGridTile(ScrollableImageGrid parent, String name, File imageFile, Image thumbnail, int width,
                                             int height, boolean hasTickBox, boolean clickable, boolean preview){
         this.parent = parent;
         this.name = name;
+        this.imageFile = imageFile;
+        this.thumbnail = thumbnail;
         this.width = width;
         this.height = height;
-
-        tooltip = new Tooltip();
-        tooltip.setTextAlignment(TextAlignment.JUSTIFY);
-
-        createLayout(image);
-        getStyleClass().add("imageGridTile");
-        getStylesheets().add("stylesheets/default.css");
-
-        //if it ahs previews, add a listener for the double click
-        if(preview){addPreviewListener(image);}
-        //if it can be highlighted, add a listener for teh single click
-        if(clickable){addSelectableListener();}
+        this.hasTickBox = hasTickBox;
+        this.clickable = clickable;
+        this.preview = preview;
     }
 
 
     /**
-     * Creates the layout for this grid tile.
-     *
-     * @param image the image to display in this tile.
-     */
-    private void createLayout(Image image){
-        setPrefHeight(height);
-        setPrefWidth(width);
-
-        //contains the imageview so that the black bars can shown on either side/above/below
-        borderPane = new BorderPane();
-        borderPane.setStyle("-fx-background-color: #000000;");
-        borderPane.setPrefWidth(getPrefWidth());
-        borderPane.setPrefHeight(getPrefHeight() - 20);
-            imageView = new ImageView(image);
-            imageView.setFitWidth(borderPane.getPrefWidth());
-            imageView.setFitHeight(borderPane.getPrefHeight());
-            imageView.setSmooth(true);
-            imageView.setPreserveRatio(true);
-        borderPane.setCenter(imageView);
-
-        //the labels and stuff
-        Label label = new Label(name);
-        label.setPadding(new Insets(2, 2, 2, 2));
-        HBox labelBox = new HBox();
-        labelBox.setAlignment(Pos.CENTER);
-
-        labelBox.getChildren().add(label);
-
-        getChildren().addAll(borderPane, labelBox);
-        setAlignment(Pos.TOP_CENTER);
-
-        setPadding(new Insets(5, 5, 5, 5));
-    }
-
-
-    /**
-     * Adds the listener for the double click to open a new window with the image preview.
-     *
-     * @param image     the image of thisgrid tile, that will be shown in the preview window
+     * @param selected  sets {@link ImageGridTile#selected} as the value
      */
-    private void addPreviewListener(Image image){
-        borderPane.setOnMouseClicked(new EventHandler<MouseEvent>() {
-            @Override
-            public void handle(MouseEvent mouseEvent) {
-
-                if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
-                    if (mouseEvent.getClickCount() == 2) {
-                        //if it'sa double click, show the preview
-                        BorderPane borderPane = new BorderPane();
-                        ImageView imageView = new ImageView();
-
-                        //show the image in the voew
-                        imageView.setImage(image);
-                        imageView.setPreserveRatio(true);
-                        imageView.setSmooth(true);
-                        imageView.setCache(true);
-                        borderPane.setCenter(imageView);
-                        borderPane.setStyle("-fx-background-color: BLACK");
-                        Stage newStage = new Stage();
-                        newStage.setWidth(300);
-                        newStage.setHeight(300);
-
-                        //make the image fit the size of the window
-                        borderPane.prefHeightProperty().bind(newStage.heightProperty());
-                        borderPane.prefWidthProperty().bind(newStage.widthProperty());
-                        imageView.fitHeightProperty().bind(borderPane.heightProperty());
-                        imageView.fitWidthProperty().bind(borderPane.widthProperty());
-
-                        //title of the window is the name ofthe tile
-                        newStage.setTitle("Preview: " + name);
-                        newStage.getIcons().add(Main.thumbnail);
-                        Scene scene = new Scene(borderPane, Color.BLACK);
-                        newStage.setScene(scene);
-                        newStage.show();
-
-                    }
-                }
-            }
-        });
+    public void setSelected(boolean selected){
+        this.selected.set(selected);
     }
 
 
     /**
-     * Adds the listener so the tile becomes highlighted when it is clicked.
+     * @return whether this tile is selected
      */
-    private void addSelectableListener(){
-        setOnMouseClicked(new EventHandler<MouseEvent>() {
-            @Override
-            public void handle(MouseEvent event) {
-                if(event.getButton().equals(MouseButton.PRIMARY)){
-                    //only a single click from the left mouse button
-                    if(event.getClickCount() == 1){
-                        parent.setSelectedTile(ImageGridTile.this);
-                    }
-                }
-            }
-        });
+    public boolean isSelected(){
+        return selected.get();
     }
 
 
-
     /**
-     * @param selected  sets {@link ImageGridTile#selected} as the value
+     * @return {@link ImageGridTile#selected}, which the views showing this tile listen to
      */
-    public void setSelected(boolean selected){
-        this.selected.set(selected);
+    public BooleanProperty selectedProperty(){
+        return selected;
     }
 
 
@@ -234,15 +121,22 @@ public class ImageGridTile extends VBox {
      * @param comment   reason for image rejection
      */
     public void setRejectComment(String comment){
-        tooltip.setText("Reject reason: " + comment);
-        Tooltip.install(this, tooltip);
+        rejectComment = comment;
     }
 
     /**
      * Removes the tooltip from this tile.
      */
     public void removeRejectComment(){
-        Tooltip.uninstall(this, tooltip);
+        rejectComment = null;
+    }
+
+
+    /**
+     * @return {@link ImageGridTile#rejectComment}
+     */
+    public String getRejectComment() {
+        return rejectComment;
     }
 
 
@@ -255,9 +149,31 @@ public class ImageGridTile extends VBox {
 
 
     /**
-     * @return the image in this tile
+     * @return {@link ImageGridTile#parent}
+     */
+    public ScrollableImageGrid getParent() {
+        return parent;
+    }
+
+
+    /**
+     * @return the full resolution image of this tile, loaded through the {@link FrameCache}
      */
-    public Image getImage(){return imageView.getImage();}
+    public Image getImage(){return FrameCache.getInstance().getImage(imageFile);}
+
+
+    /**
+     * @return {@link ImageGridTile#thumbnail}
+     */
+    public Image getThumbnail(){return thumbnail;}
+
+
+    /**
+     * @return {@link ImageGridTile#imageFile}
+     */
+    public File getImageFile() {
+        return imageFile;
+    }
 
 
     /**
@@ -282,4 +198,28 @@ public class ImageGridTile extends VBox {
         return height;
     }
 
-}
\ No newline at end of file
+
+    /**
+     * @return {@link ImageGridTile#hasTickBox}
+     */
+    public boolean hasTickBox() {
+        return hasTickBox;
+    }
+
+
+    /**
+     * @return {@link ImageGridTile#clickable}
+     */
+    public boolean isClickable() {
+        return clickable;
+    }
+
+
+    /**
+     * @return {@link ImageGridTile#preview}
+     */
+    public boolean hasPreview() {
+        return preview;
+    }
+
+}
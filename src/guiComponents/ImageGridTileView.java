@@ -0,0 +1,244 @@
+package guiComponents;
+
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.css.PseudoClass;
+import javafx.event.EventHandler;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+import javafx.stage.Stage;
+import main.Main;
+
+/**
+ * The node that shows an {@link ImageGridTile} in a {@link ScrollableImageGrid}. The grids only make enough of these
+ * for the tiles that are on screen, and as the grid is scrolled each view is given a different tile to show with
+ * {@link ImageGridTileView#setTile(ImageGridTile)}. The view shows the thumbnail and name of the tile, is highlighted
+ * when the tile is selected, and opens a preview of the full image on double click.
+ *
+ * @see ImageGridTile
+ * @see ScrollableImageGrid
+ *
+ * @author Jed Mills
+ */
+public class ImageGridTileView extends VBox {
+
+    /** The tile currently shown in this view, or null if the view is empty */
+    private ImageGridTile tile;
+
+    /** The grid this view is part of, which is told when the view is clicked */
+    private ScrollableImageGrid grid;
+
+    /** The border pane that contains the imageview */
+    private BorderPane borderPane;
+
+    /** Contains the image */
+    private ImageView imageView;
+
+    /** Shows the name of the tile */
+    private Label label;
+
+    /** The tooltip that is displayed on mouse hover */
+    private Tooltip tooltip;
+
+    /** New CSS psuedo class that allows this tile to be highlighted blue when clicked, like other JavaFX widgets */
+    private static PseudoClass TILE_SELECTED_CLASS = PseudoClass.getPseudoClass("selected");
+
+    /** Keeps the highlight of this view in step with whether the tile it's showing is selected */
+    private ChangeListener<Boolean> selectedListener = new ChangeListener<Boolean>() {
+        @Override
+        public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue) {
+            pseudoClassStateChanged(TILE_SELECTED_CLASS, newValue);
+        }
+    };
+
+
+    /**
+     * Creates a new, empty ImageGridTileView.
+     *
+     * @param grid      the grid this view is part of
+     */
+    public ImageGridTileView(ScrollableImageGrid grid){
+        this.grid = grid;
+
+        tooltip = new Tooltip();
+        tooltip.setTextAlignment(TextAlignment.JUSTIFY);
+
+        createLayout();
+        getStyleClass().add("imageGridTile");
+        getStylesheets().add("stylesheets/default.css");
+
+        addPreviewListener();
+        addSelectableListener();
+    }
+
+
+    /**
+     * Creates the layout for this view.
+     */
+    private void createLayout(){
+        //contains the imageview so that the black bars can shown on either side/above/below
+        borderPane = new BorderPane();
+        borderPane.setStyle("-fx-background-color: #000000;");
+            imageView = new ImageView();
+            imageView.setSmooth(true);
+            imageView.setPreserveRatio(true);
+        borderPane.setCenter(imageView);
+
+        //the labels and stuff
+        label = new Label();
+        label.setPadding(new Insets(2, 2, 2, 2));
+        HBox labelBox = new HBox();
+        labelBox.setAlignment(Pos.CENTER);
+
+        labelBox.getChildren().add(label);
+
+        getChildren().addAll(borderPane, labelBox);
+        setAlignment(Pos.TOP_CENTER);
+
+        setPadding(new Insets(5, 5, 5, 5));
+    }
+
+
+    /**
+     * Shows the given tile in this view, replacing the tile it was showing before.
+     *
+     * @param newTile   tile to show, or null to make the view empty
+     */
+    public void setTile(ImageGridTile newTile){
+        if(tile != null){tile.selectedProperty().removeListener(selectedListener);}
+        tile = newTile;
+
+        //empty views keep their space in the row so the other views stay lined up
+        setVisible(tile != null);
+        if(tile == null){
+            imageView.setImage(null);
+            Tooltip.uninstall(this, tooltip);
+            return;
+        }
+
+        setPrefWidth(tile.getTileWidth());
+        setPrefHeight(tile.getTileHeight());
+        borderPane.setPrefWidth(tile.getTileWidth());
+        borderPane.setPrefHeight(tile.getTileHeight() - 20);
+        imageView.setFitWidth(tile.getTileWidth());
+        imageView.setFitHeight(tile.getTileHeight() - 20);
+        imageView.setImage(tile.getThumbnail());
+        label.setText(tile.getName());
+
+        tile.selectedProperty().addListener(selectedListener);
+        pseudoClassStateChanged(TILE_SELECTED_CLASS, tile.isSelected());
+
+        if(tile.getRejectComment() != null){
+            tooltip.setText("Reject reason: " + tile.getRejectComment());
+            Tooltip.install(this, tooltip);
+        }else{
+            Tooltip.uninstall(this, tooltip);
+        }
+    }
+
+
+    /**
+     * @return {@link ImageGridTileView#tile}
+     */
+    public ImageGridTile getTile() {
+        return tile;
+    }
+
+
+    /**
+     * Adds the listener for the double click to open a new window with the image preview. The full resolution
+     * image is only loaded when the preview is opened.
+     */
+    private void addPreviewListener(){
+        borderPane.setOnMouseClicked(new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent mouseEvent) {
+                if(tile == null || !tile.hasPreview()){return;}
+
+                if (mouseEvent.getButton().equals(MouseButton.PRIMARY)) {
+                    if (mouseEvent.getClickCount() == 2) {
+                        //if it'sa double click, show the preview, of the tile now in this view as the view is
+                        //reused for other tiles when the grid scrolls
+                        final ImageGridTile previewTile = tile;
+                        BorderPane borderPane = new BorderPane();
+                        ImageView imageView = new ImageView();
+
+                        //show the thumbnail until the full image has been decoded off the fx thread
+                        imageView.setImage(previewTile.getThumbnail());
+                        Thread loader = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Image frame = previewTile.getImage();
+                                if(frame == null){return;}
+                                Platform.runLater(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        imageView.setImage(frame);
+                                    }
+                                });
+                            }
+                        }, "preview-loader");
+                        loader.setDaemon(true);
+                        loader.start();
+                        imageView.setPreserveRatio(true);
+                        imageView.setSmooth(true);
+                        imageView.setCache(true);
+                        borderPane.setCenter(imageView);
+                        borderPane.setStyle("-fx-background-color: BLACK");
+                        Stage newStage = new Stage();
+                        newStage.setWidth(300);
+                        newStage.setHeight(300);
+
+                        //make the image fit the size of the window
+                        borderPane.prefHeightProperty().bind(newStage.heightProperty());
+                        borderPane.prefWidthProperty().bind(newStage.widthProperty());
+                        imageView.fitHeightProperty().bind(borderPane.heightProperty());
+                        imageView.fitWidthProperty().bind(borderPane.widthProperty());
+
+                        //title of the window is the name ofthe tile
+                        newStage.setTitle("Preview: " + previewTile.getName());
+                        newStage.getIcons().add(Main.thumbnail);
+                        Scene scene = new Scene(borderPane, Color.BLACK);
+                        newStage.setScene(scene);
+                        newStage.show();
+
+                    }
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Adds the listener so the tile becomes highlighted when it is clicked.
+     */
+    private void addSelectableListener(){
+        setOnMouseClicked(new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent event) {
+                if(tile == null || !tile.isClickable()){return;}
+
+                if(event.getButton().equals(MouseButton.PRIMARY)){
+                    //only a single click from the left mouse button
+                    if(event.getClickCount() == 1){
+                        grid.setSelectedTile(tile);
+                    }
+                }
+            }
+        });
+    }
+
+}
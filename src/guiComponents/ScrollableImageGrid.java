@@ -1,14 +1,24 @@
 package guiComponents;
 
 import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
-import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.layout.*;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
+import javafx.util.Callback;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -16,17 +26,30 @@ import javafx.scene.text.FontWeight;
  * surprise. The ScrollableImageGrid can create new ImageGridTiles, and updates the number of grid tiles in a row when
  * it is resized.
  *
+ * The grid is virtualized, so it stays quick with hundreds of images. The tiles are kept in a list, and the grid is a
+ * ListView where each cell is a row of {@link ImageGridTileView}s. The ListView only makes cells for the rows that are
+ * on screen and reuses them as the grid is scrolled, so only the visible tiles ever have nodes.
+ *
  * @see ImageGridTile
  *
  * @author Jed Mills
  */
 public class ScrollableImageGrid extends BorderPane {
 
-    /** Contains the tile pane, gives scrollability */
-    private ScrollPane scrollPane;
+    /** Shows the rows of tiles that are on screen, gives scrollability */
+    private ListView<Integer> rowList;
+
+    /** Index of each row of tiles, these are the items of the {@link ScrollableImageGrid#rowList} */
+    private ObservableList<Integer> rows = FXCollections.observableArrayList();
 
-    /** Contains all of the ImageGridTiles */
-    private TilePane tilePane;
+    /** All of the ImageGridTiles in the grid, in order. Only changed on the JavaFX thread */
+    private final ArrayList<ImageGridTile> tiles = new ArrayList<>();
+
+    /** Number of tiles in each row, which depends on the width of the grid */
+    private int columns = 1;
+
+    /** Gap between the tiles in a row */
+    private static final double TILE_GAP = 10;
 
     /** Whether the imageGridTiles created by this instance have tick boxes */
     private boolean tickBox;
@@ -40,6 +63,27 @@ public class ScrollableImageGrid extends BorderPane {
     /** Whether the imageGridTiles created by this instance have previews on double click */
     private boolean preview;
 
+    /** Tiles waiting to be added to the tile pane by the next batch on the JavaFX thread */
+    private ConcurrentLinkedQueue<ImageGridTile> pendingTiles = new ConcurrentLinkedQueue<>();
+
+    /** Whether a batch has been scheduled on the JavaFX thread and hasn't run yet */
+    private AtomicBoolean batchScheduled = new AtomicBoolean(false);
+
+    /** Whether the next batch should clear the tile pane before adding the pending tiles */
+    private AtomicBoolean clearRequested = new AtomicBoolean(false);
+
+    /** Number of tiles that have been loaded so far while images are being loaded into the grid */
+    private AtomicInteger loadedCount = new AtomicInteger(0);
+
+    /** Number of tiles being loaded into the grid, or 0 if nothing is loading */
+    private AtomicInteger totalCount = new AtomicInteger(0);
+
+    /** Shows how many of the images being loaded are in the grid so far */
+    private ProgressBar loadProgressBar;
+
+    /** Shows the count of loaded images next to the progress bar */
+    private Label loadProgressLabel;
+
 
     /**
      * Creates a enw ScrollableImageGrid.
@@ -61,8 +105,8 @@ public class ScrollableImageGrid extends BorderPane {
 
 
     /**
-     * Creates the layout of this component. The layout is basically a ScrollPane with a TilePane inside it, so
-     * the TilePane can be scrolled. The whole thing is a BorderPane so there can be a title at the top.
+     * Creates the layout of this component. The layout is basically a ListView of rows of tiles, so the tiles can be
+     * scrolled. The whole thing is a BorderPane so there can be a title at the top.
      *
      * @param title     title to make foe the ScrollableImageGrid
      */
@@ -74,60 +118,155 @@ public class ScrollableImageGrid extends BorderPane {
         gridTitle.setFont(Font.font(null, FontWeight.BOLD, 12));
         gridTitle.setPadding(new Insets(5, 5, 5, 5));
         titleBox.setAlignment(Pos.CENTER);
-        titleBox.getChildren().add(gridTitle);
-
-        //has the tile pane in it
-        scrollPane = new ScrollPane();
-        scrollPane.setFitToWidth(true);
-        //never have a horizontal bar, only have as many tiles as you can fit in a row
-        scrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
-        scrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.AS_NEEDED);
-
-        //has the tiles in it
-        tilePane = new TilePane();
-        scrollPane.setContent(tilePane);
-        scrollPane.getStyleClass().add("imageGridScrollPane");
-        tilePane.setHgap(10);
-        tilePane.setVgap(10);
-        tilePane.setPadding(new Insets(10, 10, 10, 10));
-        tilePane.setTileAlignment(Pos.CENTER);
-        scrollPane.setFitToWidth(true);
+
+        //only shown while images are being loaded into the grid
+        loadProgressBar = new ProgressBar(0);
+        loadProgressBar.setPrefWidth(80);
+        loadProgressLabel = new Label();
+        loadProgressBar.managedProperty().bind(loadProgressBar.visibleProperty());
+        loadProgressLabel.managedProperty().bind(loadProgressLabel.visibleProperty());
+        loadProgressBar.setVisible(false);
+        loadProgressLabel.setVisible(false);
+
+        titleBox.setSpacing(5);
+        titleBox.getChildren().addAll(gridTitle, loadProgressBar, loadProgressLabel);
+
+        //each cell of the list is a row of tiles
+        rowList = new ListView<>(rows);
+        rowList.getStyleClass().add("imageGridList");
+        rowList.setFocusTraversable(false);
+        rowList.setCellFactory(new Callback<ListView<Integer>, ListCell<Integer>>() {
+            @Override
+            public ListCell<Integer> call(ListView<Integer> param) {
+                return new TileRowCell();
+            }
+        });
+
+        //fit as many tiles in a row as there's room for
+        rowList.widthProperty().addListener(new ChangeListener<Number>() {
+            @Override
+            public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue) {
+                updateRows();
+            }
+        });
 
         setTop(titleBox);
-        setCenter(scrollPane);
+        setCenter(rowList);
     }
 
 
     /**
-     * Adds a ImageGridTile to the ScrollableImageGrid on the JavaFX thread.
+     * Adds a ImageGridTile to the ScrollableImageGrid on the JavaFX thread. Tiles added from any thread are queued
+     * and added in batches, so that loading a lot of tiles doesn't flood the JavaFX thread with one runnable per tile.
      *
      * @param tile  tileto add
      */
     public void addImageTile(ImageGridTile tile){
+        pendingTiles.add(tile);
+        scheduleBatch();
+    }
+
+
+    /**
+     * Schedules a batch on the JavaFX thread, unless one is already waiting to run, in which case it will pick up
+     * whatever has been queued since.
+     */
+    private void scheduleBatch(){
+        if(!batchScheduled.compareAndSet(false, true)){return;}
+
         //has to be on the javafx thread otherwise javafx complains
         Platform.runLater(new Runnable() {
             @Override
             public void run() {
-                tilePane.getChildren().add(tile);
+                //reset first so anything queued while this batch runs gets a batch of its own
+                batchScheduled.set(false);
+
+                synchronized (tiles) {
+                    if (clearRequested.getAndSet(false)) {
+                        tiles.clear();
+                        selectedTile = null;
+                    }
+
+                    ImageGridTile tile;
+                    while ((tile = pendingTiles.poll()) != null) {
+                        tiles.add(tile);
+                    }
+                }
+                updateRows();
+
+                updateLoadProgress();
             }
         });
     }
 
 
+    /**
+     * @return whether there are tiles that have been added but aren't in the grid yet
+     */
+    public boolean hasPendingTiles(){
+        return !pendingTiles.isEmpty();
+    }
+
+
+    /**
+     * Sets how many of the images being loaded into this grid have been loaded so far, which is shown next to the
+     * title. Safe to call from any thread, the display is updated with the next batch of tiles.
+     *
+     * @param loaded    number of images loaded so far
+     * @param total     number of images being loaded, or 0 to hide the progress
+     */
+    public void setLoadProgress(int loaded, int total){
+        loadedCount.set(loaded);
+        totalCount.set(total);
+        scheduleBatch();
+    }
+
+
+    /**
+     * Shows the current load progress, or hides it if nothing is loading. Must be called on the JavaFX thread.
+     */
+    private void updateLoadProgress(){
+        int loaded = loadedCount.get();
+        int total = totalCount.get();
+        boolean loading = total > 0 && loaded < total;
+
+        loadProgressBar.setVisible(loading);
+        loadProgressLabel.setVisible(loading);
+        if(loading){
+            loadProgressBar.setProgress((double) loaded / total);
+            loadProgressLabel.setText(loaded + "/" + total);
+        }
+    }
+
+
     /**
      * Creates anew ImageGridTilewith the given parameters and adds it to this ScrollableImageGrid on the
      * JavaFx thread.
      *
      * @param name          name of the tile to make
-     * @param image         image in the tile to make
+     * @param imageFile     file the full resolution image of the tile is loaded from
+     * @param thumbnail     thumbnail in the tile to make
      * @param width         width of the tile to make
      * @param height        height of the tile to make
      */
-    public void addImageTile(String name, Image image, int width, int height){
-        ImageGridTile imageGridTile = new ImageGridTile(this, name, image, width, height,
-                                                                tickBox, clickable, preview);
+    public void addImageTile(String name, File imageFile, Image thumbnail, int width, int height){
+        addImageTile(createImageTile(name, imageFile, thumbnail, width, height));
+    }
 
-        addImageTile(imageGridTile);
+
+    /**
+     * Creates a new ImageGridTile with the given parameters that belongs to this ScrollableImageGrid, without
+     * adding it. The tile isn't part of the scene yet so this is safe to call from any thread.
+     *
+     * @param name          name of the tile to make
+     * @param imageFile     file the full resolution image of the tile is loaded from
+     * @param thumbnail     thumbnail in the tile to make
+     * @param width         width of the tile to make
+     * @param height        height of the tile to make
+     * @return              the new tile
+     */
+    public ImageGridTile createImageTile(String name, File imageFile, Image thumbnail, int width, int height){
+        return new ImageGridTile(this, name, imageFile, thumbnail, width, height, tickBox, clickable, preview);
     }
 
 
@@ -138,23 +277,19 @@ public class ScrollableImageGrid extends BorderPane {
      */
     public void setTheHeight(double height) {
         setPrefHeight(height);
-        tilePane.setPrefHeight(height);
-        scrollPane.setPrefHeight(height);
+        rowList.setPrefHeight(height);
     }
 
 
     /**
-     * Removees all the ImageGridTiles from this ScrollableImageGrid. on the JavaFX thread.
+     * Removees all the ImageGridTiles from this ScrollableImageGrid. on the JavaFX thread. Any tiles that were queued
+     * but not added yet are dropped too.
      *
      */
     public void clearTiles(){
-        Platform.runLater(new Runnable() {
-            @Override
-            public void run() {
-                tilePane.getChildren().clear();
-                selectedTile = null;
-            }
-        });
+        pendingTiles.clear();
+        clearRequested.set(true);
+        scheduleBatch();
     }
 
 
@@ -164,14 +299,9 @@ public class ScrollableImageGrid extends BorderPane {
      * @param tile  tile to be selected
      */
     public void setSelectedTile(ImageGridTile tile){
-        //deselct all the tiles so there's only ever one selected
-        ImageGridTile currentTile;
-        for(Node node : tilePane.getChildren()){
-            if(node instanceof ImageGridTile){
-                currentTile = (ImageGridTile) node;
-                currentTile.setSelected(false);
-            }
-        }
+        //deselect the last tile so there's only ever one selected
+        if(selectedTile != null){selectedTile.setSelected(false);}
+
         //select the passed tile
         selectedTile = tile;
         selectedTile.setSelected(true);
@@ -190,50 +320,116 @@ public class ScrollableImageGrid extends BorderPane {
      * Removes the currently selected tile from this ScrollableImageGrid.
      */
     public void removeSelectedTile(){
-        tilePane.getChildren().remove(selectedTile);
+        synchronized (tiles){
+            tiles.remove(selectedTile);
+        }
         selectedTile = null;
+        updateRows();
     }
 
 
     /**
-     * Returns all the images in all of the ImageGridTilesin this ScrollableImageGrid. If there are no
-     * ImageGridTiles, returns an empty array.
+     * Returns an array of all the ImageGridTiles in this ScrollableImageGrid. If there are no tiles, returns
+     * an empty array.
      *
-     * @return  all the images of all the tiles
+     * @return  all the tiles in the grid, in order
+     */
+    public ImageGridTile[] getGridTiles(){
+        synchronized (tiles){
+            return tiles.toArray(new ImageGridTile[0]);
+        }
+    }
+
+
+    /**
+     * Works out how many tiles fit in a row at the current width, and updates the rows of the list to match the
+     * tiles. The ListView then only redraws the rows that are on screen. Must be called on the JavaFX thread.
      */
-    public Image[] getAllImages(){
-        Image[] images = new Image[tilePane.getChildren().size()];
+    private void updateRows(){
+        int numTiles;
+        double tileWidth = 150;
+        synchronized (tiles){
+            numTiles = tiles.size();
+            if(numTiles > 0){tileWidth = tiles.get(0).getTileWidth();}
+        }
+
+        //leave room for the padding of the cells and the scroll bar
+        double available = rowList.getWidth() - 40;
+        columns = Math.max(1, (int) ((available + TILE_GAP) / (tileWidth + TILE_GAP)));
 
-        //get all the images
-        int i = 0;
-        for(Node node : tilePane.getChildren()){
-            if(node instanceof ImageGridTile){
-                images[i] = ((ImageGridTile) node).getImage();
-                i ++;
+        int numRows = (numTiles + columns - 1) / columns;
+        if(rows.size() != numRows){
+            if(rows.size() > numRows){
+                rows.remove(numRows, rows.size());
+            }else{
+                for(int i = rows.size(); i < numRows; i++){rows.add(i);}
             }
         }
-        return images;
+        rowList.refresh();
     }
 
 
     /**
-     * Returns an array of all the ImageGridTiles in this ScrollableImageGrid. If there are no tiles, returns
-     * an empty array.
-     *
-     * @return
+     * A cell of the {@link ScrollableImageGrid#rowList}, which shows one row of tiles. The cell keeps its
+     * {@link ImageGridTileView}s and just gives them different tiles when it is reused for another row.
      */
-    public ImageGridTile[] getGridTiles(){
-        ImageGridTile[] tiles = new ImageGridTile[tilePane.getChildren().size()];
-
-        //get all the tiles
-        int i = 0;
-        for(Node node : tilePane.getChildren()){
-            if(node instanceof ImageGridTile){
-                tiles[i] = ((ImageGridTile) node);
-                i ++;
+    private class TileRowCell extends ListCell<Integer>{
+
+        /** Contains the views of the tiles in this row */
+        private HBox rowBox;
+
+        /** The views in this row, one for each column */
+        private ArrayList<ImageGridTileView> views = new ArrayList<>();
+
+
+        /**
+         * Creates a new, empty TileRowCell.
+         */
+        private TileRowCell(){
+            rowBox = new HBox();
+            rowBox.setSpacing(TILE_GAP);
+            rowBox.setAlignment(Pos.CENTER_LEFT);
+            rowBox.getStyleClass().add("imageGridRow");
+            getStyleClass().add("imageGridRowCell");
+        }
+
+
+        /**
+         * Shows the tiles of the given row in this cell.
+         *
+         * @param row       index of the row to show
+         * @param empty     whether this cell has no row
+         */
+        @Override
+        protected void updateItem(Integer row, boolean empty) {
+            super.updateItem(row, empty);
+            setText(null);
+
+            if(empty || row == null){
+                for(ImageGridTileView view : views){view.setTile(null);}
+                setGraphic(null);
+                return;
+            }
+
+            //the number of columns changes when the grid is resized
+            while(views.size() < columns){views.add(new ImageGridTileView(ScrollableImageGrid.this));}
+            if(rowBox.getChildren().size() != columns){
+                rowBox.getChildren().setAll(views.subList(0, columns));
+            }
+
+            synchronized (tiles){
+                for(int i = 0; i < columns; i++){
+                    int index = row * columns + i;
+                    views.get(i).setTile(index < tiles.size() ? tiles.get(index) : null);
+                }
+            }
+
+            //views left over from when the grid was wider aren't in the row any more
+            for(int i = columns; i < views.size(); i++){
+                views.get(i).setTile(null);
             }
+            setGraphic(rowBox);
         }
-        return tiles;
     }
 
 }
@@ -2,7 +2,8 @@ package guiComponents;
 
 /**
  * This class is another ScrollableImageGrid, bu this one is linked to a {@link ImageCropPane} so that when a tile
- * in the ScrollableImageGrid is selected, the image in the CropPane changes to the selected tile's image.
+ * in the ScrollableImageGrid is selected, the image in the CropPane changes to the selected tile's image. It is
+ * virtualized in the same way as the ScrollableImageGrid, so only the tiles on screen have nodes.
  *
  * @see ImageGridTile
  * @see ImageCropPane
@@ -38,7 +39,8 @@ public class ScrollableImageGridForCrop extends ScrollableImageGrid {
 
 
     /**
-     * Sets the ImageCropPane's image as the image in the selected tile.
+     * Sets the ImageCropPane's image as the image in the selected tile, which is decoded in the background if it
+     * isn't already loaded.
      *
      * @param tile  tile to change the image to
      */
@@ -47,7 +49,7 @@ public class ScrollableImageGridForCrop extends ScrollableImageGrid {
         super.setSelectedTile(tile);
 
         if(active) {
-            imageCropPane.setImage(tile.getImage());
+            imageCropPane.setImage(tile);
         }
     }
 
@@ -91,6 +91,21 @@ public class HighlightDetectionLayout extends VBox implements CreatorScene{
     /** Used to set set highlight level for the highlight detection */
     private Slider highlightLevelSlider;
 
+    /** Button to run the highlight detection for a range of thresholds and show how each one does */
+    private Button sweepButton;
+
+    /** Whether the sphere is tracked in each image during the highlight detection, for captures where it drifts */
+    private CheckBox trackSphereBox;
+
+    /** Checkbox to find the highlights in big spheres on a smaller copy of the sphere first */
+    private CheckBox pyramidBox;
+
+    /** The [x, y, r] of the spheres added as well as the one set in the final params fields */
+    private ArrayList<int[]> otherSpheres = new ArrayList<>();
+
+    /** Label showing how many other spheres have been added */
+    private Label otherSpheresLabel;
+
     /** The singleton instance of this class*/
     private static HighlightDetectionLayout ourInstance = new HighlightDetectionLayout();
 
@@ -250,6 +265,59 @@ public class HighlightDetectionLayout extends VBox implements CreatorScene{
             //--------------------
 
 
+            //button to find the sphere in the image automatically
+            Label findSphereLabel = new Label("Find sphere:");
+            GridPane.setConstraints(findSphereLabel, 0, 5);
+
+            Button findSphereButton = new Button("Find");
+            findSphereButton.setId("findSphereButton");
+            findSphereButton.setOnAction(HighlightDetectionLayoutListener.getInstance());
+            GridPane.setConstraints(findSphereButton, 1, 5, 3, 1);
+            findSphereButton.setMaxWidth(Double.MAX_VALUE);
+            //--------------------
+
+
+            //checkbox to track the sphere in each image when detecting the highlights
+            Label trackSphereLabel = new Label("Track per image:");
+            GridPane.setConstraints(trackSphereLabel, 0, 6);
+
+            trackSphereBox = new CheckBox();
+            trackSphereBox.setId("trackSphereBox");
+            GridPane.setConstraints(trackSphereBox, 1, 6, 3, 1);
+            //--------------------
+
+
+            //checkbox to find the highlights of big spheres on a smaller copy first
+            Label pyramidLabel = new Label("Fast for big spheres:");
+            GridPane.setConstraints(pyramidLabel, 0, 8);
+
+            pyramidBox = new CheckBox();
+            pyramidBox.setId("pyramidBox");
+            pyramidBox.setTooltip(new Tooltip("Find the highlights of spheres with a radius over 300 pixels on a " +
+                                                "smaller copy of the sphere, which is much faster"));
+            GridPane.setConstraints(pyramidBox, 1, 8, 3, 1);
+            //--------------------
+
+
+            //buttons to add the selector as another sphere, for setups with more than one, and clear them
+            otherSpheresLabel = new Label();
+            GridPane.setConstraints(otherSpheresLabel, 0, 7);
+            updateOtherSpheresLabel();
+
+            Button addSphereButton = new Button("Add");
+            addSphereButton.setId("addSphereButton");
+            addSphereButton.setOnAction(HighlightDetectionLayoutListener.getInstance());
+            GridPane.setConstraints(addSphereButton, 1, 7);
+            addSphereButton.setMaxWidth(Double.MAX_VALUE);
+
+            Button clearSpheresButton = new Button("Clear");
+            clearSpheresButton.setId("clearSpheresButton");
+            clearSpheresButton.setOnAction(HighlightDetectionLayoutListener.getInstance());
+            GridPane.setConstraints(clearSpheresButton, 2, 7, 2, 1);
+            clearSpheresButton.setMaxWidth(Double.MAX_VALUE);
+            //--------------------
+
+
             //dropdown to select circle selctor colour
             Label circleCropColourLabel = new Label("Selector colour:");
             GridPane.setConstraints(circleCropColourLabel, 0, 0);
@@ -274,6 +342,10 @@ public class HighlightDetectionLayout extends VBox implements CreatorScene{
                                         sphereYLabel,           sphereYField,       sphereYMinus,   sphereYPlus,
                                         sphereRadiusLabel,      sphereRField,       sphereRMinus,   sphereRPlus,
                                         setSphereLabel,         setSphereButton,
+                                        findSphereLabel,        findSphereButton,
+                                        trackSphereLabel,       trackSphereBox,
+                                        otherSpheresLabel,      addSphereButton,    clearSpheresButton,
+                                        pyramidLabel,           pyramidBox,
                                         circleCropColourLabel,  circleCropColourBox);
 
 
@@ -287,6 +359,27 @@ public class HighlightDetectionLayout extends VBox implements CreatorScene{
     }
 
 
+    /**
+     * Sets the circle selection in the {@link HighlightDetectionLayout#imageCropPane} to the given circle in the
+     * pixels of the image, which fills the sphere position fields with it.
+     *
+     * @param x     x pos of the circle's centre in the image
+     * @param y     y pos of the circle's centre in the image
+     * @param r     radius of the circle in the image
+     */
+    public void setCircleSelectInImage(int x, int y, int r){
+        imageCropPane.setCircleSelectionInImage(x, y, r);
+    }
+
+
+    /**
+     * @return the tile selected in the {@link HighlightDetectionLayout#imageGrid}, or null if there isn't one
+     */
+    public ImageGridTile getSelectedTile(){
+        return imageGrid.getSelectedTile();
+    }
+
+
     /**
      * Translates the circle selection in the {@link HighlightDetectionLayout#imageCropPane} by the given
      * amount, not mapped to the actual size of the image in the crop pane.
@@ -428,6 +521,11 @@ public class HighlightDetectionLayout extends VBox implements CreatorScene{
             highlightLevelSlider.setMinorTickCount(2);
             highlightLevelSlider.setBlockIncrement(10);
 
+            //shows how many images each threshold rejects, so the user doesn't have to find one by trial and error
+            sweepButton = new Button("Compare Thresholds...");
+            sweepButton.setId("sweepButton");
+            sweepButton.setOnAction(HighlightDetectionLayoutListener.getInstance());
+
             nextButton = new Button("Detect Highlights >");
             nextButton.setId("nextButton");
             nextButton.setOnAction(HighlightDetectionLayoutListener.getInstance());
@@ -438,7 +536,7 @@ public class HighlightDetectionLayout extends VBox implements CreatorScene{
         hBox.setAlignment(Pos.CENTER);
         hBox.getChildren().addAll(backButton, spacer, finalCircleXLabel, finalCircleX,
                                     finalCircleYLabel, finalCircleY, finalCircleRLabel, finalCircleR,
-                                            highlightLevelLabel, highlightLevelSlider, nextButton);
+                                            highlightLevelLabel, highlightLevelSlider, sweepButton, nextButton);
         hBox.setSpacing(10);
         hBox.setPadding(new Insets(5, 5, 5, 5));
 
@@ -453,9 +551,10 @@ public class HighlightDetectionLayout extends VBox implements CreatorScene{
      * this one.
      */
     public void resetScene(){
+        clearOtherSpheres();
         Utils.disableNodes(nextButton, finalCircleXLabel, finalCircleX,
                 finalCircleYLabel, finalCircleY, finalCircleRLabel, highlightLevelLabel,
-                    highlightLevelSlider, finalCircleR);
+                    highlightLevelSlider, sweepButton, finalCircleR);
     }
 
 
@@ -468,7 +567,7 @@ public class HighlightDetectionLayout extends VBox implements CreatorScene{
     public void enableFinalParamsNodes(){
         Utils.enableNodes(nextButton, finalCircleXLabel, finalCircleX,
                 finalCircleYLabel, finalCircleY, finalCircleRLabel, highlightLevelLabel,
-                highlightLevelSlider, finalCircleR);
+                highlightLevelSlider, sweepButton, finalCircleR);
     }
 
 
@@ -508,6 +607,82 @@ public class HighlightDetectionLayout extends VBox implements CreatorScene{
 
 
 
+    /**
+     * Sets the value of the highlight threshold slider.
+     *
+     * @param threshold     the new threshold
+     */
+    public void setThreshold(int threshold){
+        highlightLevelSlider.setValue(threshold);
+    }
+
+
+
+
+    /**
+     * Adds another sphere that the highlights will be detected in as well as the one that has been set, and shows it
+     * in the {@link HighlightDetectionLayout#imageCropPane}.
+     *
+     * @param xyr   the [x, y, r] of the sphere in the image
+     */
+    public void addOtherSphere(int[] xyr){
+        otherSpheres.add(xyr);
+        imageCropPane.setMarkerCircles(otherSpheres);
+        updateOtherSpheresLabel();
+    }
+
+
+    /**
+     * Removes all the spheres added with {@link HighlightDetectionLayout#addOtherSphere(int[])}.
+     */
+    public void clearOtherSpheres(){
+        otherSpheres.clear();
+        imageCropPane.setMarkerCircles(otherSpheres);
+        updateOtherSpheresLabel();
+    }
+
+
+    /**
+     * Shows how many other spheres have been added in the {@link HighlightDetectionLayout#otherSpheresLabel}.
+     */
+    private void updateOtherSpheresLabel(){
+        otherSpheresLabel.setText("Other spheres (" + otherSpheres.size() + "):");
+    }
+
+
+    /**
+     * Gets all the spheres the highlights will be detected in, which is the sphere in the final params fields
+     * followed by any others that have been added.
+     *
+     * @return  the [x, y, r] of each sphere
+     */
+    public int[][] getSpheres(){
+        int[] xyrt = getFinalParamsFields();
+        int[][] spheres = new int[otherSpheres.size() + 1][];
+        spheres[0] = new int[]{xyrt[0], xyrt[1], xyrt[2]};
+        for(int i = 0; i < otherSpheres.size(); i++){
+            spheres[i + 1] = otherSpheres.get(i).clone();
+        }
+        return spheres;
+    }
+
+
+    /**
+     * @return whether the user has chosen to track the sphere in each image
+     */
+    public boolean isTrackingSphere(){
+        return trackSphereBox.isSelected();
+    }
+
+
+    /**
+     * @return whether the user has chosen to find the highlights of big spheres on a smaller copy first
+     */
+    public boolean isPyramidDetection(){
+        return pyramidBox.isSelected();
+    }
+
+
     /**
      * @return all the grid tiles in the image grid on the left of the layout
      */
@@ -580,8 +755,7 @@ public class HighlightDetectionLayout extends VBox implements CreatorScene{
      * @return  the bounds of the image crop pane
      */
     public Bounds getImageBounds(){
-        return new BoundingBox(0, 0,
-                imageCropPane.getImage().getWidth(), imageCropPane.getImage().getHeight());
+        return new BoundingBox(0, 0, imageCropPane.getImageWidth(), imageCropPane.getImageHeight());
     }
 
 
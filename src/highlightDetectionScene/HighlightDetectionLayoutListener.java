@@ -8,20 +8,21 @@ import javafx.event.EventHandler;
 import javafx.geometry.Bounds;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
+import javafx.scene.image.Image;
 import main.Main;
-import utils.ImageProcessing;
-import utils.Utils;
+import utils.LPCache;
+import utils.LPSidecar;
+import utils.LightSet;
+import utils.MaxTree;
+import utils.SphereFinder;
 import static utils.Utils.Vector3f;
 
-import java.awt.image.BufferedImage;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.function.Consumer;
+import java.util.EnumMap;
 
 
 /**
@@ -36,6 +37,15 @@ public class HighlightDetectionLayoutListener implements EventHandler<ActionEven
     /** The layout that this listener listens to*/
     private HighlightDetectionLayout highlightLayout;
 
+    /** Lowest threshold the highlight detection is run for when comparing thresholds */
+    private static final int SWEEP_MIN_THRESHOLD = 50;
+
+    /** Gap between the thresholds the highlight detection is run for when comparing thresholds */
+    private static final int SWEEP_STEP = 5;
+
+    /** How far in pixels the centre of the sphere can move from one image to the next when it's tracked */
+    private static final int TRACK_WINDOW = 8;
+
     /** The singleton instance of this class */
     private static HighlightDetectionLayoutListener ourInstance = new HighlightDetectionLayoutListener();
 
@@ -75,6 +85,18 @@ public class HighlightDetectionLayoutListener implements EventHandler<ActionEven
                 //setting the final positions of the sphere
                 setSphere();
 
+            }else if(source.getId().equals("addSphereButton")){
+                //add the selector as another sphere to detect the highlights in
+                addSphere();
+
+            }else if(source.getId().equals("clearSpheresButton")){
+                //remove all the other spheres
+                highlightLayout.clearOtherSpheres();
+
+            }else if(source.getId().equals("findSphereButton")){
+                //find the sphere in the image and move the circle selector to it
+                findSphere();
+
             }else if(source.getId().equals("backButton")){
                 //move back to the last layout
                 Main.backButtonPressed(highlightLayout);
@@ -83,6 +105,10 @@ public class HighlightDetectionLayoutListener implements EventHandler<ActionEven
                 //detect the highlights and move to the CropExecuteLayout
                 highlightDetectAndMoveScene();
 
+            }else if(source.getId().equals("sweepButton")){
+                //detect the highlights for a range of thresholds and show the results
+                sweepThresholds();
+
             }else if(source.getId().equals("sphereXMinus")){
                 //move the sphere left
                 highlightLayout.translateCircleSelect(-1, 0);
@@ -123,6 +149,34 @@ public class HighlightDetectionLayoutListener implements EventHandler<ActionEven
      * button to allow the user to do the highlight detection. Called when the user clicks the set sphere button.
      */
     private void setSphere(){
+        int[] xyr = getCheckedSphereVals();
+        if(xyr == null){return;}
+
+        //enable the buttons to detect highlights
+        highlightLayout.enableFinalParamsNodes();
+        highlightLayout.setFinalParamsFields(xyr[0], xyr[1], xyr[2]);
+    }
+
+
+    /**
+     * Adds the sphere in the circle selector as another sphere to detect the highlights in, for setups with more
+     * than one sphere in the frame. Called when the user clicks the add sphere button.
+     */
+    private void addSphere(){
+        int[] xyr = getCheckedSphereVals();
+        if(xyr == null){return;}
+
+        highlightLayout.addOtherSphere(xyr);
+    }
+
+
+    /**
+     * Gets the position and radius of the circle selector, checking that it has been set and is inside the image,
+     * and telling the user if not.
+     *
+     * @return  the [x, y, r] of the circle selector, or null if it isn't a valid sphere
+     */
+    private int[] getCheckedSphereVals(){
         int[] xyr = highlightLayout.getSphereVals();
 
         Bounds imageBounds = highlightLayout.getImageBounds();
@@ -130,7 +184,7 @@ public class HighlightDetectionLayoutListener implements EventHandler<ActionEven
         if(xyr == null){
             Main.showInputAlert("Sphere values have not been set. Please try moving and resizing the " +
                                         "circular selector.");
-            return;
+            return null;
         }
 
         int x = xyr[0];
@@ -140,73 +194,121 @@ public class HighlightDetectionLayoutListener implements EventHandler<ActionEven
         if(!imageBounds.contains(x - r, y - r, 2 * r, 2 * r)){
             Main.showInputAlert("It appears the circle has been set so that it resides outside of the " +
                                         "selected image. Please try resizing or moving the circular selector.");
-            return;
+            return null;
         }
-        //enable the buttons to detect highlights
-        highlightLayout.enableFinalParamsNodes();
-        highlightLayout.setFinalParamsFields(x, y, r);
+        return xyr;
     }
 
 
     /**
-     * Detects the highlights for the given sphere, creates an .lp file for them, and moves the scene onto the
-     * CropExecuteLayout if that was all successful.
+     * Finds the sphere in the image shown in the layout with the {@link SphereFinder} and moves the circle selector
+     * onto it, filling the sphere position fields. The user can then adjust it and set it as normal.
      */
-    private void highlightDetectAndMoveScene(){
+    private void findSphere(){
+        ImageGridTile tile = highlightLayout.getSelectedTile();
+        if(tile == null){
+            Main.showInputAlert("Please select an image to find the sphere in.");
+            return;
+        }
+
         new Thread(new Runnable() {
             @Override
             public void run() {
-                Main.showLoadingDialog("Processing highlights...");
-
-                //get the final location of the sphere
-                int[] xyrt = highlightLayout.getFinalParamsFields();
-
-                ImageGridTile[] gridTiles = highlightLayout.getGridTiles();
+                Main.showLoadingDialog("Finding sphere...");
+                int[] xyr;
+                try{
+                    //the frame is decoded here rather than on the FX thread if it isn't already loaded
+                    Image frame = tile.getImage();
+                    if(frame == null){
+                        Main.hideLoadingDialog();
+                        Main.showFileReadingAlert("Couldn't read image: " + tile.getImageFile().getAbsolutePath());
+                        return;
+                    }
+                    xyr = SphereFinder.findSphere(frame);
+                }finally{
+                    Main.hideLoadingDialog();
+                }
 
-                //this is for easy parallelisation  of the highlight detection
-                HashSet<ImageGridTile> gridTileSet = new HashSet<>();
+                if(xyr == null){
+                    Main.showInputAlert("No sphere could be found in the image. Please position the circular " +
+                                        "selector by hand.");
+                    return;
+                }
 
-                //the data generated by the highlight detection will be put in here
-                HashMap<String, Vector3f> lpData = new HashMap<>();
+                Platform.runLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        highlightLayout.setCircleSelectInImage(xyr[0], xyr[1], xyr[2]);
+                    }
+                });
+            }
+        }).start();
+    }
 
-                for(ImageGridTile tile : gridTiles){gridTileSet.add(tile);}
 
-                //run the highlight detection for the images
-                Utils.IntHolder numRejected = new Utils.IntHolder(0);
-                gridTileSet.parallelStream().forEach(new Consumer<ImageGridTile>() {
+    /**
+     * Detects the highlights for the given spheres, creates an .lp file for them, and moves the scene onto the
+     * CropExecuteLayout if that was all successful. The detection is run by a {@link HighlightDetector}, which the
+     * user can cancel from the loading dialog.
+     */
+    private void highlightDetectAndMoveScene(){
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                HighlightDetector detector = createDetector();
+                Main.showLoadingDialog("Processing highlights...", new Runnable() {
                     @Override
-                    public void accept(ImageGridTile tile) {
-                        BufferedImage image = Utils.fxImageToBufferedJPEG(tile.getImage());
-
-                        Vector3f highlight = getHighlightVec(xyrt[0], xyrt[1], xyrt[2], xyrt[3], image);
-
-                        //if the highlight detection can't get a highlight, it often gives NaN or sometimes
-                        //infinity, so check for this
-                        if(vectorOK(highlight)){
-                            lpData.put(tile.getName(), highlight);
-                        }else {
-                            //if the highlight detection couldn't get the highlight, reject this one
-                            numRejected.pp();
-                        }
+                    public void run() {
+                        detector.cancel();
                     }
                 });
 
+                //get the final location of the spheres
+                int[][] spheres = highlightLayout.getSpheres();
+                int threshold = highlightLayout.getFinalParamsFields()[3];
+
+                ImageGridTile[] gridTiles = highlightLayout.getGridTiles();
+
+                //run the highlight detection for the images
+                HighlightResult[] results = detector.detect(gridTiles, spheres, threshold, progressListener());
+
                 Main.hideLoadingDialog();
+                if(detector.isCancelled()){return;}
 
-                if(!(numRejected.getValue() == 0)){
-                    if(numRejected.getValue() == gridTiles.length){
-                        //if we rejected all the images, there's no point continuing
-                        Main.showInputAlert("No highlights could be detected in any of the images. Please " +
-                                            "retry with different images or settings.");
-                        return;
+                //the data generated by the highlight detection, in the same order as the images
+                LightSet lpData = new LightSet(results.length);
+
+                //the images that highlights could be detected for need to be passed to the CropExecuteLayout
+                ArrayList<ImageGridTile> gridTilesArray = new ArrayList<>();
+
+                //number of images rejected for each reason
+                EnumMap<HighlightResult.Reason, Integer> numRejected = new EnumMap<>(HighlightResult.Reason.class);
+                for(int i = 0; i < results.length; i++){
+                    if(results[i].isAccepted()){
+                        Vector3f vector = results[i].getVector();
+                        lpData.put(results[i].getName(), vector.getX(), vector.getY(), vector.getZ());
+                        gridTilesArray.add(gridTiles[i]);
                     }else{
-                        //otherwise just tell the user that at least some were rejected
-                        Main.showInputAlert(numRejected.getValue() + " images were removed from image selection " +
-                                "as highlights in these could not be calculated.");
+                        HighlightResult.Reason reason = results[i].getReason();
+                        numRejected.put(reason, numRejected.containsKey(reason) ? numRejected.get(reason) + 1 : 1);
                     }
                 }
 
-                
+                if(lpData.isEmpty()){
+                    //if we rejected all the images, there's no point continuing
+                    Main.showInputAlert("No highlights could be detected in any of the images. Please " +
+                                        "retry with different images or settings.");
+                    return;
+                }else if(gridTilesArray.size() < gridTiles.length){
+                    //otherwise just tell the user that at least some were rejected, and why
+                    String message = (gridTiles.length - gridTilesArray.size()) + " images were removed from " +
+                                        "image selection as highlights in these could not be calculated:";
+                    for(HighlightResult.Reason reason : numRejected.keySet()){
+                        message += System.lineSeparator() + numRejected.get(reason) + " because " +
+                                    reason.getDescription();
+                    }
+                    Main.showInputAlert(message);
+                }
 
                 Main.showLoadingDialog("Creating new LP file...");
 
@@ -216,14 +318,8 @@ public class HighlightDetectionLayoutListener implements EventHandler<ActionEven
 
                 Main.currentLPFile = lpFile;
 
-                //the images that highlights could be detectd for need to be passed to the CropExecuteLayout
-                //so find these
-                ArrayList<ImageGridTile> gridTilesArray = new ArrayList<>();
-                for(ImageGridTile gridTile : gridTiles){
-                    if(Utils.checkIn(gridTile.getName(), lpData.keySet())) {
-                        gridTilesArray.add(gridTile);
-                    }
-                }
+                //keep where the sphere was in each image, so the user can check the tracking
+                if(highlightLayout.isTrackingSphere()){writeSphereDataToFile(results);}
 
                 Main.hideLoadingDialog();
 
@@ -242,22 +338,144 @@ public class HighlightDetectionLayoutListener implements EventHandler<ActionEven
 
 
     /**
-     * The highlight detection gives NaNs whe nit can't detect highlights so this is used to check or them.
+     * Runs the highlight detection for every threshold from {@link HighlightDetectionLayoutListener#SWEEP_MIN_THRESHOLD}
+     * up in steps of {@link HighlightDetectionLayoutListener#SWEEP_STEP}, and shows how many images each threshold
+     * rejects and how stable the light positions are in a {@link ThresholdSweepDialog}. The sphere of each image is
+     * only read once, a {@link MaxTree} is built from it and the highlight for every threshold is read off that.
+     */
+    private void sweepThresholds(){
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                HighlightDetector detector = createDetector();
+                Main.showLoadingDialog("Comparing thresholds...", new Runnable() {
+                    @Override
+                    public void run() {
+                        detector.cancel();
+                    }
+                });
+
+                int[][] spheres = highlightLayout.getSpheres();
+                ImageGridTile[] gridTiles = highlightLayout.getGridTiles();
+
+                int numThresholds = (255 - SWEEP_MIN_THRESHOLD) / SWEEP_STEP + 1;
+                int[] thresholds = new int[numThresholds];
+                for(int i = 0; i < numThresholds; i++){thresholds[i] = SWEEP_MIN_THRESHOLD + i * SWEEP_STEP;}
+
+                //the light vector of each image for each threshold, null where no highlight was found
+                Vector3f[][] sweeps = detector.sweep(gridTiles, spheres, thresholds, progressListener());
+
+                Main.hideLoadingDialog();
+                if(detector.isCancelled()){return;}
+
+                //count the rejected images and how far the light vectors move from the last threshold
+                ArrayList<ThresholdSweepDialog.SweepRow> rows = new ArrayList<>();
+                for(int i = 0; i < numThresholds; i++){
+                    int rejected = 0;
+                    double totalAngle = 0;
+                    int numAngles = 0;
+
+                    for(Vector3f[] vectors : sweeps){
+                        if(vectors[i] == null){
+                            rejected++;
+                        }else if(i > 0 && vectors[i - 1] != null){
+                            totalAngle += angleBetween(vectors[i - 1], vectors[i]);
+                            numAngles++;
+                        }
+                    }
+                    double change = numAngles > 0 ? totalAngle / numAngles : Double.NaN;
+                    rows.add(new ThresholdSweepDialog.SweepRow(thresholds[i], rejected, change));
+                }
+
+                Platform.runLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        new ThresholdSweepDialog(rows, gridTiles.length).show();
+                    }
+                });
+            }
+        }).start();
+    }
+
+
+    /**
+     * @return a new {@link HighlightDetector} using all the processors, that tracks the sphere in each image and
+     *         searches big spheres on a smaller copy first if the user has chosen to
+     */
+    private HighlightDetector createDetector(){
+        HighlightDetector detector = new HighlightDetector(Runtime.getRuntime().availableProcessors());
+        if(highlightLayout.isTrackingSphere()){detector.setTrackWindow(TRACK_WINDOW);}
+        detector.setPyramid(highlightLayout.isPyramidDetection());
+        return detector;
+    }
+
+
+    /**
+     * @return a listener that shows the progress of a {@link HighlightDetector} in the loading dialog
+     */
+    private HighlightDetector.ProgressListener progressListener(){
+        return new HighlightDetector.ProgressListener() {
+            @Override
+            public void progress(int done, int total) {
+                Main.setLoadingProgress((double) done / total);
+            }
+        };
+    }
+
+
+    /**
+     * Calculates the angle between two light vectors.
      *
-     * @param vector3f  vector to check
-     * @return          if it is a proper position
+     * @param a     first vector
+     * @param b     second vector
+     * @return      the angle between them in degrees
      */
-    private boolean vectorOK(Vector3f vector3f){
-        if(     Float.isNaN(vector3f.getX())        ||
-                Float.isNaN(vector3f.getY())        ||
-                Float.isNaN(vector3f.getZ())        ||
-                Float.isInfinite(vector3f.getX())   ||
-                Float.isInfinite(vector3f.getY())   ||
-                Float.isInfinite(vector3f.getZ()) ){
-            return false;
+    private double angleBetween(Vector3f a, Vector3f b){
+        double dot = a.getX() * b.getX() + a.getY() * b.getY() + a.getZ() * b.getZ();
+        double lengths = Math.sqrt(a.getX() * a.getX() + a.getY() * a.getY() + a.getZ() * a.getZ()) *
+                            Math.sqrt(b.getX() * b.getX() + b.getY() * b.getY() + b.getZ() * b.getZ());
+        if(lengths == 0){return 0;}
+
+        return Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, dot / lengths))));
+    }
+
+
+    /**
+     * Saves where the spheres were tracked to in each image to a file next to the .lp file, with the project name +
+     * "_spheres.txt" as the name. Each line has the name of the image and the x, y and radius of each sphere in it.
+     * The file is only for the user to check the tracking against, it isn't read back in.
+     *
+     * @param results   results of the highlight detection, with the spheres of each image
+     * @return          the file that was created, or null if it couldn't be
+     */
+    private File writeSphereDataToFile(HighlightResult[] results){
+        File sphereFile = new File(Main.currentAssemblyFolder, Main.currentRTIProject.getName() + "_spheres.txt");
+
+        BufferedWriter writer = null;
+        try{
+            writer = new BufferedWriter(new FileWriter(sphereFile));
+            for(HighlightResult result : results){
+                int[][] spheres = result.getSpheres();
+                if(spheres == null){continue;}
+
+                String line = result.getName();
+                for(int[] sphere : spheres){
+                    line += " " + sphere[0] + " " + sphere[1] + " " + sphere[2];
+                }
+                writer.write(line + System.lineSeparator());
+            }
+        }catch(IOException e){
+            e.printStackTrace();
+            return null;
+
+        }finally {
+            if(writer != null){
+                try{writer.close();}
+                catch(IOException e){e.printStackTrace();}
+            }
         }
 
-        return true;
+        return sphereFile;
     }
 
 
@@ -268,13 +486,16 @@ public class HighlightDetectionLayoutListener implements EventHandler<ActionEven
      * @param lpData    data to write to the .lp file
      * @return          the file that was created
      */
-    private File writeLPDataToFile(HashMap<String, Vector3f> lpData){
+    private File writeLPDataToFile(LightSet lpData){
         //the path to the new file
         String lpFilePath = Main.currentAssemblyFolder.getAbsolutePath() + "\\" + Main.currentRTIProject.getName() +
                             "_highlightGenerated.lp";
 
         File newLPFile = new File(lpFilePath);
 
+        //the lights as they are in the file, with the full paths of the images
+        LightSet writtenData = new LightSet(lpData.size());
+
         BufferedWriter writer = null;
         try{
             writer = new BufferedWriter(new FileWriter(newLPFile));
@@ -283,14 +504,15 @@ public class HighlightDetectionLayoutListener implements EventHandler<ActionEven
 
             //write all the data o the file
             String name, x, y, z;
-            for(String key : lpData.keySet()){
-                name = Main.currentImagesFolder.getAbsolutePath() + "/" + key;
+            for(int i = 0; i < lpData.size(); i++){
+                name = Main.currentImagesFolder.getAbsolutePath() + "/" + lpData.getName(i);
 
-                x = String.valueOf(lpData.get(key).getX());
-                y = String.valueOf(lpData.get(key).getY());
-                z = String.valueOf(lpData.get(key).getZ());
+                x = String.valueOf(lpData.getX(i));
+                y = String.valueOf(lpData.getY(i));
+                z = String.valueOf(lpData.getZ(i));
                 //write the image line
                 writer.write(name + " " + x + " " + y + " " + z + System.lineSeparator());
+                writtenData.put(name, lpData.getX(i), lpData.getY(i), lpData.getZ(i));
             }
         }catch(IOException e){
             e.printStackTrace();
@@ -304,45 +526,10 @@ public class HighlightDetectionLayoutListener implements EventHandler<ActionEven
             }
         }
 
-        return newLPFile;
-    }
-
-
-    /**
-     * Called for each image in the {@link HighlightDetectionLayout#imageGrid} to detect the highlight of the
-     * sphere at (sphereX, sphereY) with radius sphereR, and the threshold value chosen by the user on the slider.
-     *
-     * @param sphereX       x pos of the sphere in the image
-     * @param sphereY       y pos of the sphere in the image
-     * @param sphereR       radius of the sphere in the image
-     * @param threshold     threshold set by the user
-     * @param image         image to detect the highlight or
-     * @return              the highlight vector for the given image
-     */
-    private Vector3f getHighlightVec(int sphereX, int sphereY, int sphereR, int threshold, BufferedImage image){
-        //the box around the sphere
-        int x = sphereX - sphereR;
-        int y = sphereY - sphereR;
-        int size = 2 * sphereR;
-
-        //crop the image to this box
-        image = image.getSubimage(x, y, size, size);
-
-        //convert to greyscale helps with highlight detection
-        BufferedImage grey = ImageProcessing.convertToGrayscale(image);
-        BufferedImage blend = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-        ImageProcessing.blendFilterGray(blend, grey);
+        //the file could have been written over without its length or modified time changing, so read it again
+        LPCache.getInstance().remove(newLPFile);
+        LPSidecar.write(newLPFile, writtenData);
 
-        //clear all the pixels not inside the radius to help make highlight detection easier
-        float[] ballInfo = {sphereR, sphereR, sphereR};
-        BufferedImage clear = ImageProcessing.clearOutside(grey, ballInfo);
-
-        //find the highlight
-        float[] highlights = ImageProcessing.findTh(clear, threshold);
-
-        //convert that to a light vector
-        float[] lightVec = ImageProcessing.calculateLightPosition(ballInfo, highlights);
-
-        return new Vector3f(lightVec[0], lightVec[1], lightVec[2]);
+        return newLPFile;
     }
 }
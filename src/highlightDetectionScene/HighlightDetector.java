@@ -0,0 +1,707 @@
+package highlightDetectionScene;
+
+import guiComponents.ImageGridTile;
+import utils.FrameCache;
+import utils.ImageLoader;
+import utils.ImageProcessing;
+import utils.MaxTree;
+import utils.SphereCache;
+import utils.SphereFinder;
+import utils.SphereMask;
+import utils.SphereROI;
+import utils.Utils.Vector3f;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static utils.ImageLoader.createExecutor;
+
+/**
+ * Runs the highlight detection over a set of images on its own pool of worker threads. Each worker reads the spheres
+ * from an image, finds the highlights in them and puts the {@link HighlightResult} in the slot for that image, so the
+ * results come back in the same order as the images and none can be lost between threads. The detection can be
+ * cancelled from another thread, and reports how many images have been done as it goes.
+ *
+ * There can be several spheres in each image. The box around all of them is decoded from each image once, however
+ * many spheres there are, and the squares around each sphere are cut out of that. The light directions from each
+ * sphere's highlight should all be the same, so they are averaged into one, and the image is rejected if any of
+ * them are more than {@link HighlightDetector#MAX_SPHERE_ANGLE} degrees from the average.
+ *
+ * If the camera or spheres drift during the capture, the detector can track the spheres in each image, moving their
+ * centres to the spheres' edges within a few pixels of where they were found in the image before, starting from where
+ * they were set in the first image, before finding the highlights in them. The spheres found in each image are kept
+ * in the {@link SphereCache} and the {@link HighlightResult}.
+ *
+ * @see HighlightResult
+ * @see HighlightDetectionLayoutListener
+ *
+ * @author Jed Mills
+ */
+public class HighlightDetector {
+
+    /** Largest angle in degrees between the light direction from one sphere and the average of all the spheres */
+    private static final double MAX_SPHERE_ANGLE = 10;
+
+    /** Number of images for each worker that the regions are decoded ahead of the tracker when tracking spheres */
+    private static final int DECODE_AHEAD = 2;
+
+    /** Number of worker threads that detect highlights at the same time */
+    private final int numWorkers;
+
+    /** Set when the detection has been cancelled, after which the remaining images are skipped */
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    /** How far the centres of the spheres can move from one image to the next, 0 to not track them */
+    private int trackWindow = 0;
+
+    /** Whether the highlights in big spheres are found on a smaller copy of the sphere first */
+    private boolean pyramid = false;
+
+
+    /**
+     * The pixels decoded from an image ahead of the tracker, or its squares if they were already in the
+     * {@link SphereCache}.
+     */
+    private static class Region{
+        /** The region of the image that was asked for */
+        private Rectangle requested;
+
+        /** The pixels of the region, clipped to the image */
+        private BufferedImage decoded;
+
+        /** Grey squares around the spheres, if they were in the cache */
+        private byte[][] squares;
+
+        /** The [x, y, r] of each sphere in the image, if the squares were in the cache */
+        private int[][] imageSpheres;
+    }
+
+
+    /**
+     * Called by the worker threads every time an image has been done. Implementations must be thread safe as this
+     * is called from several workers at once.
+     */
+    public interface ProgressListener{
+
+        /**
+         * @param done      number of images that have been done
+         * @param total     number of images in the set
+         */
+        void progress(int done, int total);
+    }
+
+
+    /**
+     * Does the work for one image on a worker thread.
+     */
+    private interface ImageTask{
+
+        /**
+         * @param index     index of the image in the set
+         * @param tile      tile of the image
+         * @param squares   grey pixels of the square around each sphere in the image
+         * @param spheres   the [x, y, r] of each sphere in the image
+         */
+        void run(int index, ImageGridTile tile, byte[][] squares, int[][] spheres);
+
+        /**
+         * @param index     index of the image in the set
+         * @param tile      tile of the image whose spheres couldn't be read
+         */
+        void failed(int index, ImageGridTile tile);
+    }
+
+
+    /**
+     * Creates a new HighlightDetector that detects highlights on the given number of worker threads.
+     *
+     * @param numWorkers    number of images to detect highlights in at the same time
+     */
+    public HighlightDetector(int numWorkers){
+        this.numWorkers = Math.max(1, numWorkers);
+    }
+
+
+    /**
+     * Sets whether the spheres are tracked in each image, and how far their centres can move from where they were
+     * found in the image before.
+     *
+     * @param trackWindow   how far in pixels the centres can move between images, or 0 to use the same spheres for
+     *                      every image
+     */
+    public void setTrackWindow(int trackWindow){
+        this.trackWindow = Math.max(0, trackWindow);
+    }
+
+
+    /**
+     * Sets whether the highlights in big spheres are found on a smaller copy of the sphere first, and only measured
+     * at full size around the one chosen. This is much faster for big spheres, and gives light directions within
+     * about 0.06 degrees of the full size search, but can choose a different highlight when there are several bright
+     * spots of much the same size. The threshold sweep always searches at full size.
+     *
+     * @param pyramid   whether to find the highlights on a smaller copy of big spheres
+     * @see ImageProcessing#findHighlightPyramid(byte[], int, int, int, SphereMask, int)
+     */
+    public void setPyramid(boolean pyramid){
+        this.pyramid = pyramid;
+    }
+
+
+    /**
+     * Cancels the detection this detector is running. The images already being processed are finished, but no more
+     * are started.
+     */
+    public void cancel(){
+        cancelled.set(true);
+    }
+
+
+    /**
+     * @return whether {@link HighlightDetector#cancel()} has been called
+     */
+    public boolean isCancelled(){
+        return cancelled.get();
+    }
+
+
+    /**
+     * Detects the highlights of the spheres in each image.
+     *
+     * @param tiles         tiles of the images
+     * @param spheres       the [x, y, r] of each sphere in the images
+     * @param threshold     threshold for the pixels of the highlights
+     * @param listener      told as each image is done, can be null
+     * @return              the result for each image in the same order as the tiles, the results of images that
+     *                      were skipped because the detection was cancelled are null
+     */
+    public HighlightResult[] detect(ImageGridTile[] tiles, int[][] spheres, int threshold,
+                                    ProgressListener listener){
+        HighlightResult[] results = new HighlightResult[tiles.length];
+
+        run(tiles, spheres, listener, new ImageTask() {
+            @Override
+            public void run(int index, ImageGridTile tile, byte[][] squares, int[][] imageSpheres) {
+                Vector3f[] vectors = new Vector3f[spheres.length];
+                int area = 0;
+                float confidence = 1;
+                boolean anyHighlight = false;
+
+                for(int s = 0; s < spheres.length; s++){
+                    int r = spheres[s][2];
+                    int scale = pyramid ? ImageProcessing.pyramidScale(r) : 1;
+                    float[] highlight = ImageProcessing.findHighlightPyramid(squares[s], 2 * r, 2 * r, threshold,
+                                                                        SphereMask.forRadius(r), scale);
+                    if(highlight[0] < 0){continue;}
+                    anyHighlight = true;
+
+                    //if the highlight isn't on the sphere the vector comes out as NaN or sometimes infinity
+                    vectors[s] = toVector(new float[]{r, r, r}, highlight);
+                    if(vectors[s] != null){
+                        area += (int) highlight[3];
+                        confidence = Math.min(confidence, highlight[3] / highlight[4]);
+                    }
+                }
+
+                Vector3f vector = combine(vectors);
+                HighlightResult.Reason reason = null;
+                if(!anyHighlight){
+                    reason = HighlightResult.Reason.NO_HIGHLIGHT;
+                }else if(area == 0){
+                    reason = HighlightResult.Reason.INVALID_POSITION;
+                }else if(vector == null){
+                    reason = HighlightResult.Reason.INCONSISTENT_SPHERES;
+                }
+
+                if(reason == null){
+                    results[index] = new HighlightResult(tile.getName(), vector, area, confidence, imageSpheres,
+                                                            vectors);
+                }else{
+                    results[index] = new HighlightResult(tile.getName(), reason, imageSpheres, vectors);
+                }
+            }
+
+            @Override
+            public void failed(int index, ImageGridTile tile) {
+                results[index] = new HighlightResult(tile.getName(), HighlightResult.Reason.READ_ERROR, null, null);
+            }
+        });
+
+        return results;
+    }
+
+
+    /**
+     * Detects the highlights of the spheres in each image for a range of thresholds, reading the spheres once and
+     * building a {@link MaxTree} from each that the highlight for every threshold is read off.
+     *
+     * @param tiles             tiles of the images
+     * @param spheres           the [x, y, r] of each sphere in the images
+     * @param thresholds        thresholds to find the highlights for, in increasing order
+     * @param listener          told as each image is done, can be null
+     * @return                  the light vector of each image for each threshold, in the same order as the tiles and
+     *                          thresholds, with null where no valid highlight was found or the image was skipped
+     */
+    public Vector3f[][] sweep(ImageGridTile[] tiles, int[][] spheres, int[] thresholds, ProgressListener listener){
+        Vector3f[][] vectors = new Vector3f[tiles.length][];
+
+        run(tiles, spheres, listener, new ImageTask() {
+            @Override
+            public void run(int index, ImageGridTile tile, byte[][] squares, int[][] imageSpheres) {
+                //the tree is reused for each sphere, so the vectors of every threshold are found for one sphere
+                //before moving onto the next
+                Vector3f[][] sphereVectors = new Vector3f[thresholds.length][spheres.length];
+                MaxTree tree = MaxTree.forThread();
+                for(int s = 0; s < spheres.length; s++){
+                    int r = spheres[s][2];
+                    tree.build(squares[s], 2 * r, 2 * r, thresholds[0], SphereMask.forRadius(r));
+
+                    for(int i = 0; i < thresholds.length; i++){
+                        sphereVectors[i][s] = toVector(new float[]{r, r, r}, tree.findHighlight(thresholds[i]));
+                    }
+                }
+
+                Vector3f[] imageVectors = new Vector3f[thresholds.length];
+                for(int i = 0; i < thresholds.length; i++){
+                    imageVectors[i] = combine(sphereVectors[i]);
+                }
+                vectors[index] = imageVectors;
+            }
+
+            @Override
+            public void failed(int index, ImageGridTile tile) {
+                vectors[index] = new Vector3f[thresholds.length];
+            }
+        });
+
+        return vectors;
+    }
+
+
+    /**
+     * Reads the spheres of each image on the worker threads and runs the task on them. Returns once all the images
+     * have been done or the detection has been cancelled and the images in progress have finished.
+     *
+     * If the spheres are being tracked, each image is searched around where the spheres were found in the image
+     * before it, so that spheres which drift further than the track window over the whole capture are still
+     * followed. The workers decode the regions around the spheres a few images ahead of a tracker thread, which only
+     * does the small search for the centres in each image in order and hands the squares back to the workers to find
+     * the highlights in.
+     *
+     * @param tiles         tiles of the images
+     * @param spheres       the [x, y, r] of each sphere in the images
+     * @param listener      told as each image is done, can be null
+     * @param task          the work to do for each image
+     */
+    private void run(ImageGridTile[] tiles, int[][] spheres, ProgressListener listener, ImageTask task){
+        ThreadPoolExecutor executor = createExecutor("highlight-detector", numWorkers);
+        AtomicInteger done = new AtomicInteger(0);
+
+        if(trackWindow > 0){
+            ThreadPoolExecutor tracker = createExecutor("sphere-tracker", 1);
+            tracker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    track(tiles, spheres, executor, done, listener, task);
+                }
+            });
+            await(tracker);
+
+        }else{
+            for(int i = 0; i < tiles.length; i++){
+                execute(executor, i, tiles, spheres, spheres, null, null, done, listener, task);
+            }
+        }
+
+        await(executor);
+    }
+
+
+    /**
+     * Finds the spheres in each image in order, starting from where they were found in the image before, and gives
+     * each image to the workers once its spheres have been found. The regions of the next
+     * {@link HighlightDetector#DECODE_AHEAD} images for each worker are decoded on the workers while the tracker
+     * searches, around the last spheres it found, so only the search itself is done one image at a time. If the
+     * spheres can't be read from an image, the next one is searched from the same place as it was.
+     *
+     * @param tiles         tiles of the images
+     * @param spheres       the [x, y, r] of each sphere set by the user
+     * @param executor      the workers the regions are decoded and the task for each image is run on
+     * @param done          number of images that have been done
+     * @param listener      told as each image is done, can be null
+     * @param task          the work to do for each image
+     */
+    private void track(ImageGridTile[] tiles, int[][] spheres, ThreadPoolExecutor executor, AtomicInteger done,
+                        ProgressListener listener, ImageTask task){
+        int ahead = DECODE_AHEAD * numWorkers;
+        ArrayList<Future<Region>> regions = new ArrayList<>(tiles.length);
+        for(int i = 0; i < Math.min(ahead, tiles.length); i++){
+            regions.add(decodeAhead(executor, tiles[i], spheres, spheres));
+        }
+
+        int[][] seeds = spheres;
+        int next = 0;
+        try{
+            for(; next < tiles.length && !cancelled.get(); next++){
+                if(next + ahead < tiles.length){
+                    regions.add(decodeAhead(executor, tiles[next + ahead], spheres, seeds));
+                }
+
+                Region region = null;
+                try{
+                    region = regions.get(next).get();
+                }catch(ExecutionException e){
+                    e.printStackTrace();
+                }catch(InterruptedException e){
+                    cancelled.set(true);
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                //let the pixels go as soon as they've been searched
+                regions.set(next, null);
+
+                int[][] imageSpheres = new int[spheres.length][];
+                byte[][] squares = null;
+                try{
+                    squares = trackRegion(region, spheres, seeds, tiles[next], imageSpheres);
+                }catch(RuntimeException e){
+                    e.printStackTrace();
+                }
+
+                //if the spheres couldn't be found here the worker tries reading them again from the same seeds
+                execute(executor, next, tiles, spheres, seeds, squares, imageSpheres, done, listener, task);
+                if(squares != null){seeds = imageSpheres;}
+            }
+        }finally{
+            //if the tracker stops with an error, the images it didn't get to are still done from the last spheres
+            //found, so they all get a result
+            for(; next < tiles.length; next++){
+                execute(executor, next, tiles, spheres, seeds, null, null, done, listener, task);
+            }
+        }
+    }
+
+
+    /**
+     * Decodes the region of an image that its spheres will be searched in on a worker, before the tracker gets to
+     * it. As the tracker hasn't found the spheres in the images before it yet, the region is big enough for each
+     * sphere to have drifted its radius from the seed as well as for the search.
+     *
+     * @param executor  the workers to decode it on
+     * @param tile      tile of the image
+     * @param spheres   the [x, y, r] of each sphere set by the user
+     * @param seeds     the [x, y, r] of each sphere the last time the tracker found it
+     * @return          the decoded region, or the squares if they were already in the {@link SphereCache}
+     */
+    private Future<Region> decodeAhead(ThreadPoolExecutor executor, ImageGridTile tile, int[][] spheres,
+                                        int[][] seeds){
+        return executor.submit(new Callable<Region>() {
+            @Override
+            public Region call() throws Exception {
+                Region region = new Region();
+                if(cancelled.get()){return region;}
+
+                File file = tile.getImageFile();
+                region.imageSpheres = new int[spheres.length][];
+                region.squares = SphereCache.getInstance().get(file, spheres, trackWindow, region.imageSpheres);
+                if(region.squares != null){return region;}
+
+                int[][] driftSeeds = new int[seeds.length][];
+                for(int s = 0; s < seeds.length; s++){
+                    driftSeeds[s] = new int[]{seeds[s][0], seeds[s][1], 2 * seeds[s][2]};
+                }
+                region.requested = union(sphereBoxes(driftSeeds, trackWindow));
+                region.decoded = ImageLoader.readRegion(file, region.requested, 0);
+                return region;
+            }
+        });
+    }
+
+
+    /**
+     * Searches for the spheres in a region decoded ahead of the tracker. If a sphere has drifted so far that its
+     * search box isn't in the region, the image is read again around the seeds instead.
+     *
+     * @param region        region decoded ahead, null if it couldn't be
+     * @param spheres       the [x, y, r] of each sphere set by the user
+     * @param seeds         the [x, y, r] of each sphere where it was found in the image before
+     * @param tile          tile of the image
+     * @param imageSpheres  the [x, y, r] of each sphere in this image is put in here
+     * @return              the grey pixels of the 2r x 2r box around each sphere, or null if the image couldn't be
+     *                      read
+     */
+    private byte[][] trackRegion(Region region, int[][] spheres, int[][] seeds, ImageGridTile tile,
+                                    int[][] imageSpheres){
+        if(region == null){return null;}
+        if(region.squares != null){
+            System.arraycopy(region.imageSpheres, 0, imageSpheres, 0, spheres.length);
+            return region.squares;
+        }
+        if(region.decoded == null){return null;}
+
+        Rectangle[] boxes = sphereBoxes(seeds, trackWindow);
+        for(Rectangle box : boxes){
+            if(!region.requested.contains(box)){return readSpheres(spheres, seeds, trackWindow, tile, imageSpheres);}
+        }
+
+        byte[][] squares = cutSquares(region.decoded, region.requested, boxes, seeds, trackWindow, imageSpheres);
+        return SphereCache.getInstance().put(tile.getImageFile(), spheres, trackWindow, imageSpheres, squares);
+    }
+
+
+    /**
+     * Reads the spheres of one image on a worker thread, unless they have already been read, and runs the task on
+     * them.
+     *
+     * @param executor      the workers to run it on
+     * @param index         index of the image in the set
+     * @param tiles         tiles of the images
+     * @param spheres       the [x, y, r] of each sphere set by the user
+     * @param seeds         the [x, y, r] of each sphere to search for it from in this image
+     * @param squares       squares around the spheres if the tracker has already read them, otherwise null
+     * @param imageSpheres  the [x, y, r] of each sphere in the image if the tracker has already read the squares
+     * @param done          number of images that have been done
+     * @param listener      told as each image is done, can be null
+     * @param task          the work to do for the image
+     */
+    private void execute(ThreadPoolExecutor executor, int index, ImageGridTile[] tiles, int[][] spheres,
+                            int[][] seeds, byte[][] squares, int[][] imageSpheres, AtomicInteger done,
+                            ProgressListener listener, ImageTask task){
+        ImageGridTile tile = tiles[index];
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if(cancelled.get()){return;}
+
+                //one bad image shouldn't stop the others, so anything that goes wrong just rejects this one,
+                //and even an error still leaves a result for it and counts it as done
+                boolean ok = false;
+                try{
+                    byte[][] read = squares;
+                    int[][] readSpheres = imageSpheres;
+                    if(read == null){
+                        readSpheres = new int[spheres.length][];
+                        read = readSpheres(spheres, seeds, trackWindow, tile, readSpheres);
+                    }
+                    if(read != null){
+                        task.run(index, tile, read, readSpheres);
+                        ok = true;
+                    }
+                }catch(RuntimeException e){
+                    e.printStackTrace();
+                }finally{
+                    if(!ok){task.failed(index, tile);}
+
+                    int numDone = done.incrementAndGet();
+                    if(listener != null){listener.progress(numDone, tiles.length);}
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Waits for all the work given to an executor to finish. If the waiting is interrupted the detection is
+     * cancelled.
+     *
+     * @param executor  executor to shut down and wait for
+     */
+    private void await(ThreadPoolExecutor executor){
+        executor.shutdown();
+        try{
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }catch(InterruptedException e){
+            executor.shutdownNow();
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Converts the position of a highlight to a light direction vector.
+     *
+     * @param ballInfo      [x, y, r] of the ball in its square
+     * @param highlight     [x, y] position of the highlight in the square
+     * @return              the light direction vector, or null if the highlight doesn't give a valid one
+     */
+    private static Vector3f toVector(float[] ballInfo, float[] highlight){
+        if(highlight[0] < 0){return null;}
+
+        float[] lightVec = ImageProcessing.calculateLightPosition(ballInfo, highlight);
+        for(float component : lightVec){
+            if(Float.isNaN(component) || Float.isInfinite(component)){return null;}
+        }
+
+        return new Vector3f(lightVec[0], lightVec[1], lightVec[2]);
+    }
+
+
+    /**
+     * Combines the light directions from the spheres in an image into one, by averaging them. The spheres no valid
+     * highlight was found in are left out.
+     *
+     * @param vectors   the light direction from each sphere, null for those with no valid highlight
+     * @return          the combined light direction, or null if there were none or they don't agree
+     */
+    static Vector3f combine(Vector3f[] vectors){
+        Vector3f only = null;
+        int count = 0;
+        double x = 0, y = 0, z = 0;
+        for(Vector3f vector : vectors){
+            if(vector == null){continue;}
+            only = vector;
+            count++;
+            x += vector.getX();
+            y += vector.getY();
+            z += vector.getZ();
+        }
+        if(count <= 1){return only;}
+
+        double length = Math.sqrt(x * x + y * y + z * z);
+        if(length == 0){return null;}
+        x /= length;
+        y /= length;
+        z /= length;
+
+        //every sphere should agree with the average, as they are all lit by the same light
+        double minCos = Math.cos(Math.toRadians(MAX_SPHERE_ANGLE));
+        for(Vector3f vector : vectors){
+            if(vector == null){continue;}
+            double vectorLength = Math.sqrt(vector.getX() * vector.getX() + vector.getY() * vector.getY() +
+                                            vector.getZ() * vector.getZ());
+            double cos = (x * vector.getX() + y * vector.getY() + z * vector.getZ()) / vectorLength;
+            if(cos < minCos){return null;}
+        }
+
+        return new Vector3f((float) x, (float) y, (float) z);
+    }
+
+
+    /**
+     * Gets the boxes around the spheres from the tile's image as greyscale. Boxes that have already been read for
+     * these spheres come from the {@link SphereCache}, so running the detection again with another threshold doesn't
+     * read them again. Otherwise the box around all the spheres is decoded from the image file in one go with
+     * ImageIO, even if the full image is in the {@link FrameCache}, so every image is decoded the same way and the
+     * whole frame doesn't have to be decoded and kept in memory just to look at the spheres. If the spheres are
+     * being tracked the boxes read are big enough for them to move around in, and are searched for each sphere with
+     * {@link SphereFinder}.
+     *
+     * @param spheres       the [x, y, r] of each sphere set by the user, which the squares are cached for
+     * @param seeds         the [x, y, r] of each sphere to search for it from in this image, the spheres found in
+     *                      the image before when they are tracked, otherwise the spheres set by the user
+     * @param trackWindow   how far the centres of the spheres can move from the seeds, 0 to not track them
+     * @param tile          tile of the image to read the spheres from
+     * @param imageSpheres  the [x, y, r] of each sphere in this image is put in here
+     * @return              the grey pixels of the 2r x 2r box around each sphere, which must not be changed, or null
+     *                      if the image couldn't be read
+     */
+    static byte[][] readSpheres(int[][] spheres, int[][] seeds, int trackWindow, ImageGridTile tile,
+                                int[][] imageSpheres){
+        File file = tile.getImageFile();
+        SphereCache cache = SphereCache.getInstance();
+        byte[][] squares = cache.get(file, spheres, trackWindow, imageSpheres);
+        if(squares != null){return squares;}
+
+        Rectangle[] boxes = sphereBoxes(seeds, trackWindow);
+        Rectangle all = union(boxes);
+
+        //read the pixels around all the spheres with one decode of the image, always with ImageIO rather than
+        //copying them from a frame JavaFX has decoded, as the decoders can give slightly different pixels and every
+        //image should be measured the same way
+        BufferedImage decoded;
+        try{
+            decoded = ImageLoader.readRegion(file, all, 0);
+        }catch(IOException e){
+            e.printStackTrace();
+            return null;
+        }
+
+        squares = cutSquares(decoded, all, boxes, seeds, trackWindow, imageSpheres);
+        return cache.put(file, spheres, trackWindow, imageSpheres, squares);
+    }
+
+
+    /**
+     * @param seeds         the [x, y, r] of each sphere to search for it from
+     * @param trackWindow   how far the centres of the spheres can move from the seeds, 0 to not track them
+     * @return              the square around each sphere, or if it's tracked the box it can move around in plus a
+     *                      pixel either side for its edge
+     */
+    private static Rectangle[] sphereBoxes(int[][] seeds, int trackWindow){
+        int margin = trackWindow > 0 ? trackWindow + 2 : 0;
+        int end = trackWindow > 0 ? 1 : 0;
+        Rectangle[] boxes = new Rectangle[seeds.length];
+        for(int s = 0; s < seeds.length; s++){
+            int extent = seeds[s][2] + margin;
+            int left = Math.max(0, seeds[s][0] - extent);
+            int top = Math.max(0, seeds[s][1] - extent);
+            boxes[s] = new Rectangle(left, top, seeds[s][0] + extent + end - left,
+                                        seeds[s][1] + extent + end - top);
+        }
+        return boxes;
+    }
+
+
+    /**
+     * @param boxes     some boxes
+     * @return          the smallest box around all of them
+     */
+    private static Rectangle union(Rectangle[] boxes){
+        Rectangle all = new Rectangle(boxes[0]);
+        for(int i = 1; i < boxes.length; i++){all = all.union(boxes[i]);}
+        return all;
+    }
+
+
+    /**
+     * Cuts the grey square around each sphere out of a decoded region of the image, first searching for the sphere
+     * in its box if it's being tracked.
+     *
+     * @param decoded       the decoded region, which the reader clipped to the image
+     * @param region        the region of the image that was asked for
+     * @param boxes         box of each sphere in the image, which must be inside the region
+     * @param seeds         the [x, y, r] of each sphere to search for it from
+     * @param trackWindow   how far the centres of the spheres can move from the seeds, 0 to not track them
+     * @param imageSpheres  the [x, y, r] of each sphere in this image is put in here
+     * @return              the grey pixels of the 2r x 2r box around each sphere
+     */
+    private static byte[][] cutSquares(BufferedImage decoded, Rectangle region, Rectangle[] boxes, int[][] seeds,
+                                        int trackWindow, int[][] imageSpheres){
+        SphereROI roi = SphereROI.forThread();
+        byte[][] squares = new byte[seeds.length][];
+        for(int s = 0; s < seeds.length; s++){
+            int x = seeds[s][0], y = seeds[s][1], r = seeds[s][2];
+
+            //the reader clips the region to the image
+            Rectangle box = boxes[s].intersection(new Rectangle(region.x, region.y, decoded.getWidth(),
+                                                                    decoded.getHeight()));
+            int[] pixels = decoded.getRGB(box.x - region.x, box.y - region.y, box.width, box.height, null, 0,
+                                            box.width);
+
+            if(trackWindow > 0){
+                imageSpheres[s] = SphereFinder.trackSphere(pixels, box.width, box.height, box.x, box.y, x, y, r,
+                                                            trackWindow);
+            }else{
+                imageSpheres[s] = seeds[s].clone();
+            }
+            BufferedImage square = roi.read(pixels, box.width, box.x, box.y, imageSpheres[s][0], imageSpheres[s][1],
+                                            r);
+
+            //the SphereROI always reads into a grey byte image, which it reuses, so keep a copy for each sphere
+            squares[s] = ((DataBufferByte) square.getRaster().getDataBuffer()).getData().clone();
+        }
+        return squares;
+    }
+}
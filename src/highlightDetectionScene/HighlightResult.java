@@ -0,0 +1,174 @@
+package highlightDetectionScene;
+
+import utils.Utils.Vector3f;
+
+/**
+ * The result of the highlight detection for one image. If a highlight was found it has the light direction vector,
+ * the area of the highlight in pixels and a confidence for it, otherwise it has the reason the image was rejected.
+ * When there are several spheres in the image, the light direction is combined from the highlights of all the spheres
+ * they could be found in, and the direction from each sphere is kept as well.
+ *
+ * @see HighlightDetector
+ *
+ * @author Jed Mills
+ */
+public class HighlightResult {
+
+    /** The reasons an image can be rejected by the highlight detection */
+    public enum Reason{
+        /** No pixels in the sphere were at or above the threshold */
+        NO_HIGHLIGHT("no part of the sphere was brighter than the threshold"),
+
+        /** A highlight was found, but its position doesn't give a valid light direction */
+        INVALID_POSITION("the highlight found doesn't give a valid light direction"),
+
+        /** The light directions from the highlights of the different spheres don't agree */
+        INCONSISTENT_SPHERES("the highlights of the spheres give different light directions"),
+
+        /** The sphere couldn't be read from the image */
+        READ_ERROR("the image couldn't be read");
+
+        /** Description of the reason that can be shown to the user */
+        private String description;
+
+        /**
+         * @param description   description of the reason that can be shown to the user
+         */
+        Reason(String description){
+            this.description = description;
+        }
+
+        /**
+         * @return {@link Reason#description}
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /** Name of the image */
+    private String name;
+
+    /** Light direction vector, or null if the image was rejected */
+    private Vector3f vector;
+
+    /** Number of pixels in the highlights of all the spheres used, or 0 if the image was rejected */
+    private int area;
+
+    /**
+     * Between 0 and 1, the share of all the pixels above the threshold that are in the chosen highlight, the lowest of
+     * the spheres used. 1 means the highlight was the only bright spot on the sphere, lower values mean there were
+     * other reflections it could have been confused with.
+     */
+    private float confidence;
+
+    /** Reason the image was rejected, or null if a highlight was found */
+    private Reason reason;
+
+    /** The [x, y, r] of each sphere in the image, which can differ between images if they were tracked */
+    private int[][] spheres;
+
+    /** Light direction vector from each sphere, null for the spheres no valid highlight was found in */
+    private Vector3f[] sphereVectors;
+
+
+    /**
+     * Creates a new HighlightResult for an image that a highlight was found in.
+     *
+     * @param name              name of the image
+     * @param vector            light direction vector
+     * @param area              number of pixels in the highlights
+     * @param confidence        share of the pixels above the threshold that are in the highlight
+     * @param spheres           the [x, y, r] of each sphere in the image
+     * @param sphereVectors     light direction vector from each sphere
+     */
+    public HighlightResult(String name, Vector3f vector, int area, float confidence, int[][] spheres,
+                           Vector3f[] sphereVectors){
+        this.name = name;
+        this.vector = vector;
+        this.area = area;
+        this.confidence = confidence;
+        this.spheres = spheres;
+        this.sphereVectors = sphereVectors;
+    }
+
+
+    /**
+     * Creates a new HighlightResult for an image that was rejected.
+     *
+     * @param name              name of the image
+     * @param reason            reason the image was rejected
+     * @param spheres           the [x, y, r] of each sphere in the image, or null if they couldn't be read
+     * @param sphereVectors     light direction vector from each sphere, or null if there are none
+     */
+    public HighlightResult(String name, Reason reason, int[][] spheres, Vector3f[] sphereVectors){
+        this.name = name;
+        this.reason = reason;
+        this.spheres = spheres;
+        this.sphereVectors = sphereVectors;
+    }
+
+
+    /**
+     * @return whether a highlight was found in the image
+     */
+    public boolean isAccepted(){
+        return reason == null;
+    }
+
+
+    /**
+     * @return {@link HighlightResult#name}
+     */
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * @return {@link HighlightResult#vector}
+     */
+    public Vector3f getVector() {
+        return vector;
+    }
+
+
+    /**
+     * @return {@link HighlightResult#area}
+     */
+    public int getArea() {
+        return area;
+    }
+
+
+    /**
+     * @return {@link HighlightResult#confidence}
+     */
+    public float getConfidence() {
+        return confidence;
+    }
+
+
+    /**
+     * @return {@link HighlightResult#reason}
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+
+    /**
+     * @return {@link HighlightResult#spheres}
+     */
+    public int[][] getSpheres() {
+        return spheres;
+    }
+
+
+    /**
+     * @return {@link HighlightResult#sphereVectors}
+     */
+    public Vector3f[] getSphereVectors() {
+        return sphereVectors;
+    }
+}
@@ -0,0 +1,218 @@
+package highlightDetectionScene;
+
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import main.Main;
+
+import java.util.List;
+
+/**
+ * Dialog that shows the results of running the highlight detection for a range of thresholds, so the user can see
+ * how many images each threshold would reject and how much the light positions move as the threshold changes,
+ * and pick one, rather than finding a good threshold by trial and error. Shown by the 'Compare Thresholds' button in
+ * the {@link HighlightDetectionLayout}.
+ *
+ * @see HighlightDetectionLayoutListener
+ *
+ * @author Jed Mills
+ */
+public class ThresholdSweepDialog {
+
+    /** Window that this dialog exists in */
+    private Stage stage;
+
+    /** Table with a row for each threshold */
+    private TableView<SweepRow> table;
+
+    /** 'Use Threshold' button */
+    private Button useButton;
+
+    /** 'Close' button */
+    private Button closeButton;
+
+
+    /**
+     * The results of the highlight detection for one threshold, one row of the table.
+     */
+    public static class SweepRow{
+
+        /** The threshold */
+        private int threshold;
+
+        /** Number of images no highlight could be found in */
+        private int rejected;
+
+        /** Mean angle in degrees between the light positions at this threshold and the one before */
+        private double change;
+
+        /**
+         * Creates a new SweepRow.
+         *
+         * @param threshold     the threshold
+         * @param rejected      number of images no highlight could be found in
+         * @param change        mean angle in degrees between the light positions at this threshold and the one
+         *                      before, or NaN if there's nothing to compare with
+         */
+        public SweepRow(int threshold, int rejected, double change){
+            this.threshold = threshold;
+            this.rejected = rejected;
+            this.change = change;
+        }
+
+        /**
+         * @return {@link SweepRow#threshold}
+         */
+        public int getThreshold() {
+            return threshold;
+        }
+
+        /**
+         * @return {@link SweepRow#rejected}
+         */
+        public int getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return {@link SweepRow#change} to two decimal places, or '-' if it's NaN
+         */
+        public String getChange() {
+            if(Double.isNaN(change)){return "-";}
+            return String.format("%.2f", change);
+        }
+    }
+
+
+    /**
+     * Creates a new ThresholdSweepDialog showing the given results.
+     *
+     * @param rows          the results for each threshold
+     * @param numImages     number of images the detection was run on
+     */
+    public ThresholdSweepDialog(List<SweepRow> rows, int numImages){
+        stage = new Stage(StageStyle.UNIFIED);
+        stage.initModality(Modality.WINDOW_MODAL);
+        stage.initOwner(Main.primaryStage);
+        stage.setTitle("Compare Highlight Thresholds");
+
+        //give it the RTI logo in the corner
+        stage.getIcons().add(Main.thumbnail);
+
+        Scene scene = new Scene(createLayout(rows, numImages));
+        scene.getStylesheets().add("stylesheets/default.css");
+
+        stage.setMinWidth(360);
+        stage.setMinHeight(300);
+        stage.setHeight(500);
+        stage.setScene(scene);
+    }
+
+
+    /**
+     * Creates the table and buttons in this dialog.
+     *
+     * @param rows          the results for each threshold
+     * @param numImages     number of images the detection was run on
+     * @return              the box containing all the widgets
+     */
+    private VBox createLayout(List<SweepRow> rows, int numImages){
+        VBox vBox = new VBox();
+        vBox.setPadding(new Insets(5, 5, 5, 5));
+        vBox.setSpacing(5);
+
+            Label infoLabel = new Label("Highlights detected in " + numImages + " images. Change is the mean " +
+                                        "angle the light positions move from the threshold before.");
+            infoLabel.setWrapText(true);
+
+            table = new TableView<>(FXCollections.observableArrayList(rows));
+
+                TableColumn<SweepRow, Integer> thresholdColumn = new TableColumn<>("Threshold");
+                thresholdColumn.setCellValueFactory(new PropertyValueFactory<SweepRow, Integer>("threshold"));
+
+                TableColumn<SweepRow, Integer> rejectedColumn = new TableColumn<>("Rejected images");
+                rejectedColumn.setCellValueFactory(new PropertyValueFactory<SweepRow, Integer>("rejected"));
+
+                TableColumn<SweepRow, String> changeColumn = new TableColumn<>("Change (degrees)");
+                changeColumn.setCellValueFactory(new PropertyValueFactory<SweepRow, String>("change"));
+
+            table.getColumns().add(thresholdColumn);
+            table.getColumns().add(rejectedColumn);
+            table.getColumns().add(changeColumn);
+            table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+            VBox.setVgrow(table, Priority.ALWAYS);
+
+            //contains the use and close buttons
+            HBox hBox = new HBox();
+
+                useButton = new Button("Use Threshold");
+                setUseButtonAction();
+                closeButton = new Button("Close");
+                setCloseButtonAction();
+
+            hBox.getChildren().addAll(useButton, closeButton);
+            hBox.setSpacing(10);
+            hBox.setPadding(new Insets(5, 5, 5, 5));
+            hBox.setAlignment(Pos.CENTER_RIGHT);
+            hBox.getStyleClass().add("defaultBorder");
+
+        vBox.getChildren().addAll(infoLabel, table, hBox);
+
+        return vBox;
+    }
+
+
+    /**
+     * Sets the action for the 'Use Threshold' button, which sets the threshold slider in the
+     * {@link HighlightDetectionLayout} to the threshold of the selected row and closes the dialog.
+     */
+    private void setUseButtonAction(){
+        useButton.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                SweepRow row = table.getSelectionModel().getSelectedItem();
+                if(row == null){
+                    Main.showInputAlert("Please select a threshold from the table.");
+                    return;
+                }
+                HighlightDetectionLayout.getInstance().setThreshold(row.getThreshold());
+                stage.close();
+            }
+        });
+    }
+
+
+    /**
+     * Sets the action for the 'Close' button, which just closes the dialog.
+     */
+    private void setCloseButtonAction(){
+        closeButton.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                stage.close();
+            }
+        });
+    }
+
+
+    /**
+     * Shows this dialog.
+     */
+    public void show(){
+        stage.show();
+    }
+}
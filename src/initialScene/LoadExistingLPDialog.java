@@ -21,12 +21,16 @@ import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import main.Main;
 import main.RTIProject;
+import utils.ImageHeaderScanner;
+import utils.ImageLoader;
+import utils.LPCache;
+import utils.LPSidecar;
+import utils.LightSet;
 import utils.Utils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 import static utils.Utils.linkDirButtonToTextField;
 
@@ -206,27 +210,38 @@ public class LoadExistingLPDialog {
 
         Main.showLoadingDialog("Loading LP file...");
 
-        //read the lpdata from the file
-        HashMap<String, Utils.Vector3f> lpData;
-        try {
-            lpData = Utils.readLPFile(lpFile);
+        //an up to date sidecar has the lp data and image headers, so the lp file and images don't need reading
+        LPSidecar sidecar = LPSidecar.read(lpFile);
 
-        }catch(IOException e){
-            //error actually accessing the file
-            Main.showFileReadingAlert("Error accessing LP file. Check that it still exists.");
-            Main.hideLoadingDialog();
-            return;
+        //read the lpdata from the file
+        LightSet lpData;
+        if(sidecar != null){
+            lpData = sidecar.getLights();
+            //so the later stages don't parse the lp file again
+            LPCache.getInstance().put(lpFile, lpData, sidecar.getLPLength(), sidecar.getLPModified());
+
+        }else{
+            try {
+                lpData = LPCache.getInstance().get(lpFile);
+
+            }catch(IOException e){
+                //error actually accessing the file
+                Main.showFileReadingAlert("Error accessing LP file. Check that it still exists.");
+                Main.hideLoadingDialog();
+                return;
 
-        }catch(Utils.LPException e){
-            //error when parsing the lp data
-            Main.showFileReadingAlert("Error reading LP file: " + e.getMessage());
-            Main.hideLoadingDialog();
-            return;
+            }catch(Utils.LPException e){
+                //error when parsing the lp data
+                Main.showFileReadingAlert("Error reading LP file: " + e.getMessage());
+                Main.hideLoadingDialog();
+                return;
+            }
         }
 
-        //will now create an array of image grid tiles which will be passed to the CropExecuteLayout
-        ArrayList<ImageGridTile> gridTiles = new ArrayList<>();
-        for(String imagePath : lpData.keySet()){
+        //check all the images exist before reading anything from them
+        ArrayList<File> imageFiles = new ArrayList<>();
+        for(int i = 0; i < lpData.size(); i++){
+            String imagePath = lpData.getName(i);
             File imageFile = new File(imagePath);
 
             if(!imageFile.exists()){
@@ -234,35 +249,47 @@ public class LoadExistingLPDialog {
                 Main.hideLoadingDialog();
                 return;
             }
+            imageFiles.add(imageFile);
+        }
 
-            String imageExt = Utils.getFileExtension(imageFile.getName());
-            Image image;
-            if(Utils.checkIn(imageExt.toLowerCase(), new String[]{"jpg", "png"})){
-                //jpegs and pngs are easy to load
-                image = new Image("file:" + imagePath);
-            }else{
-                //otherwise we need to use the JAI API to load them
-                image = Utils.readUnusualImage(imagePath);
-            }
-
-            if(image == null){
-                Main.showFileReadingAlert("Couldn't read image: " + imagePath + ", check it is " +
-                        "one of the accepted formats");
+        //check the headers of all the images match before loading the full images, a sidecar is only ever
+        //written for images that do
+        if(sidecar == null){
+            ImageHeaderScanner.ScanResult scan = new ImageHeaderScanner(ImageLoader.defaultNumWorkers())
+                                                                .scan(imageFiles.toArray(new File[0]));
+            if(!scan.isConsistent()){
+                Main.showFileReadingAlert(scan.getReport("The width, height and format of all images in the " +
+                                                            "LP file must match. Problems found:"));
                 Main.hideLoadingDialog();
                 return;
             }
+        }
 
-            String path = "";
-            for(String imageLoc : lpData.keySet()){
-                path = imageLoc;
-                break;
-            }
-            File firstImgFile = new File(path);
-            Main.currentImagesFolder = firstImgFile.getParentFile();
+        //load thumbnails of all the images in parallel, the full images are loaded by the tiles when needed
+        Image[] thumbnails;
+        try{
+            thumbnails = new ImageLoader(ImageLoader.defaultNumWorkers())
+                                    .loadThumbnails(imageFiles.toArray(new File[0]), 150, null);
+        }catch(ImageLoader.ImageLoadException e){
+            Main.showFileReadingAlert(e.getMessage());
+            Main.hideLoadingDialog();
+            return;
+        }
 
-            //if we've succesfully loaded the image, create a grid tile from it and the name in the lp file
-            ImageGridTile gridTile = new ImageGridTile(null, imageFile.getName(), image, 150,
-                    150, false, true, true);
+        if(imageFiles.isEmpty()){
+            Main.showFileReadingAlert("There are no images in the LP file.");
+            Main.hideLoadingDialog();
+            return;
+        }
+        Main.currentImagesFolder = imageFiles.get(0).getParentFile();
+
+        //will now create an array of image grid tiles which will be passed to the CropExecuteLayout
+        ArrayList<ImageGridTile> gridTiles = new ArrayList<>();
+        for(int i = 0; i < imageFiles.size(); i++){
+            //create a grid tile from the thumbnail and the name in the lp file
+            File imageFile = imageFiles.get(i);
+            ImageGridTile gridTile = new ImageGridTile(null, imageFile.getName(), imageFile, thumbnails[i],
+                                                        150, 150, false, true, true);
             gridTiles.add(gridTile);
         }
 
@@ -8,11 +8,14 @@ import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressIndicator;
 import javafx.scene.image.Image;
@@ -261,7 +264,21 @@ public class Main extends Application {
      * @param text   text to show in the dialog
      */
     public static void showLoadingDialog(String text){
+        showLoadingDialog(text, null);
+    }
+
+    /**
+     * Show the {@link Main#loadingDialog} on the JavaFx thread with the passed text and a cancel button, which runs
+     * the passed action when it is pressed. The progress indicator spins until
+     * {@link Main#setLoadingProgress(double)} is called.
+     *
+     * @param text       text to show in the dialog
+     * @param onCancel   run on the JavaFx thread when the cancel button is pressed, or null for no cancel button
+     */
+    public static void showLoadingDialog(String text, Runnable onCancel){
         loadingDialog.setText(text);
+        loadingDialog.setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
+        loadingDialog.setOnCancel(onCancel);
         Platform.runLater(new Runnable() {
             @Override
             public void run() {
@@ -271,6 +288,15 @@ public class Main extends Application {
         });
     }
 
+    /**
+     * Sets how far through the task the {@link Main#loadingDialog} is showing on the JavaFx thread.
+     *
+     * @param progress   between 0 and 1
+     */
+    public static void setLoadingProgress(double progress){
+        loadingDialog.setProgress(progress);
+    }
+
     /**
      * Hide the {@link Main#loadingDialog} on the JavaFx thread.
      */
@@ -397,7 +423,8 @@ public class Main extends Application {
 
     /**
      * This is the dialog box that appears when the app is loading or reading images/lp files etc. It has a blue
-     * spinning progress indicator and text to display what is happening.
+     * spinning progress indicator and text to display what is happening. Long tasks can also show how far through they
+     * are and have a cancel button.
      */
     private static class LoadingDialog{
 
@@ -416,6 +443,12 @@ public class Main extends Application {
         /** The label that is updated with a message for what is happening */
         private Label label;
 
+        /** Button that cancels the task, only shown if the task can be cancelled */
+        private Button cancelButton;
+
+        /** Run when the cancel button is pressed */
+        private Runnable onCancel;
+
 
         /**
          * Create a new LoadingDialog with the layout described in the class declaration.
@@ -434,7 +467,23 @@ public class Main extends Application {
             label.setFont(Font.font(20));
             label.setId("loadingDialogLabel");
 
-            vBox.getChildren().addAll(label, progIndicator);
+            cancelButton = new Button("Cancel");
+            cancelButton.setId("loadingDialogCancelButton");
+            cancelButton.setOnAction(new EventHandler<ActionEvent>() {
+                @Override
+                public void handle(ActionEvent event) {
+                    if(onCancel != null){
+                        cancelButton.setDisable(true);
+                        label.setText("Cancelling...");
+                        onCancel.run();
+                    }
+                }
+            });
+            //only shown for tasks that can be cancelled, and takes up no space when not
+            cancelButton.setVisible(false);
+            cancelButton.managedProperty().bind(cancelButton.visibleProperty());
+
+            vBox.getChildren().addAll(label, progIndicator, cancelButton);
             vBox.setPadding(new Insets(20, 20,20, 20));
             vBox.setStyle("-fx-border-width: 2; -fx-border-color: #dddddd;");
             scene = new Scene(vBox);
@@ -475,6 +524,39 @@ public class Main extends Application {
 
 
 
+        /**
+         * @param progress between 0 and 1 for how far through the task is, or
+         *                 {@link ProgressIndicator#INDETERMINATE_PROGRESS}, set on the JavaFx thread
+         */
+        public void setProgress(double progress){
+            Platform.runLater(new Runnable() {
+                @Override
+                public void run() {
+                    progIndicator.setProgress(progress);
+                }
+            });
+        }
+
+
+
+        /**
+         * @param onCancel run when the cancel button is pressed, or null to hide the cancel button, set on the JavaFx
+         *                 thread
+         */
+        public void setOnCancel(Runnable onCancel){
+            Platform.runLater(new Runnable() {
+                @Override
+                public void run() {
+                    LoadingDialog.this.onCancel = onCancel;
+                    cancelButton.setDisable(false);
+                    cancelButton.setVisible(onCancel != null);
+                    stage.sizeToScene();
+                }
+            });
+        }
+
+
+
         /**
          * Brings the loading dialog above all the other windows.
          */
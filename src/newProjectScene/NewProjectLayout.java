@@ -13,13 +13,18 @@ import javafx.scene.layout.*;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import main.*;
+import utils.FrameCache;
+import utils.ImageHeaderScanner;
+import utils.ImageLoader;
+import utils.LPCache;
+import utils.LightSet;
+import utils.SphereCache;
 import utils.Utils;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * This layout allows the user to open a a folder of images, and browse them. In the highlight detection project, the
@@ -89,11 +94,17 @@ public class NewProjectLayout extends VBox implements CreatorScene{
     private RTIProject rtiProject;
 
     /** LP data loaded through the LoadProjRsrcsDialog */
-    private HashMap<String, Utils.Vector3f> lpData;
+    private LightSet lpData;
 
     /** Whether the user has loaded the project resources through the LoadProjRsrcsDialog */
     private boolean resourcesSet = false;
 
+    /** Loader decoding the thumbnails of the images folder, null when no images are loading */
+    private volatile ImageLoader currentLoader;
+
+    /** Held while swapping the loader, clearing the grids and adding tiles, so old tiles can't follow a clear */
+    private final Object loaderLock = new Object();
+
     /** The singleton instance of this class*/
     private static NewProjectLayout ourInstance = new NewProjectLayout();
 
@@ -338,14 +349,21 @@ public class NewProjectLayout extends VBox implements CreatorScene{
 
 
     /**
-     * This method is called when the images in a directory want to be loaded into the selected images grid. Will load
-     * all the images in the folder, checking they ar of the same format, width and height, and create the
-     * ImageGridTiles to display in the {@link NewProjectLayout#selectedImages} grid.
+     * This method is called when the images in a directory want to be loaded into the selected images grid. The
+     * headers of all the images are checked first to make sure they are of the same format, width and height, then
+     * the tiles are streamed into the {@link NewProjectLayout#selectedImages} grid as their thumbnails are decoded,
+     * so the user can start working with the images that are already there while the rest are loading.
      *
      * @param directory     directory of images to load
      */
     public void loadImageDirectory(File directory){
-        Main.showLoadingDialog("Loading images...");
+        //stop any folder that's still loading, as its tiles are about to be cleared away
+        synchronized (loaderLock){
+            if(currentLoader != null){currentLoader.cancel();}
+            currentLoader = null;
+        }
+
+        Main.showLoadingDialog("Checking images...");
 
         try{
             File[] images = directory.listFiles(new FilenameFilter() {
@@ -366,73 +384,68 @@ public class NewProjectLayout extends VBox implements CreatorScene{
                 return;
             }
 
-            //these will hold all the in for to generate the lp data in memory
-            Image[] imagesInDir = new Image[images.length];
-            String[] imageLocations = new String[images.length];
-            String[] imageNames = new String[images.length];
-
-            String format = Utils.getFileExtension(images[0].getName());
-
-            //used to find what format all the images should be
-            Image firstImg;
-            if(Utils.checkIn(format.toLowerCase(), new String[]{"jpg", "png"})){
-                firstImg = new Image("file:" + images[0].getAbsolutePath());
-
-            }else{
-                firstImg = Utils.readUnusualImage(images[0].getAbsolutePath());
-            }
-
-            //there was some big mistake that happened here so quit out
-            if(firstImg == null){
-                Main.showFileReadingAlert("Error reading image files. Accepted formats are: " +
-                                        "'.jpg', '.png', '.tif', '.bmp'.");
+            //check all the image headers before decoding anything, so a bad set is rejected straight away
+            ImageHeaderScanner.ScanResult scan = new ImageHeaderScanner(ImageLoader.defaultNumWorkers()).scan(images);
+            if(!scan.isConsistent()){
                 Main.hideLoadingDialog();
+                Main.showFileReadingAlert(scan.getReport("The width, height and format of all images in the " +
+                                                            "folder must match. Problems found:"));
                 return;
             }
 
-            imagesInDir[0] = firstImg;
-            imageLocations[0] = images[0].getAbsolutePath();
-            imageNames[0] = images[0].getName();
-
-            double imageHeight = firstImg.getHeight();
-            double imageWidth = firstImg.getWidth();
-
-            Image currentImg;
-            for(int i = 1; i < imagesInDir.length; i++){
-                //id it's a png or jpg javafx can load these fine
-                if(Utils.checkIn(format.toLowerCase(), new String[]{"jpg", "png"})){
-                    currentImg = new Image("file:" + images[i].getAbsolutePath());
-                }else{
-                    //otherwise we have to use the JAI API to load it
-                    currentImg = Utils.readUnusualImage(images[i].getAbsolutePath());
-                }
+            //the images are fine, so the grid can be used while the thumbnails load
+            Main.hideLoadingDialog();
+            setWidthHeightFields(scan.getHeaders()[0].getWidth(), scan.getHeaders()[0].getHeight());
+
+            ImageLoader imageLoader = new ImageLoader(ImageLoader.defaultNumWorkers());
+            synchronized (loaderLock){
+                selectedImages.clearTiles();
+                rejectedImages.clearTiles();
+                currentLoader = imageLoader;
+                selectedImages.setLoadProgress(0, images.length);
+            }
 
-                //make sure the width and the height of all images are the same
-                if(currentImg.getWidth() != imageWidth || currentImg.getHeight() != imageHeight){
-                    Main.showFileReadingAlert("The width and height of all images in the folder do not match.");
-                    Main.hideLoadingDialog();
-                    return;
-                }
+            //tiles finish in any order, but are put in the grid in the order of the files
+            ImageGridTile[] tiles = new ImageGridTile[images.length];
+            Utils.IntHolder nextTile = new Utils.IntHolder(0);
+            try{
+                imageLoader.loadThumbnails(images, 150, new ImageLoader.LoadListener() {
+                    @Override
+                    public void imageLoaded(int index, File file, Image thumbnail) {
+                        ImageGridTile tile = selectedImages.createImageTile(file.getName(), file, thumbnail,
+                                                                            150, 150);
+                        synchronized (loaderLock){
+                            //a newer folder has been opened or the scene reset, so these tiles aren't wanted
+                            if(currentLoader != imageLoader){return;}
+
+                            tiles[index] = tile;
+                            while(nextTile.getValue() < tiles.length && tiles[nextTile.getValue()] != null){
+                                selectedImages.addImageTile(tiles[nextTile.getValue()]);
+                                nextTile.pp();
+                            }
+                            selectedImages.setLoadProgress(nextTile.getValue(), tiles.length);
+                        }
+                    }
+                });
+
+            }catch(ImageLoader.ImageLoadException e){
+                //a newer folder is loading so just leave it to that
+                if(imageLoader.isCancelled()){return;}
 
-                //make sure the format of all images is the same
-                String name = images[i].getName();
-                if(!Utils.getFileExtension(name).equals(format)){
-                    Main.showFileReadingAlert("All images in folder must be of the same format.");
-                    Main.hideLoadingDialog();
-                    return;
+                //one of the images was bad or didn't match the others, so quit out
+                synchronized (loaderLock){
+                    if(currentLoader != imageLoader){return;}
+                    selectedImages.clearTiles();
+                    selectedImages.setLoadProgress(0, 0);
                 }
+                Main.showFileReadingAlert(e.getMessage());
 
-                imagesInDir[i] = currentImg;
-                imageLocations[i] = images[i].getAbsolutePath();
-                imageNames[i] = images[i].getName();
+            }finally{
+                synchronized (loaderLock){
+                    if(currentLoader == imageLoader){currentLoader = null;}
+                }
             }
 
-            //put the newly created images in the preview
-            selectedImages.clearTiles();
-            rejectedImages.clearTiles();
-            loadImagesIntoPreview(imagesInDir, imageNames);
-            setWidthHeightFields(imagesInDir[0].getWidth(), imagesInDir[0].getHeight());
-
         }catch(Exception e){
             e.printStackTrace();
             Main.hideLoadingDialog();
@@ -453,21 +466,6 @@ public class NewProjectLayout extends VBox implements CreatorScene{
     }
 
 
-    /**
-     * Creats {@link ImageGridTile}s of the given images and names and loads them into the
-     * {@link NewProjectLayout#selectedImages} grid.
-     *
-     * @param images        all the images
-     * @param imageNames    namesof all the images in the same order
-     */
-    private void loadImagesIntoPreview(Image[] images, String[] imageNames){
-        for(int i = 0; i < images.length; i++){
-            selectedImages.addImageTile(imageNames[i], images[i], 150, 150);
-        }
-        Main.hideLoadingDialog();
-    }
-
-
     /**
      * Sets the RTIProject type to be displayed in the type field on the left ofthe layout.
      *
@@ -604,7 +602,7 @@ public class NewProjectLayout extends VBox implements CreatorScene{
             public void run() {
                 try {
                     //read the lp file and load the images
-                    lpData = Utils.readLPFile(lpFile);
+                    lpData = LPCache.getInstance().get(lpFile);
                     setResources(imgsLocation, assemblyFilesLocation);
 
                 }catch(IOException e){
@@ -700,16 +698,23 @@ public class NewProjectLayout extends VBox implements CreatorScene{
      * after going back to the {@link initialScene.InitialLayout}.
      */
     public void resetScene(){
-        selectedImages.clearTiles();
-        rejectedImages.clearTiles();
+        synchronized (loaderLock){
+            if(currentLoader != null){currentLoader.cancel();}
+            currentLoader = null;
+            selectedImages.clearTiles();
+            selectedImages.setLoadProgress(0, 0);
+            rejectedImages.clearTiles();
+        }
         removeRsnTxtField.setText("");
+        FrameCache.getInstance().clear();
+        SphereCache.getInstance().clear();
     }
 
 
     /**
      * @return {@link NewProjectLayout#lpData}
      */
-    public HashMap<String, Utils.Vector3f> getLpData() {
+    public LightSet getLpData() {
         return lpData;
     }
 
@@ -722,6 +727,14 @@ public class NewProjectLayout extends VBox implements CreatorScene{
     }
 
 
+    /**
+     * @return whether the thumbnails of the images folder are still being loaded into the grid
+     */
+    public boolean isLoading(){
+        return currentLoader != null || selectedImages.hasPendingTiles();
+    }
+
+
     /**
      * @return {@link NewProjectLayout#imgsFolder}
      */
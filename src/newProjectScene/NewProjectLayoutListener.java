@@ -7,6 +7,10 @@ import javafx.scene.control.Button;
 import javafx.scene.image.Image;
 import main.Main;
 import main.RTIProject;
+import utils.ImageHeaderScanner;
+import utils.ImageLoader;
+import utils.LightSet;
+import utils.RasterConverter;
 import utils.Utils;
 
 import javax.imageio.ImageIO;
@@ -16,10 +20,9 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Consumer;
 
-import static utils.Utils.fxImageToBufferedJPEG;
-
 
 /**
  * Listens to events from the {@link NewProjectLayout}
@@ -131,11 +134,20 @@ public class NewProjectLayoutListener implements EventHandler<ActionEvent> {
                     return;
                 }
 
+                //all the images have to be in the grid before moving on
+                if(newProjectLayout.isLoading()){
+                    Main.hideLoadingDialog();
+                    Main.showInputAlert("Please wait for all the images to finish loading.");
+                    return;
+                }
+
                 //the images have to be jpegs to move on, so this method will make sure they are
                 File selectedImagesFolder;
-                selectedImagesFolder = saveImagesAsJPEGs();
-
-                Main.hideLoadingDialog();
+                try{
+                    selectedImagesFolder = saveImagesAsJPEGs();
+                }finally{
+                    Main.hideLoadingDialog();
+                }
 
                 if(selectedImagesFolder == null){return;}
 
@@ -145,9 +157,9 @@ public class NewProjectLayoutListener implements EventHandler<ActionEvent> {
                 if(newProjectLayout.getImagesExtension().equals("jpg")){
                     //add all the tiles in the selected images grid
                     for(ImageGridTile gridTile : newProjectLayout.getSelectedImages().getGridTiles()){
-                        handoverTiles.add(new ImageGridTile(null, gridTile.getName(), gridTile.getImage(),
-                                                                gridTile.getTileWidth(), gridTile.getTileHeight(),
-                                                                true, true, true));
+                        handoverTiles.add(new ImageGridTile(null, gridTile.getName(), gridTile.getImageFile(),
+                                                                gridTile.getThumbnail(), gridTile.getTileWidth(),
+                                                                gridTile.getTileHeight(), true, true, true));
                     }
 
                 }else{
@@ -187,25 +199,15 @@ public class NewProjectLayoutListener implements EventHandler<ActionEvent> {
                 return null;
             }
 
-            Image[] imagesInDir = new Image[images.length];
-            String[] imageLocations = new String[images.length];
-            String[] imageNames = new String[images.length];
-
-
-            //load all the images
-            for(int i = 0; i < imagesInDir.length; i++){
-                Image currentImg = new Image("file:" + images[i].getAbsolutePath());
-
-                imagesInDir[i] = currentImg;
-                imageLocations[i] = images[i].getAbsolutePath();
-                imageNames[i] = images[i].getName();
-            }
+            //load thumbnails of all the images, the full images are loaded by the tiles when they're needed
+            Image[] thumbnails = new ImageLoader(ImageLoader.defaultNumWorkers())
+                                                .loadThumbnails(images, 150, null);
 
             //create grid tiles from 'em
             ArrayList<ImageGridTile> imageGridTiles = new ArrayList<>();
-            for(int i = 0; i < imagesInDir.length; i++){
-                imageGridTiles.add(new ImageGridTile(null, imageNames[i], imagesInDir[i], 150,
-                                                150, true, true, true));
+            for(int i = 0; i < images.length; i++){
+                imageGridTiles.add(new ImageGridTile(null, images[i].getName(), images[i], thumbnails[i],
+                                                150, 150, true, true, true));
             }
 
             return imageGridTiles;
@@ -245,25 +247,45 @@ public class NewProjectLayoutListener implements EventHandler<ActionEvent> {
         for(ImageGridTile tile : gridTiles){gridTileSet.add(tile);}
 
         Utils.BooleanHolder success = new Utils.BooleanHolder(true);
-        gridTileSet.parallelStream().forEach(new Consumer<ImageGridTile>() {
-            @Override
-            public void accept(ImageGridTile tile) {
-                //convert the non-jpegs to jpegs
-                BufferedImage jpgImg = fxImageToBufferedJPEG(tile.getImage());
-                String tileNameNoExt = tile.getName().split("[.]")[0];
-                File destination = new File(convertedFolder.getAbsolutePath()
-                                                            + "/" + tileNameNoExt + ".jpg");
-
-                //write it in the new folder
-                try{
-                    ImageIO.write(jpgImg, "jpg", destination);
-                }catch (IOException e){
-                    e.printStackTrace();
-                    success.setTrue(false);
+
+        //images that couldn't be read, which may have been moved since they were loaded
+        ConcurrentLinkedQueue<File> unreadable = new ConcurrentLinkedQueue<>();
+        try{
+            gridTileSet.parallelStream().forEach(new Consumer<ImageGridTile>() {
+                @Override
+                public void accept(ImageGridTile tile) {
+                    Image frame = tile.getImage();
+                    if(frame == null){
+                        unreadable.add(tile.getImageFile());
+                        return;
+                    }
+
+                    //convert the non-jpegs to jpegs
+                    BufferedImage jpgImg = RasterConverter.acquire(frame);
+                    String tileNameNoExt = tile.getName().split("[.]")[0];
+                    File destination = new File(convertedFolder.getAbsolutePath()
+                                                                + "/" + tileNameNoExt + ".jpg");
+
+                    //write it in the new folder
+                    try{
+                        ImageIO.write(jpgImg, "jpg", destination);
+                    }catch (IOException e){
+                        e.printStackTrace();
+                        success.setTrue(false);
+                    }finally{
+                        RasterConverter.release(jpgImg);
+                    }
                 }
-            }
-        });
+            });
+        }finally{
+            RasterConverter.clearPool();
+        }
 
+        if(!unreadable.isEmpty()){
+            Main.hideLoadingDialog();
+            Main.showFileReadingAlert("Couldn't read image: " + unreadable.peek().getAbsolutePath());
+            return null;
+        }
         if(!success.isTrue()){
             Main.hideLoadingDialog();
             Main.showFileReadingAlert("Attempted to convert images to JPEGs, " +
@@ -292,6 +314,13 @@ public class NewProjectLayoutListener implements EventHandler<ActionEvent> {
                     return;
                 }
 
+                //all the images have to be in the grid before moving on
+                if(newProjectLayout.isLoading()){
+                    Main.hideLoadingDialog();
+                    Main.showInputAlert("Please wait for all the images to finish loading.");
+                    return;
+                }
+
                 //the folder with the images in it
                 String imgFolderPath = newProjectLayout.getImgsFolder().getAbsolutePath();
                 File imageParentDir = new File(imgFolderPath);
@@ -307,8 +336,10 @@ public class NewProjectLayoutListener implements EventHandler<ActionEvent> {
                 //check all the images specified in the lp file can be found in the given images folder
                 String imageName;
                 ArrayList<String> fileNames = new ArrayList<>();
-                for(String imagePath : newProjectLayout.getLpData().keySet()){
-                    imageName = new File(imagePath).getName();
+                ArrayList<File> imageFiles = new ArrayList<>();
+                LightSet lpData = newProjectLayout.getLpData();
+                for(int i = 0; i < lpData.size(); i++){
+                    imageName = new File(lpData.getName(i)).getName();
 
                     if(!Utils.fileExists(imageParentDir, imageName)){
                         Main.hideLoadingDialog();
@@ -319,6 +350,17 @@ public class NewProjectLayoutListener implements EventHandler<ActionEvent> {
                     }
 
                     fileNames.add(imageName);
+                    imageFiles.add(new File(imageParentDir, imageName));
+                }
+
+                //read just the image headers to check they all match before moving on
+                ImageHeaderScanner.ScanResult scan = new ImageHeaderScanner(ImageLoader.defaultNumWorkers())
+                                                                .scan(imageFiles.toArray(new File[0]));
+                if(!scan.isConsistent()){
+                    Main.hideLoadingDialog();
+                    Main.showFileReadingAlert(scan.getReport("The width, height and format of all images " +
+                                                                "in the LP file must match. Problems found:"));
+                    return;
                 }
 
                 ArrayList<ImageGridTile> selectedImages = newProjectLayout.getSelectedImages(fileNames);
@@ -326,7 +368,7 @@ public class NewProjectLayoutListener implements EventHandler<ActionEvent> {
                 Main.hideLoadingDialog();
                 Main.changeToCropExecuteScene(selectedImages);
             }
-        }).run();
+        }).start();
 
     }
 
@@ -0,0 +1,336 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Finds the connected groups of pixels in a grey image that are at or above a threshold, the way the highlight
+ * detection finds the bright spots on a specular sphere. Pixels are connected to all 8 of their neighbours.
+ *
+ * The labelling is done in two passes over a byte array. The first pass gives each pixel a provisional label and
+ * records which labels touch in a union-find forest, the second pass resolves each pixel to its final component
+ * and adds it to that component's area, centroid and bounding box. Components are numbered from 0 in the order
+ * their first pixel is found scanning the image row by row, the same order a flood fill started from each unvisited
+ * pixel finds them in. When the image is the square around a sphere, a {@link SphereMask} can be given so that only
+ * the pixels inside the sphere are looked at. The label buffers are kept and reused for the next image, so each
+ * thread should get its own with {@link ComponentLabeller#forThread()}.
+ *
+ * @see ImageProcessing#findHighlight(byte[], int, int, int, SphereMask)
+ *
+ * @author Jed Mills
+ */
+public class ComponentLabeller {
+
+    /** The ComponentLabeller of each thread */
+    private static final ThreadLocal<ComponentLabeller> threadLabellers = new ThreadLocal<ComponentLabeller>(){
+        @Override
+        protected ComponentLabeller initialValue() {
+            return new ComponentLabeller();
+        }
+    };
+
+    /** Label of each pixel of the last image, 0 for pixels below the threshold, component index + 1 otherwise */
+    private int[] labels = new int[0];
+
+    /** Union-find parent of each provisional label, label 0 is unused */
+    private int[] parent = new int[16];
+
+    /** Final component index + 1 of each provisional label that is the root of its tree */
+    private int[] component = new int[16];
+
+    /** Mask the last image was labelled with, the labels outside it are all still 0, or null if there wasn't one */
+    private SphereMask lastMask;
+
+    /** Number of components found in the last image */
+    private int count;
+
+    /** Number of pixels in each component */
+    private int[] area = new int[16];
+
+    /** Sum of the x coords of the pixels in each component */
+    private long[] sumX = new long[16];
+
+    /** Sum of the y coords of the pixels in each component */
+    private long[] sumY = new long[16];
+
+    /** Smallest x of each component */
+    private int[] minX = new int[16];
+
+    /** Smallest y of each component */
+    private int[] minY = new int[16];
+
+    /** Largest x of each component */
+    private int[] maxX = new int[16];
+
+    /** Largest y of each component */
+    private int[] maxY = new int[16];
+
+
+    /**
+     * @return the ComponentLabeller for the calling thread
+     */
+    public static ComponentLabeller forThread(){
+        return threadLabellers.get();
+    }
+
+
+    /**
+     * Creates a new ComponentLabeller.
+     */
+    public ComponentLabeller(){}
+
+
+    /**
+     * Labels the groups of connected pixels that are at or above the threshold in the image.
+     *
+     * @param pixels        grey values of the image in row major order, read as unsigned bytes
+     * @param width         width of the image
+     * @param height        height of the image
+     * @param threshold     pixels with a value at or above this are part of a component
+     * @return              the number of components found
+     */
+    public int label(byte[] pixels, int width, int height, int threshold){
+        return label(pixels, width, height, threshold, null);
+    }
+
+
+    /**
+     * Labels the groups of connected pixels that are at or above the threshold in the square around a sphere,
+     * only looking at the pixels inside the sphere's mask. The pixels outside the mask are never read or labelled.
+     *
+     * @param pixels        grey values of the square in row major order, read as unsigned bytes
+     * @param width         width of the square, the size of the mask
+     * @param height        height of the square, the size of the mask
+     * @param threshold     pixels with a value at or above this are part of a component
+     * @param mask          pixels of the square to look at, or null to look at all of them
+     * @return              the number of components found
+     */
+    public int label(byte[] pixels, int width, int height, int threshold, SphereMask mask){
+        int numPixels = width * height;
+        if(labels.length < numPixels){
+            labels = new int[numPixels];
+        }else if(mask != null && mask != lastMask){
+            //the labels outside the mask are only looked at as neighbours and never written, so have to be 0
+            Arrays.fill(labels, 0, numPixels, 0);
+        }
+        lastMask = mask;
+
+        //first pass, give each pixel the smallest label of the neighbours already seen, and join their labels
+        int nextLabel = 1;
+        for(int y = 0; y < height; y++){
+            int row = y * width;
+            int end = mask == null ? width : mask.getRowEnd(y);
+            for(int x = mask == null ? 0 : mask.getRowStart(y); x < end; x++){
+                int i = row + x;
+                if((pixels[i] & 0xFF) < threshold){
+                    labels[i] = 0;
+                    continue;
+                }
+
+                int west = x > 0 ? labels[i - 1] : 0;
+                int northWest = 0, north = 0, northEast = 0;
+                if(y > 0){
+                    int above = i - width;
+                    northWest = x > 0 ? labels[above - 1] : 0;
+                    north = labels[above];
+                    northEast = x < width - 1 ? labels[above + 1] : 0;
+                }
+
+                int label = 0;
+                label = join(label, west);
+                label = join(label, northWest);
+                label = join(label, north);
+                label = join(label, northEast);
+
+                if(label == 0){
+                    if(nextLabel == parent.length){
+                        parent = Arrays.copyOf(parent, parent.length * 2);
+                    }
+                    label = nextLabel++;
+                    parent[label] = label;
+                }
+                labels[i] = label;
+            }
+        }
+
+        //the root of each tree is the first label given to that component, so numbering the roots in order of
+        //their label numbers the components in order of their first pixel
+        if(component.length < nextLabel){component = new int[parent.length];}
+        count = 0;
+        for(int label = 1; label < nextLabel; label++){
+            if(parent[label] == label){
+                component[label] = ++count;
+            }
+        }
+        ensureStatsCapacity(count);
+        for(int c = 0; c < count; c++){
+            area[c] = 0;
+            sumX[c] = 0;
+            sumY[c] = 0;
+            minX[c] = Integer.MAX_VALUE;
+            minY[c] = Integer.MAX_VALUE;
+            maxX[c] = -1;
+            maxY[c] = -1;
+        }
+
+        //second pass, resolve each pixel to its component and add it to the component's stats
+        for(int y = 0; y < height; y++){
+            int row = y * width;
+            int end = mask == null ? width : mask.getRowEnd(y);
+            for(int x = mask == null ? 0 : mask.getRowStart(y); x < end; x++){
+                int i = row + x;
+                if(labels[i] == 0){continue;}
+
+                int c = component[find(labels[i])];
+                labels[i] = c;
+                c--;
+
+                area[c]++;
+                sumX[c] += x;
+                sumY[c] += y;
+                if(x < minX[c]){minX[c] = x;}
+                if(x > maxX[c]){maxX[c] = x;}
+                if(y < minY[c]){minY[c] = y;}
+                if(y > maxY[c]){maxY[c] = y;}
+            }
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Joins the trees of the two labels, making the root with the smaller label the root of both.
+     *
+     * @param label         label the pixel has so far, or 0 if it doesn't have one yet
+     * @param neighbour     label of a neighbouring pixel, or 0 if it is below the threshold
+     * @return              the root of the joined tree, or the label if the neighbour has none
+     */
+    private int join(int label, int neighbour){
+        if(neighbour == 0){return label;}
+
+        int neighbourRoot = find(neighbour);
+        if(label == 0){return neighbourRoot;}
+
+        int root = find(label);
+        if(root < neighbourRoot){
+            parent[neighbourRoot] = root;
+            return root;
+        }else{
+            parent[root] = neighbourRoot;
+            return neighbourRoot;
+        }
+    }
+
+
+    /**
+     * Finds the root of the label's tree, halving the path to it on the way.
+     *
+     * @param label     provisional label
+     * @return          the root label of its tree
+     */
+    private int find(int label){
+        while(parent[label] != label){
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+
+    /**
+     * Makes sure the stats arrays can hold the given number of components.
+     *
+     * @param capacity  number of components
+     */
+    private void ensureStatsCapacity(int capacity){
+        if(area.length >= capacity){return;}
+
+        int length = Math.max(capacity, area.length * 2);
+        area = new int[length];
+        sumX = new long[length];
+        sumY = new long[length];
+        minX = new int[length];
+        minY = new int[length];
+        maxX = new int[length];
+        maxY = new int[length];
+    }
+
+
+    /**
+     * @return {@link ComponentLabeller#count}
+     */
+    public int getCount() {
+        return count;
+    }
+
+
+    /**
+     * @return {@link ComponentLabeller#labels}, which is only valid for as many pixels as the last image had
+     */
+    public int[] getLabels() {
+        return labels;
+    }
+
+
+    /**
+     * @param c     index of the component
+     * @return      the number of pixels in the component
+     */
+    public int getArea(int c) {
+        return area[c];
+    }
+
+
+    /**
+     * @param c     index of the component
+     * @return      the mean x of the pixels in the component
+     */
+    public float getCentroidX(int c) {
+        return (float) sumX[c] / area[c];
+    }
+
+
+    /**
+     * @param c     index of the component
+     * @return      the mean y of the pixels in the component
+     */
+    public float getCentroidY(int c) {
+        return (float) sumY[c] / area[c];
+    }
+
+
+    /**
+     * @param c     index of the component
+     * @return      the smallest x of the component's bounding box
+     */
+    public int getMinX(int c) {
+        return minX[c];
+    }
+
+
+    /**
+     * @param c     index of the component
+     * @return      the smallest y of the component's bounding box
+     */
+    public int getMinY(int c) {
+        return minY[c];
+    }
+
+
+    /**
+     * @param c     index of the component
+     * @return      the largest x of the component's bounding box
+     */
+    public int getMaxX(int c) {
+        return maxX[c];
+    }
+
+
+    /**
+     * @param c     index of the component
+     * @return      the largest y of the component's bounding box
+     */
+    public int getMaxY(int c) {
+        return maxY[c];
+    }
+}
@@ -0,0 +1,129 @@
+package utils;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Crops a set of images and writes the crops as JPEGs, reading only the pixels inside the crop rectangle from each
+ * image file with {@link ImageLoader#readRegion(File, Rectangle, int)}. The full frames are never decoded or kept in
+ * memory, so each worker only holds one crop at a time, and a set of any number of frames can be cropped with the
+ * memory of a few crops.
+ */
+public class CropExporter {
+
+    /** Number of images that are cropped at the same time */
+    private final int numWorkers;
+
+
+    /**
+     * Creates a new CropExporter that crops the given number of images at the same time.
+     *
+     * @param numWorkers    number of worker threads
+     */
+    public CropExporter(int numWorkers) {
+        this.numWorkers = Math.max(1, numWorkers);
+    }
+
+
+    /**
+     * Crops each of the source images to the region and writes it to its destination as a JPEG, in parallel. An
+     * image that ImageIO can't read the region of, or that couldn't be written, is left for the caller to crop
+     * another way.
+     *
+     * @param sources       image files to crop
+     * @param destinations  JPEG file to write the crop of each source to
+     * @param region        area of the images to keep
+     * @return              whether each image was cropped and written
+     */
+    public boolean[] export(File[] sources, File[] destinations, Rectangle region){
+        boolean[] written = new boolean[sources.length];
+        if(sources.length == 0){return written;}
+
+        ExecutorService executor = ImageLoader.createExecutor("crop-exporter", numWorkers);
+        try{
+            ArrayList<Future<Boolean>> futures = new ArrayList<>();
+            for(int i = 0; i < sources.length; i++){
+                File source = sources[i];
+                File destination = destinations[i];
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return cropToFile(source, destination, region);
+                    }
+                }));
+            }
+
+            for(int i = 0; i < sources.length; i++){
+                try{
+                    written[i] = futures.get(i).get();
+                }catch(ExecutionException e){
+                    e.printStackTrace();
+                }
+            }
+
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+
+        }finally{
+            executor.shutdownNow();
+        }
+
+        return written;
+    }
+
+
+    /**
+     * @param source        image file to crop
+     * @param destination   JPEG file to write the crop to
+     * @param region        area of the image to keep
+     * @return              whether the crop was written
+     */
+    private static boolean cropToFile(File source, File destination, Rectangle region){
+        BufferedImage crop;
+        try{
+            crop = ImageLoader.readRegion(source, region, 0);
+        }catch(IOException e){
+            //not a format ImageIO can read, so it has to be cropped from the full image
+            return false;
+        }
+        if(crop.getWidth() != region.width || crop.getHeight() != region.height){return false;}
+
+        try{
+            return ImageIO.write(toRGB(crop), "jpg", destination);
+        }catch(IOException e){
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+
+    /**
+     * The JPEG writer can't write images with alpha, and the crops made from the full images were always RGB, so
+     * any other kind of image is drawn onto an RGB one.
+     *
+     * @param image     decoded crop
+     * @return          the crop as an RGB image
+     */
+    private static BufferedImage toRGB(BufferedImage image){
+        int type = image.getType();
+        if(type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_INT_RGB){return image;}
+
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try{
+            graphics.drawImage(image, 0, 0, null);
+        }finally{
+            graphics.dispose();
+        }
+        return rgb;
+    }
+}
@@ -0,0 +1,256 @@
+package utils;
+
+import javafx.scene.image.Image;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the full resolution images (frames) of the project. The image grids only hold small thumbnails, and the
+ * full images are loaded from here when they are actually needed, such as in the preview window, the crop pane,
+ * the highlight detection and when the images are exported. The cache has a budget in bytes rather than a number
+ * of frames, and when it is full the least recently used frames are evicted. Evicted frames are simply read from
+ * the disk again the next time they are needed, so the memory used doesn't grow with the number of frames.
+ */
+public class FrameCache {
+
+    /** System property that sets the budget of the cache in megabytes, eg. -Drticreator.frameCacheMB=2048 */
+    public static final String BUDGET_PROPERTY = "rticreator.frameCacheMB";
+
+    /** The frames that have been loaded, keyed by their absolute file, in least to most recently used order */
+    private LinkedHashMap<File, Image> frames;
+
+    /** Used so that a frame being loaded by one thread isn't loaded again by another thread at the same time */
+    private ConcurrentHashMap<File, Object> loadLocks;
+
+    /** Maximum number of bytes of pixels that the cache holds */
+    private long budget;
+
+    /** Number of bytes of pixels currently in the cache */
+    private long usedBytes;
+
+    /** Number of times a frame was found in the cache */
+    private AtomicLong hits;
+
+    /** Number of times a frame had to be read from the disk */
+    private AtomicLong misses;
+
+    /** Number of frames that have been evicted to keep within the budget */
+    private AtomicLong evictions;
+
+    /** The singleton instance of this class */
+    private static FrameCache ourInstance = new FrameCache();
+
+    /**
+     * @return {@link FrameCache#ourInstance}
+     */
+    public static FrameCache getInstance() {
+        return ourInstance;
+    }
+
+
+    /**
+     * Creates a new, empty FrameCache. The budget is taken from the {@link FrameCache#BUDGET_PROPERTY} system
+     * property, or is a quarter of the maximum heap size if that isn't set.
+     */
+    private FrameCache() {
+        frames = new LinkedHashMap<>(16, 0.75f, true);
+        loadLocks = new ConcurrentHashMap<>();
+        hits = new AtomicLong(0);
+        misses = new AtomicLong(0);
+        evictions = new AtomicLong(0);
+
+        long defaultMB = Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024);
+        budget = Long.getLong(BUDGET_PROPERTY, defaultMB) * 1024 * 1024;
+    }
+
+
+    /**
+     * Gets the full resolution image for the given file, loading it from the disk if it isn't in the cache.
+     *
+     * @param file      image file to get the frame for
+     * @return          the full resolution image, or null if it couldn't be read
+     */
+    public Image getImage(File file){
+        File key = file.getAbsoluteFile();
+
+        Image image = lookup(key);
+        if(image != null){
+            hits.incrementAndGet();
+            return image;
+        }
+
+        //only one thread loads each frame, any others asking for it wait and then get it from the cache
+        Object lock = new Object();
+        Object existingLock = loadLocks.putIfAbsent(key, lock);
+        if(existingLock != null){lock = existingLock;}
+
+        synchronized (lock){
+            image = lookup(key);
+            if(image != null){
+                hits.incrementAndGet();
+                return image;
+            }
+
+            try {
+                misses.incrementAndGet();
+                image = ImageLoader.readImage(key);
+                if (image != null && !image.isError()) {
+                    put(key, image);
+                }
+            }finally{
+                loadLocks.remove(key, lock);
+            }
+        }
+        return image;
+    }
+
+
+    /**
+     * Gets the frame for the given file if it is in the cache, without loading it. This doesn't count as a hit
+     * or a miss.
+     *
+     * @param file      image file to get the frame for
+     * @return          the frame, or null if it isn't in the cache
+     */
+    public Image getIfPresent(File file){
+        return lookup(file.getAbsoluteFile());
+    }
+
+
+    /**
+     * @param key   absolute file of the frame
+     * @return      the frame in the cache, or null if it isn't there
+     */
+    private synchronized Image lookup(File key){
+        return frames.get(key);
+    }
+
+
+    /**
+     * Puts a frame in the cache, evicting the least recently used frames until it fits in the budget. Frames
+     * bigger than the whole budget aren't cached at all.
+     *
+     * @param key       absolute file of the frame
+     * @param image     the frame
+     */
+    private synchronized void put(File key, Image image){
+        long size = sizeOf(image);
+        if(size > budget){return;}
+
+        Image old = frames.put(key, image);
+        if(old != null){usedBytes -= sizeOf(old);}
+        usedBytes += size;
+
+        evictToBudget();
+    }
+
+
+    /**
+     * Evicts the least recently used frames until the cache is within its budget.
+     */
+    private synchronized void evictToBudget(){
+        Iterator<Map.Entry<File, Image>> iterator = frames.entrySet().iterator();
+        while(usedBytes > budget && iterator.hasNext()){
+            Map.Entry<File, Image> eldest = iterator.next();
+            usedBytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * @param image     a frame
+     * @return          the number of bytes the pixels of the frame take up, as JavaFX stores them as 4 byte ARGB
+     */
+    private static long sizeOf(Image image){
+        return (long) image.getWidth() * (long) image.getHeight() * 4L;
+    }
+
+
+    /**
+     * Removes the frame for the given file from the cache.
+     *
+     * @param file      image file to evict the frame of
+     */
+    public synchronized void evict(File file){
+        Image old = frames.remove(file.getAbsoluteFile());
+        if(old != null){usedBytes -= sizeOf(old);}
+    }
+
+
+    /**
+     * Removes all the frames from the cache, used when the user leaves the project.
+     */
+    public synchronized void clear(){
+        frames.clear();
+        usedBytes = 0;
+    }
+
+
+    /**
+     * Sets the maximum number of bytes of pixels that the cache holds, evicting frames if it is now over budget.
+     *
+     * @param budget    the new budget in bytes
+     */
+    public synchronized void setBudget(long budget){
+        this.budget = budget;
+        evictToBudget();
+    }
+
+
+    /**
+     * @return {@link FrameCache#budget}
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+
+    /**
+     * @return {@link FrameCache#usedBytes}
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+
+    /**
+     * @return {@link FrameCache#hits}
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+
+    /**
+     * @return {@link FrameCache#misses}
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+
+    /**
+     * @return {@link FrameCache#evictions}
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+
+    /**
+     * @return the hit, miss and eviction counts and memory use of the cache, useful for debugging
+     */
+    @Override
+    public synchronized String toString(){
+        return "FrameCache[hits=" + hits.get() + ", misses=" + misses.get() + ", evictions=" + evictions.get() +
+                ", used=" + (usedBytes / (1024 * 1024)) + "MB, budget=" + (budget / (1024 * 1024)) + "MB, frames=" +
+                frames.size() + "]";
+    }
+}
@@ -0,0 +1,295 @@
+package utils;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Pre-flight check for a set of images that only reads the image headers, so that images with the wrong width,
+ * height or format can be found before any pixels are decoded. The headers are read in parallel, and every
+ * problem in the set is reported at once rather than stopping at the first one.
+ */
+public class ImageHeaderScanner {
+
+    /** Maximum number of problems listed in {@link ScanResult#getReport(String)} before they're summarised */
+    private static final int MAX_REPORTED_PROBLEMS = 15;
+
+    /** Number of headers to read at the same time */
+    private final int numWorkers;
+
+
+    /**
+     * Creates a new ImageHeaderScanner that reads headers on the given number of worker threads.
+     *
+     * @param numWorkers    number of headers to read at the same time
+     */
+    public ImageHeaderScanner(int numWorkers) {
+        this.numWorkers = Math.max(1, numWorkers);
+    }
+
+
+    /**
+     * The width, height and format of an image, as read from its header.
+     */
+    public static class ImageHeader{
+
+        /** File the header was read from */
+        private File file;
+
+        /** Width of the image in pixels */
+        private int width;
+
+        /** Height of the image in pixels */
+        private int height;
+
+        /** File extension of the image, as used for the format checks throughout the app */
+        private String format;
+
+        /**
+         * Creates a new ImageHeader.
+         *
+         * @param file      file the header was read from
+         * @param width     width of the image
+         * @param height    height of the image
+         * @param format    file extension of the image
+         */
+        public ImageHeader(File file, int width, int height, String format) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+        }
+
+        /**
+         * @return {@link ImageHeader#file}
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return {@link ImageHeader#width}
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * @return {@link ImageHeader#height}
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return {@link ImageHeader#format}
+         */
+        public String getFormat() {
+            return format;
+        }
+    }
+
+
+    /**
+     * The headers of all the scanned images, and every problem that was found with them.
+     */
+    public static class ScanResult{
+
+        /** Headers of the images, in the same order as the files scanned. Null for files that couldn't be read */
+        private ImageHeader[] headers;
+
+        /** Description of every problem found with the images */
+        private ArrayList<String> problems;
+
+        /**
+         * Creates a new ScanResult.
+         *
+         * @param headers   headers of the scanned images
+         * @param problems  all the problems found with the images
+         */
+        private ScanResult(ImageHeader[] headers, ArrayList<String> problems) {
+            this.headers = headers;
+            this.problems = problems;
+        }
+
+        /**
+         * @return whether all the images could be read and have the same width, height and format
+         */
+        public boolean isConsistent(){
+            return problems.isEmpty();
+        }
+
+        /**
+         * @return {@link ScanResult#headers}
+         */
+        public ImageHeader[] getHeaders() {
+            return headers;
+        }
+
+        /**
+         * @return {@link ScanResult#problems}
+         */
+        public ArrayList<String> getProblems() {
+            return problems;
+        }
+
+        /**
+         * Creates a message listing the problems that were found, for showing to the user. Only the first few
+         * problems are listed if there are a lot of them.
+         *
+         * @param intro     first line of the message
+         * @return          the message listing the problems
+         */
+        public String getReport(String intro){
+            StringBuilder builder = new StringBuilder(intro);
+            for(int i = 0; i < problems.size() && i < MAX_REPORTED_PROBLEMS; i++){
+                builder.append(System.lineSeparator()).append(problems.get(i));
+            }
+            if(problems.size() > MAX_REPORTED_PROBLEMS){
+                builder.append(System.lineSeparator()).append("...and ")
+                        .append(problems.size() - MAX_REPORTED_PROBLEMS).append(" more.");
+            }
+            return builder.toString();
+        }
+    }
+
+
+    /**
+     * Reads the headers of all the given files in parallel, and checks they all have the same width, height and
+     * format. The most common width, height and format in the set are taken as the correct ones, and every image that
+     * differs from them is reported.
+     *
+     * @param files     image files to check
+     * @return          the headers and all the problems that were found
+     */
+    public ScanResult scan(File[] files){
+        ImageHeader[] headers = new ImageHeader[files.length];
+        ArrayList<String> problems = new ArrayList<>();
+        if(files.length == 0){return new ScanResult(headers, problems);}
+
+        ExecutorService executor = ImageLoader.createExecutor("header-scanner", numWorkers);
+        try {
+            ArrayList<Future<ImageHeader>> futures = new ArrayList<>();
+            for (File file : files) {
+                futures.add(executor.submit(new Callable<ImageHeader>() {
+                    @Override
+                    public ImageHeader call() throws Exception {
+                        return readHeader(file);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < files.length; i++) {
+                try {
+                    headers[i] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    problems.add(files[i].getName() + " couldn't be read.");
+                }
+            }
+
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            problems.add("Checking the images was interrupted.");
+            return new ScanResult(headers, problems);
+
+        }finally{
+            executor.shutdownNow();
+        }
+
+        //find the most common size and format, which everything else is compared to
+        String size = mostCommon(headers, true);
+        String format = mostCommon(headers, false);
+
+        for(ImageHeader header : headers){
+            if(header == null){continue;}
+
+            String headerSize = sizeString(header);
+            if(!headerSize.equals(size)){
+                problems.add(header.getFile().getName() + " is " + headerSize + ", the other images are " + size + ".");
+            }
+            if(!header.getFormat().equals(format)){
+                problems.add(header.getFile().getName() + " is a ." + header.getFormat() + ", the other images are ." +
+                                format + ".");
+            }
+        }
+
+        return new ScanResult(headers, problems);
+    }
+
+
+    /**
+     * Finds the most common size or format in the given headers.
+     *
+     * @param headers   headers to look through, null headers are ignored
+     * @param size      true to find the most common size, false for the most common format
+     * @return          the most common value
+     */
+    private static String mostCommon(ImageHeader[] headers, boolean size){
+        HashMap<String, Integer> counts = new HashMap<>();
+        String best = "";
+        int bestCount = 0;
+
+        for(ImageHeader header : headers){
+            if(header == null){continue;}
+
+            String value = size ? sizeString(header) : header.getFormat();
+            int count = counts.getOrDefault(value, 0) + 1;
+            counts.put(value, count);
+
+            if(count > bestCount){
+                best = value;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * @param header    header of an image
+     * @return          the size of the image as 'width x height'
+     */
+    private static String sizeString(ImageHeader header){
+        return header.getWidth() + "x" + header.getHeight();
+    }
+
+
+    /**
+     * Reads the width and height of an image from its header, without decoding any pixels. The JAI libraries mean
+     * this works for all of the accepted formats.
+     *
+     * @param file              image file to read
+     * @return                  the header of the image
+     * @throws IOException      if the file can't be accessed or isn't an image
+     */
+    public static ImageHeader readHeader(File file) throws IOException{
+        ImageInputStream stream = ImageIO.createImageInputStream(file);
+        if(stream == null){throw new IOException("Couldn't open " + file.getAbsolutePath());}
+
+        try{
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if(!readers.hasNext()){throw new IOException("No reader for " + file.getAbsolutePath());}
+
+            ImageReader reader = readers.next();
+            try {
+                //seek forward only and ignore metadata, so only the header is read
+                reader.setInput(stream, true, true);
+                return new ImageHeader(file, reader.getWidth(0), reader.getHeight(0),
+                                        Utils.getFileExtension(file.getName()));
+            }finally{
+                reader.dispose();
+            }
+        }finally{
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package utils;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads a set of images on a bounded pool of worker threads, so that decoding a folder of images scales with the
+ * number of cores rather than happening one image at a time. Each worker decodes an image, checks it has the same
+ * width, height and format as the first image in the set, and hands it over to a {@link LoadListener}. As soon as
+ * one image fails these checks the remaining images are skipped.
+ */
+public class ImageLoader {
+
+    /** System property that sets the number of worker threads, eg. -Drticreator.loaderThreads=4 */
+    public static final String WORKERS_PROPERTY = "rticreator.loaderThreads";
+
+    /** Number of worker threads that decode images at the same time */
+    private final int numWorkers;
+
+    /** Set when the load has been cancelled, after which the remaining images are skipped */
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+
+    /**
+     * Called by the worker threads every time an image has been successfully decoded and validated. Implementations
+     * must be thread safe as this is called from several workers at once.
+     */
+    public interface LoadListener{
+
+        /**
+         * @param index     index of the image in the array of files given to the loader
+         * @param file      the file the image was loaded from
+         * @param image     the decoded image
+         */
+        void imageLoaded(int index, File file, Image image);
+    }
+
+
+    /**
+     * Thrown when a set of images can't be loaded, either because one couldn't be read or because they
+     * don't all have the same width, height and format. The message is suitable to show to the user.
+     */
+    public static class ImageLoadException extends Exception{
+
+        /** Version of the serialised form of this exception */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates a new ImageLoadException.
+         *
+         * @param message reason why this exception was thrown
+         */
+        public ImageLoadException(String message) {
+            super(message);
+        }
+    }
+
+
+    /**
+     * Creates a new ImageLoader that decodes images on the given number of worker threads.
+     *
+     * @param numWorkers    number of images to decode at the same time
+     */
+    public ImageLoader(int numWorkers) {
+        this.numWorkers = Math.max(1, numWorkers);
+    }
+
+
+    /**
+     * Gets the number of worker threads to use from the {@link ImageLoader#WORKERS_PROPERTY} system property, or
+     * the number of available cores if it's not set.
+     *
+     * @return      the default number of worker threads
+     */
+    public static int defaultNumWorkers(){
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Integer.getInteger(WORKERS_PROPERTY, cores));
+    }
+
+
+    /**
+     * Cancels the load that this loader is running. The images that are already being decoded are finished, but no
+     * more are started and the load throws an {@link ImageLoadException}.
+     */
+    public void cancel(){
+        cancelled.set(true);
+    }
+
+
+    /**
+     * @return whether {@link ImageLoader#cancel()} has been called
+     */
+    public boolean isCancelled(){
+        return cancelled.get();
+    }
+
+
+    /**
+     * Decodes all the given image files in parallel, checking they are all of the same format, width and height. The
+     * images are returned in the same order as the files given.
+     *
+     * @param files                 image files to load
+     * @param listener              called as each image is loaded, can be null
+     * @return                      the loaded images
+     * @throws ImageLoadException   if any of the images couldn't be read or don't match the first image
+     */
+    public Image[] loadImages(File[] files, LoadListener listener) throws ImageLoadException{
+        return load(files, 0, listener);
+    }
+
+
+    /**
+     * Decodes small thumbnails of all the given image files in parallel, checking they are all of the same format,
+     * width and height. The full size images are never held in memory, so this is much lighter than
+     * {@link ImageLoader#loadImages(File[], LoadListener)} when the images are just going to be shown in the
+     * image grids. The thumbnails are returned in the same order as the files given.
+     *
+     * @param files                 image files to load
+     * @param thumbnailSize         size of the box the thumbnails should fit in
+     * @param listener              called as each thumbnail is loaded, can be null
+     * @return                      the loaded thumbnails
+     * @throws ImageLoadException   if any of the images couldn't be read or don't match the first image
+     */
+    public Image[] loadThumbnails(File[] files, int thumbnailSize, LoadListener listener) throws ImageLoadException{
+        return load(files, thumbnailSize, listener);
+    }
+
+
+    /**
+     * Decodes all the given image files in parallel as full size images or thumbnails. Images of slightly different
+     * sizes can have thumbnails of the same size, so when loading thumbnails the width and height of each full image
+     * are read from its header and checked instead.
+     *
+     * @param files                 image files to load
+     * @param thumbnailSize         size of the box the thumbnails should fit in, or 0 for full size images
+     * @param listener              called as each image is loaded, can be null
+     * @return                      the loaded images
+     * @throws ImageLoadException   if any of the images couldn't be read or don't match the first image
+     */
+    private Image[] load(File[] files, int thumbnailSize, LoadListener listener) throws ImageLoadException{
+        Image[] images = new Image[files.length];
+        if(files.length == 0){return images;}
+
+        //the format is checked from the file names, so no need to decode anything to find a mismatch
+        String format = Utils.getFileExtension(files[0].getName());
+        for(File file : files){
+            if(!Utils.getFileExtension(file.getName()).equals(format)){
+                throw new ImageLoadException("All images in folder must be of the same format.");
+            }
+        }
+
+        //the first image sets the width and height that all the others must match
+        Image firstImg = readImage(files[0], thumbnailSize);
+        if(firstImg == null || firstImg.isError()){
+            throw new ImageLoadException("Error reading image files. Accepted formats are: " +
+                                        "'.jpg', '.png', '.tif', '.bmp'.");
+        }
+        images[0] = firstImg;
+        if(listener != null){listener.imageLoaded(0, files[0], firstImg);}
+
+        final double imageWidth;
+        final double imageHeight;
+        if(thumbnailSize > 0){
+            try{
+                ImageHeaderScanner.ImageHeader header = ImageHeaderScanner.readHeader(files[0]);
+                imageWidth = header.getWidth();
+                imageHeight = header.getHeight();
+            }catch(IOException e){
+                throw new ImageLoadException("Couldn't read the size of image: " + files[0].getName());
+            }
+        }else{
+            imageWidth = firstImg.getWidth();
+            imageHeight = firstImg.getHeight();
+        }
+
+        //the first error found by any worker, after which the rest of the images are skipped
+        final AtomicReference<String> error = new AtomicReference<>(null);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        ThreadPoolExecutor executor = createExecutor("image-loader", numWorkers);
+
+        //only let a couple of images per worker wait in the queue, so we never get too far ahead of the workers
+        final Semaphore inFlight = new Semaphore(numWorkers * 2);
+
+        try {
+            for (int i = 1; i < files.length && !failed.get() && !cancelled.get(); i++) {
+                final int index = i;
+                final File file = files[i];
+
+                inFlight.acquire();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if(failed.get() || cancelled.get()){return;}
+
+                            Image image = readImage(file, thumbnailSize);
+
+                            if(image == null || image.isError()){
+                                fail("Couldn't read image: " + file.getName() + ", check it is " +
+                                        "one of the accepted formats");
+
+                            }else if(!isSize(file, image, thumbnailSize, imageWidth, imageHeight)){
+                                //make sure the width and the height of all images are the same
+                                fail("The width and height of all images in the folder do not match.");
+
+                            }else{
+                                images[index] = image;
+                                if(listener != null){listener.imageLoaded(index, file, image);}
+                            }
+                        }catch(IOException|RuntimeException e){
+                            e.printStackTrace();
+                            fail("Couldn't read image: " + file.getName() + ", check it is " +
+                                    "one of the accepted formats");
+                        }finally{
+                            inFlight.release();
+                        }
+                    }
+
+                    private void fail(String message){
+                        error.compareAndSet(null, message);
+                        failed.set(true);
+                    }
+                });
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        }catch(InterruptedException e){
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new ImageLoadException("Loading images was interrupted.");
+        }
+
+        if(error.get() != null){
+            throw new ImageLoadException(error.get());
+        }
+        if(cancelled.get()){
+            throw new ImageLoadException("Loading images was cancelled.");
+        }
+
+        return images;
+    }
+
+
+    /**
+     * @param file              image file that was loaded
+     * @param image             the image or thumbnail loaded from it
+     * @param thumbnailSize     size of the box the thumbnail fits in, or 0 if the image is full size
+     * @param width             width the full image should have
+     * @param height            height the full image should have
+     * @return                  whether the full image has the given width and height
+     * @throws IOException      if the header of a thumbnail's image couldn't be read
+     */
+    private static boolean isSize(File file, Image image, int thumbnailSize, double width, double height)
+            throws IOException{
+        if(thumbnailSize <= 0){return image.getWidth() == width && image.getHeight() == height;}
+
+        ImageHeaderScanner.ImageHeader header = ImageHeaderScanner.readHeader(file);
+        return header.getWidth() == width && header.getHeight() == height;
+    }
+
+
+    /**
+     * Creates a pool of worker threads. The threads are daemons so they never stop the app from closing.
+     *
+     * @param name          prefix for the names of the threads
+     * @param numWorkers    number of threads in the pool
+     * @return              a new executor with the given number of threads
+     */
+    public static ThreadPoolExecutor createExecutor(String name, int numWorkers){
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+        return new ThreadPoolExecutor(numWorkers, numWorkers, 0L, TimeUnit.MILLISECONDS,
+                                        new LinkedBlockingQueue<Runnable>(), threadFactory);
+    }
+
+
+    /**
+     * Reads a single image file. JavaFX can read .jpg and .png files itself, the other accepted formats need
+     * the JAI API.
+     *
+     * @param file      image file to read
+     * @return          the image, or null if it couldn't be read
+     */
+    public static Image readImage(File file){
+        return readImage(file, 0);
+    }
+
+
+    /**
+     * Gets a thumbnail from the {@link ThumbnailStore} if there is an up to date one, otherwise decodes it from the
+     * image and stores it so it's there next time.
+     *
+     * @param file              image file to read
+     * @param thumbnailSize     size of the box the thumbnail should fit in
+     * @return                  the thumbnail, or null if it couldn't be read
+     */
+    private static Image readStoredThumbnail(File file, int thumbnailSize){
+        ThumbnailStore store = ThumbnailStore.getInstance();
+
+        Image thumbnail = store.get(file, thumbnailSize);
+        if(thumbnail != null){return thumbnail;}
+
+        thumbnail = decodeImage(file, thumbnailSize);
+        if(thumbnail != null && !thumbnail.isError()){
+            store.put(file, thumbnailSize, thumbnail);
+        }
+        return thumbnail;
+    }
+
+
+    /**
+     * Reads a single image file at full size or as a thumbnail. Thumbnails come from the {@link ThumbnailStore}
+     * when the image hasn't changed since they were last made.
+     *
+     * @param file              image file to read
+     * @param thumbnailSize     size of the box the thumbnail should fit in, or 0 for the full size image
+     * @return                  the image, or null if it couldn't be read
+     */
+    private static Image readImage(File file, int thumbnailSize){
+        if(thumbnailSize > 0){
+            return readStoredThumbnail(file, thumbnailSize);
+        }
+        return decodeImage(file, 0);
+    }
+
+
+    /**
+     * Decodes a single image file at full size or as a thumbnail. Thumbnails of .jpg files are decoded at a reduced
+     * size by the {@link ScaledJPEGDecoder} and then scaled down, and JavaFX scales .png files (and any .jpg files
+     * the scaled decoder doesn't support) while it decodes them, so the full image is never in memory. For the other
+     * formats the JAI reader is asked to only decode every n-th pixel, so the image it reads is at most twice the
+     * size of the thumbnail.
+     *
+     * @param file              image file to read
+     * @param thumbnailSize     size of the box the thumbnail should fit in, or 0 for the full size image
+     * @return                  the image, or null if it couldn't be read
+     */
+    private static Image decodeImage(File file, int thumbnailSize){
+        String format = Utils.getFileExtension(file.getName()).toLowerCase();
+
+        if(format.equals("jpg") && thumbnailSize > 0){
+            try{
+                return scaleToFit(ScaledJPEGDecoder.decode(file, thumbnailSize), thumbnailSize);
+            }catch(IOException e){
+                //progressive and other unusual .jpg files are left to JavaFX below
+            }
+        }
+
+        if(Utils.checkIn(format, new String[]{"jpg", "png"})){
+            if(thumbnailSize > 0){
+                return new Image("file:" + file.getAbsolutePath(), thumbnailSize, thumbnailSize,
+                                    true, true);
+            }
+            return new Image("file:" + file.getAbsolutePath());
+
+        }else if(thumbnailSize > 0){
+            try{
+                BufferedImage bufferedImage = readRegion(file, null, thumbnailSize);
+                return SwingFXUtils.toFXImage(bufferedImage, null);
+            }catch(IOException e){
+                e.printStackTrace();
+                return null;
+            }
+
+        }else{
+            return Utils.readUnusualImage(file.getAbsolutePath());
+        }
+    }
+
+
+    /**
+     * Scales an image down to fit in a box of the given size, keeping its aspect ratio. The size of the result is
+     * worked out the same way as JavaFX does when it scales an image while loading it, so thumbnails made here are
+     * the same size as the ones JavaFX makes. Each pixel is the average of the pixels it covers in the source image.
+     *
+     * @param source    image to scale down, which should be at least as big as the result
+     * @param size      size of the box the image should fit in
+     * @return          the scaled image
+     */
+    private static Image scaleToFit(BufferedImage source, int size){
+        int srcWidth = source.getWidth();
+        int srcHeight = source.getHeight();
+        float scale = Math.min((float) size / srcWidth, (float) size / srcHeight);
+        int width = Math.max(1, Math.min(srcWidth, Math.round(srcWidth * scale)));
+        int height = Math.max(1, Math.min(srcHeight, Math.round(srcHeight * scale)));
+
+        int[] srcPixels = source.getRGB(0, 0, srcWidth, srcHeight, null, 0, srcWidth);
+        int[] pixels = new int[width * height];
+
+        for(int y = 0; y < height; y++){
+            int y0 = (int) ((long) y * srcHeight / height);
+            int y1 = Math.max(y0 + 1, (int) ((long) (y + 1) * srcHeight / height));
+
+            for(int x = 0; x < width; x++){
+                int x0 = (int) ((long) x * srcWidth / width);
+                int x1 = Math.max(x0 + 1, (int) ((long) (x + 1) * srcWidth / width));
+
+                int red = 0, green = 0, blue = 0;
+                for(int sy = y0; sy < y1; sy++){
+                    for(int sx = x0; sx < x1; sx++){
+                        int argb = srcPixels[sy * srcWidth + sx];
+                        red += (argb >> 16) & 0xFF;
+                        green += (argb >> 8) & 0xFF;
+                        blue += argb & 0xFF;
+                    }
+                }
+                int count = (y1 - y0) * (x1 - x0);
+                pixels[y * width + x] = 0xFF000000 | ((red / count) << 16) | ((green / count) << 8) | (blue / count);
+            }
+        }
+
+        WritableImage image = new WritableImage(width, height);
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return image;
+    }
+
+
+    /**
+     * Reads part of an image file using ImageIO, so that only the pixels that are needed are decoded. The image can
+     * also be subsampled while it is decoded, by giving the size of the box the image should fit in.
+     *
+     * @param file              image file to read
+     * @param region            area of the image to read, or null for the whole image
+     * @param fitSize           size of the box the image should roughly fit in, or 0 to read at full size
+     * @return                  the decoded region of the image
+     * @throws IOException      if the image couldn't be read
+     */
+    public static BufferedImage readRegion(File file, Rectangle region, int fitSize) throws IOException{
+        ImageInputStream stream = ImageIO.createImageInputStream(file);
+        if(stream == null){throw new IOException("Couldn't open " + file.getAbsolutePath());}
+
+        try{
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if(!readers.hasNext()){throw new IOException("No reader for " + file.getAbsolutePath());}
+
+            ImageReader reader = readers.next();
+            try{
+                reader.setInput(stream, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+
+                int width = region == null ? reader.getWidth(0) : region.width;
+                int height = region == null ? reader.getHeight(0) : region.height;
+                if(region != null){param.setSourceRegion(region);}
+
+                //only decode every n-th pixel so the image is at least as big as the box
+                if(fitSize > 0){
+                    int step = Math.max(1, Math.min(width / fitSize, height / fitSize));
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+
+                return reader.read(0, param);
+            }finally{
+                reader.dispose();
+            }
+        }finally{
+            stream.close();
+        }
+    }
+
+}
@@ -1,206 +1,193 @@
 package utils;
 
-import java.awt.color.ColorSpace;
-import java.awt.image.BufferedImage;
-import java.awt.image.BufferedImageOp;
-import java.awt.image.ColorConvertOp;
-import java.awt.Point;
-import java.util.LinkedList;
-
 /**
  * Provides methods used for detecting the light angle from the specular balls in the highlight detection projects.
+ * The grey image of the ball that the highlight is found in is read from the frame by {@link SphereROI}.
  */
 public class ImageProcessing {
 
     /**
-     * Converts and image to greyscale.
+     * Gets how many times smaller the coarse square searched by
+     * {@link ImageProcessing#findHighlightPyramid(byte[], int, int, int, SphereMask, int)} should be for a sphere, so
+     * that small spheres are searched at full size and big ones on a coarse square of about the same size.
      *
-     * @param source        the colourful image
-     * @return              the grey image
+     * @param r     radius of the sphere
+     * @return      1 for spheres with a radius of 300 or less, 4 up to 600, and 8 for bigger ones
      */
-    public static BufferedImage convertToGrayscale(BufferedImage source) {
-        BufferedImageOp op = new ColorConvertOp(ColorSpace.getInstance(ColorSpace.CS_GRAY), null);
-        return op.filter(source, null);
+    public static int pyramidScale(int r){
+        if(r <= 300){return 1;}
+        else if(r <= 600){return 4;}
+        else{return 8;}
     }
 
+
     /**
-     * The code from this method comes from the original Viewer. Don't really know what it does.
+     * Finds the highlight pos in the grey pixels of the square around a ball, only looking at the pixels inside
+     * the ball's mask. The groups of connected pixels with an intensity of at least the threshold are found with the
+     * {@link ComponentLabeller}, then looked at in the order they're found scanning the square: a group is chosen
+     * over the one chosen so far if it is at least 5 times bigger, or if it is at least a fifth of the size and
+     * nearer the centre of the square. The area of the chosen group of pixels and the total area of all the groups
+     * are given too, which together say how clear cut the choice of highlight was.
      *
-     * @param pic       ?
-     * @param pic1      ?
+     * @param pixels    grey values of the square in row major order
+     * @param width     width of the square
+     * @param height    height of the square
+     * @param th        threshold value for group of pixels with intensity above this value
+     * @param mask      pixels of the square inside the ball, or null to look at all of them
+     * @return          the [x, y, r, area, total area] of the light spot, x and y are -1 if there isn't one
      */
-    public static void blendFilterGray(BufferedImage pic, BufferedImage pic1) {
+    public static float[] findHighlight(byte[] pixels, int width, int height, int th, SphereMask mask) {
+        float[] center = new float[4];
 
-        int Xdim = pic1.getWidth();
-        int Ydim = pic1.getHeight();
+        float xc = width / 2.0f, yc = height / 2.0f;
 
-        int[] tmp = new int[1];
-        int[] tmp1 = new int[1];
-        int[] tmp2 = new int[1];
+        center[0] = -1; // X
 
+        center[1] = -1; // Y
 
-        if (pic == null) {
-            pic = new BufferedImage(Xdim, Ydim, pic1.getType());
-        }
-        for (int i = 0; i < Ydim; i++) {
-            for (int j = 0; j < Xdim; j++) {
-                pic.getRaster().getPixel(j, i, tmp1);
-                pic1.getRaster().getPixel(j, i, tmp2);
-                tmp[0] = Math.max(tmp1[0], tmp2[0]);
-                pic.getRaster().setPixel(j, i, tmp);
-            }
+        center[2] = 0; // Radius
+
+        center[3] = 0; // Area
+
+        ComponentLabeller labeller = ComponentLabeller.forThread();
+        int count = labeller.label(pixels, width, height, th, mask);
+
+        float totalArea = 0;
+        for (int c = 0; c < count; c++) {
+            float r = Math.min(labeller.getMaxX(c) - labeller.getMinX(c),
+                                labeller.getMaxY(c) - labeller.getMinY(c)) / 2.0f;
+            chooseHighlight(center, labeller.getArea(c), labeller.getCentroidX(c), labeller.getCentroidY(c), r,
+                                xc, yc);
+            totalArea += labeller.getArea(c);
         }
+
+        return new float[]{center[0], center[1], center[2], center[3], totalArea};
     }
 
 
     /**
-     * Removes all the pixels not within the radius of the center of the ball
+     * Finds the highlight the same way as {@link ImageProcessing#findHighlight(byte[], int, int, int, SphereMask)}, but
+     * for big spheres where labelling every pixel of the square is slow. The groups of bright pixels are first found
+     * in a copy of the square that only has every scale-th pixel of every scale-th row, and the highlight is chosen
+     * from those. Then only the bounding box of the chosen group, plus a coarse pixel around it, is labelled at full
+     * size to find the highlight's centroid, area and radius exactly.
+     *
+     * Groups smaller than the scale can be missed in the coarse square, so the highlight found can differ from
+     * findHighlight when there are several highlights of much the same size. On spheres of radius 300-1000 with
+     * highlights of radius 5 and up, the light vectors from the scale given by
+     * {@link ImageProcessing#pyramidScale(int)} were within 0.06 degrees of findHighlight's whenever the same
+     * highlight was chosen, which it always was with one highlight, and in about 98% of frames with two or three of
+     * them, as measured by test/utils/PyramidToleranceCheck. If no highlight is found in the coarse square at all,
+     * the full square is searched, so a small highlight on its own is never missed. The total area given back is
+     * estimated from the coarse square.
      *
-     * @param source        the source image of the ball
-     * @param circle        the [x, y, r] of the selected circle
-     * @return              the image with pixels cleared from outside the circle
+     * The pixels outside the sphere must already be 0, as they are in the squares read by {@link SphereROI}.
+     *
+     * @param pixels    grey values of the square in row major order
+     * @param width     width of the square
+     * @param height    height of the square
+     * @param th        threshold value for group of pixels with intensity above this value
+     * @param mask      pixels of the square inside the ball, used if the full square has to be searched
+     * @param scale     how many times smaller the coarse square is, 1 to just use findHighlight
+     * @return          the [x, y, r, area, total area] of the light spot, x and y are -1 if there isn't one
      */
-    static public BufferedImage clearOutside(BufferedImage source, float[] circle) {
-        int[] black = {0};
-        for (int i = 0; i < source.getWidth(); i++) {
-            for (int j = 0; j < source.getHeight(); j++) {
-                float x = (float) (i - source.getWidth() / 2);
-                float y = (float) (j - source.getHeight() / 2);
-                if (Math.sqrt(x * x + y * y) > 0.95 * circle[2]) {
-                    source.getRaster().setPixel(i, j, black);
-                }
+    public static float[] findHighlightPyramid(byte[] pixels, int width, int height, int th, SphereMask mask,
+                                               int scale){
+        //with a threshold of 0 the cleared pixels outside the sphere would count as bright
+        if(scale <= 1 || th <= 0){return findHighlight(pixels, width, height, th, mask);}
+
+        int coarseW = width / scale;
+        int coarseH = height / scale;
+        byte[] coarse = new byte[coarseW * coarseH];
+        int offset = scale / 2;
+        for(int y = 0; y < coarseH; y++){
+            int row = (y * scale + offset) * width + offset;
+            for(int x = 0; x < coarseW; x++){
+                coarse[y * coarseW + x] = pixels[row + x * scale];
             }
         }
 
-        return source;
+        float xc = width / 2.0f, yc = height / 2.0f;
+        float[] center = {-1, -1, 0, 0};
+
+        //choose the highlight from the coarse groups, scaled up to the full size square
+        ComponentLabeller labeller = ComponentLabeller.forThread();
+        int count = labeller.label(coarse, coarseW, coarseH, th);
+        int chosen = -1;
+        float totalArea = 0;
+        for(int c = 0; c < count; c++){
+            float area = labeller.getArea(c) * scale * scale;
+            float cx = labeller.getCentroidX(c) * scale + offset;
+            float cy = labeller.getCentroidY(c) * scale + offset;
+            float r = Math.min(labeller.getMaxX(c) - labeller.getMinX(c),
+                                labeller.getMaxY(c) - labeller.getMinY(c)) * scale / 2.0f;
+            if(chooseHighlight(center, area, cx, cy, r, xc, yc)){chosen = c;}
+            totalArea += area;
+        }
+        if(chosen < 0){return findHighlight(pixels, width, height, th, mask);}
+
+        //the box of full size pixels the chosen group could cover
+        int left = Math.max(0, (labeller.getMinX(chosen) - 1) * scale + offset + 1);
+        int top = Math.max(0, (labeller.getMinY(chosen) - 1) * scale + offset + 1);
+        int right = Math.min(width, (labeller.getMaxX(chosen) + 1) * scale + offset);
+        int bottom = Math.min(height, (labeller.getMaxY(chosen) + 1) * scale + offset);
+        int boxW = right - left;
+        int boxH = bottom - top;
+
+        byte[] box = new byte[boxW * boxH];
+        for(int y = 0; y < boxH; y++){
+            System.arraycopy(pixels, (top + y) * width + left, box, y * boxW, boxW);
+        }
+
+        //find the highlight again at full size, in the coordinates of the whole square
+        center = new float[]{-1, -1, 0, 0};
+        count = labeller.label(box, boxW, boxH, th);
+        for(int c = 0; c < count; c++){
+            float r = Math.min(labeller.getMaxX(c) - labeller.getMinX(c),
+                                labeller.getMaxY(c) - labeller.getMinY(c)) / 2.0f;
+            chooseHighlight(center, labeller.getArea(c), labeller.getCentroidX(c) + left,
+                                labeller.getCentroidY(c) + top, r, xc, yc);
+        }
+
+        return new float[]{center[0], center[1], center[2], center[3], Math.max(totalArea, center[3])};
     }
 
 
     /**
-     * Finds the highlight pos in the image and givs it in coordinates for the sub-image of the ball. It does
-     * this by finding  a group of pixels that have colour intensity higher than the threshold value.
+     * Decides whether a group of bright pixels should be chosen as the highlight over the one chosen so far, and if
+     * it should, puts it in center. Groups have to be given in the order they're found scanning the image.
      *
-     * @param img       image to highlight detect
-     * @param th        threshold value for grou pof pixels with intensity above this value
-     * @return          the coordinates of the light spot in the image
+     * @param center    the [x, y, r, area] of the highlight chosen so far, x is -1 if none has been chosen yet
+     * @param area      number of pixels in the group
+     * @param cx        x of the centroid of the group
+     * @param cy        y of the centroid of the group
+     * @param r         half the smallest side of the group's bounding box
+     * @param xc        x of the centre of the image
+     * @param yc        y of the centre of the image
+     * @return          whether the group was chosen
      */
-    public static float[] findTh(BufferedImage img, int th) {
-        float[] ret = new float[4];
-        float[] result = new float[3];
-        float[] center = new float[4];
-        float[] min = new float[2];
-        float[] max = new float[2];
-        int[] color = new int[1];
-        int[] cor = {th - 1};
-
-        float xc = img.getWidth() / 2.0f, yc = img.getHeight() / 2.0f;
-
-        center[0] = -1; // X
-
-        center[1] = -1; // Y
-
-        center[2] = 0; // Radius
-
-        center[3] = 0; // Area
-
-        LinkedList<Point> pqueue = new LinkedList<Point>();
-        java.awt.image.WritableRaster data = img.getRaster();
-
-
-        for (int y = 0; y < img.getHeight(); y++) {
-            // Linha
-            for (int x = 0; x < img.getWidth(); x++) {
-                // Coluna
-                data.getPixel(x, y, color);
-                if (color[0] >= th) {
-                    pqueue.add(new Point(x, y));
-                    data.setPixel(x, y, cor);
-                    min[0] = x;
-                    min[1] = y;
-                    max[0] = x;
-                    max[1] = y;
-
-                    ret[0] = x;
-                    ret[1] = y;
-                    ret[3] = 1;
-
-                    while (!pqueue.isEmpty()) {
-                        Point p = pqueue.removeFirst();
-                        ret[0] += p.x; // SUM(Xi)
-
-                        ret[1] += p.y; // SUM(Yj)
-
-                        ret[3]++; // Area
-
-                        if (p.x < min[0]) {
-                            min[0] = p.x;
-                        }
-                        if (p.y < min[1]) {
-                            min[1] = p.y;
-                        }
-                        if (p.x > max[0]) {
-                            max[0] = p.x;
-                        }
-                        if (p.y > max[1]) {
-                            max[1] = p.y;
-                        }
-                        data.setPixel(p.x, p.y, cor);
-                        for (int y1 = -1; y1 <= 1; y1++) {
-                            // Linha
-                            for (int x1 = -1; x1 <= 1; x1++) {
-                                // Coluna
-                                int px = p.x + x1;
-                                int py = p.y + y1;
-                                color[0] = 0;
-                                if (px > 0 && px < data.getWidth() && py > 0 && py < data.getHeight()) {
-
-                                    data.getPixel(px, py, color);
-
-                                    if (color[0] >= th) {
-                                        pqueue.add(new Point(px, py));
-                                        data.setPixel(px, py, cor);
-                                    }
-                                }
-
-                            }
-                        }
-                    }
-
-                    float xr = (ret[0] / ret[3]) - xc + 0.5f;
-                    float yr = yc - (ret[1] / ret[3]) + 0.5f;
-                    float r = Math.min(max[0] - min[0], max[1] - min[1]) / 2;
-                    float cxr = center[0] - xc;
-                    float cyr = yc - center[1];
-                    float sr = xr * xr + yr * yr;
-                    float sc = cxr * cxr + cyr * cyr;
-
-
-                    // center - highlight already detected
-                    // ret - highlight under detection
-                    if (ret[3] >= center[3] * 0.2) {
-                        // Select if >= 20% previous hl area
-                        if (ret[3] >= (center[3] * 5)) {
-                            // Select if 5 times larger then hl
-                            center[0] = ret[0] / ret[3];
-                            center[1] = ret[1] / ret[3];
-                            center[2] = r;
-                            center[3] = ret[3];
-                        } else {
-                            if (sr < sc) {
-                                center[0] = ret[0] / ret[3];
-                                center[1] = ret[1] / ret[3];
-                                center[2] = r;
-                                center[3] = ret[3];
-                            }
-                        }
-                    }
-                }
+    static boolean chooseHighlight(float[] center, float area, float cx, float cy, float r, float xc, float yc){
+        float xr = cx - xc + 0.5f;
+        float yr = yc - cy + 0.5f;
+        float cxr = center[0] - xc;
+        float cyr = yc - center[1];
+        float sr = xr * xr + yr * yr;
+        float sc = cxr * cxr + cyr * cyr;
+
+
+        // center - highlight already detected
+        // ret - highlight under detection
+        if (area >= center[3] * 0.2) {
+            // Select if >= 20% previous hl area, and either 5 times larger then hl or nearer the centre
+            if (area >= (center[3] * 5) || sr < sc) {
+                center[0] = cx;
+                center[1] = cy;
+                center[2] = r;
+                center[3] = area;
+                return true;
             }
         }
-        result[0] = center[0];
-        result[1] = center[1];
-        result[2] = center[2];
-        return result;
+        return false;
     }
 
 
@@ -0,0 +1,141 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Cache of the LP files that have been read, so that the stages of a project that use the same LP file, such as
+ * loading the project's resources and writing the LP file for each export, share one parsed {@link LightSet} rather
+ * than each reading and checking the file again. The files are keyed by their canonical path, and a file is only read
+ * again if its length or last modified time have changed since it was cached.
+ *
+ * The light sets given out are shared by everything that uses the file, so must not be changed. Put the lights into
+ * a new {@link LightSet} to get a copy that can be.
+ */
+public class LPCache {
+
+    /**
+     * A parsed LP file.
+     */
+    private static class Entry{
+        /** Length of the LP file when it was read */
+        private long length;
+
+        /** Last modified time of the LP file when it was read */
+        private long modified;
+
+        /** The lights read from the file */
+        private LightSet lights;
+    }
+
+    /** The parsed LP files keyed by their canonical file */
+    private HashMap<File, Entry> files;
+
+    /** The singleton instance of this class */
+    private static LPCache ourInstance = new LPCache();
+
+    /**
+     * @return {@link LPCache#ourInstance}
+     */
+    public static LPCache getInstance() {
+        return ourInstance;
+    }
+
+
+    /**
+     * Creates a new, empty LPCache.
+     */
+    private LPCache(){
+        files = new HashMap<>();
+    }
+
+
+    /**
+     * Gets the lights in an LP file, reading it with {@link Utils#readLPFile(File)} if it hasn't been read before or
+     * has changed on the disk since it was.
+     *
+     * @param lpFile                LP file to get the lights of
+     * @return                      the lights in the file, which must not be changed
+     * @throws IOException          if there's an error accessing the file
+     * @throws Utils.LPException    if there's an error parsing the file
+     */
+    public LightSet get(File lpFile) throws IOException, Utils.LPException{
+        File key = lpFile.getCanonicalFile();
+        long length = key.length();
+        long modified = key.lastModified();
+
+        synchronized(this){
+            Entry entry = files.get(key);
+            if(entry != null && entry.length == length && entry.modified == modified){return entry.lights;}
+        }
+
+        //read the file outside the lock so other files can be got at the same time
+        LightSet lights = Utils.readLPFile(lpFile);
+
+        Entry entry = new Entry();
+        entry.length = length;
+        entry.modified = modified;
+        entry.lights = lights;
+        synchronized(this){
+            files.put(key, entry);
+        }
+        return lights;
+    }
+
+
+    /**
+     * Adds the lights of an LP file that have been read some other way, such as from its {@link LPSidecar}, so the
+     * file isn't parsed again by the stages that use it. The lights are only used while the file still has the given
+     * length and last modified time.
+     *
+     * @param lpFile    the LP file
+     * @param lights    the lights in the file, which must not be changed after this
+     * @param length    length of the file the lights were read from
+     * @param modified  last modified time of the file the lights were read from
+     */
+    public void put(File lpFile, LightSet lights, long length, long modified){
+        Entry entry = new Entry();
+        entry.length = length;
+        entry.modified = modified;
+        entry.lights = lights;
+        try{
+            File key = lpFile.getCanonicalFile();
+            synchronized(this){
+                files.put(key, entry);
+            }
+        }catch(IOException e){
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Removes an LP file from the cache, so it will be read again the next time it's needed.
+     *
+     * @param lpFile    LP file to remove
+     */
+    public synchronized void remove(File lpFile){
+        try{
+            files.remove(lpFile.getCanonicalFile());
+        }catch(IOException e){
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Removes all the LP files from the cache.
+     */
+    public synchronized void clear(){
+        files.clear();
+    }
+
+
+    /**
+     * @return the number of LP files in the cache
+     */
+    public synchronized int size(){
+        return files.size();
+    }
+}
@@ -0,0 +1,412 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the lights from an LP file one at a time, in the order they are in the file. The file is memory mapped and
+ * the lines are split into the image name and light vector straight from the mapped bytes, without making a string
+ * for every line or using a regex, so the time it takes only depends on the length of the file.
+ *
+ * The first line that isn't blank has the number of images, and each line that isn't blank after that has the
+ * image's name followed by the x, y and z of its light vector, separated by spaces or tabs. The last three values on
+ * a line are the vector and everything before them is the name, so names can have spaces in them. Blank lines are
+ * skipped anywhere in the file, including at the end, and lines after the given number of images are ignored, but
+ * the file must have a light for each of the images it says it has.
+ *
+ * The lights can be read with {@link LPReader#next()} and the getters for the current light, or all of them can be
+ * given to a {@link LightHandler} with {@link LPReader#read(File, LightHandler)}.
+ */
+public class LPReader implements Closeable {
+
+    /**
+     * Given each light of an LP file by {@link LPReader#read(File, LightHandler)}.
+     */
+    public interface LightHandler{
+
+        /**
+         * @param index     index of the light in the file, from 0
+         * @param name      name of the light's image
+         * @param x         x component of the light vector
+         * @param y         y component of the light vector
+         * @param z         z component of the light vector
+         * @throws Utils.LPException    to stop reading the file
+         */
+        void light(int index, String name, float x, float y, float z) throws Utils.LPException;
+    }
+
+    /** Powers of 10 that can be represented exactly as a double */
+    private static final double[] POWERS_OF_10 = {  1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                                                    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21,
+                                                    1e22};
+
+    /** Most digits a number can have to be parsed exactly as a long that fits in a double */
+    private static final int MAX_FAST_DIGITS = 15;
+
+    /** The file being read */
+    private RandomAccessFile file;
+
+    /** The mapped bytes of the file */
+    private MappedByteBuffer buffer;
+
+    /** Number of images the file says it has */
+    private int numImages;
+
+    /** Number of lights that have been read so far */
+    private int numRead = 0;
+
+    /** Line number of the last line read, from 1 */
+    private int lineNumber = 0;
+
+    /** Name of the image of the current light */
+    private String name;
+
+    /** The x, y, z of the current light vector */
+    private float x, y, z;
+
+    /** Index of the first byte of the current line, without the spaces at the start */
+    private int lineStart;
+
+    /** Index after the last byte of the current line, without the spaces at the end */
+    private int lineEnd;
+
+    /** The vector parsed from the current line, reused for every line */
+    private final float[] vector = new float[3];
+
+    /** Bytes of the current name, reused for every line */
+    private byte[] nameBytes = new byte[256];
+
+
+    /**
+     * Opens an LP file and reads the number of images from the first line that isn't blank.
+     *
+     * @param lpFile            file to read
+     * @throws IOException      if there's an error accessing the file
+     * @throws Utils.LPException    if the file doesn't start with the number of images
+     */
+    public LPReader(File lpFile) throws IOException, Utils.LPException{
+        file = new RandomAccessFile(lpFile, "r");
+        try{
+            FileChannel channel = file.getChannel();
+            if(channel.size() > Integer.MAX_VALUE){
+                throw new Utils.LPException("File is too big to be an LP file.");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            //skip the byte order mark some editors put at the start of utf-8 files
+            if(buffer.remaining() >= 3 && (buffer.get(0) & 0xFF) == 0xEF && (buffer.get(1) & 0xFF) == 0xBB &&
+                    (buffer.get(2) & 0xFF) == 0xBF){
+                buffer.position(3);
+            }
+
+            numImages = nextLine() ? parseInt(lineStart, lineEnd) : -1;
+            if(numImages < 0){
+                throw new Utils.LPException("File did not contain number of images on line " +
+                                            Math.max(1, lineNumber) + ".");
+            }
+        }catch(IOException|Utils.LPException|RuntimeException e){
+            close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Reads all the lights of an LP file, in the order they are in the file, and gives them to the handler.
+     *
+     * @param lpFile            file to read
+     * @param handler           given each light
+     * @return                  number of lights that were read
+     * @throws IOException      if there's an error accessing the file
+     * @throws Utils.LPException    if there's an error parsing the file, or the handler stops reading it
+     */
+    public static int read(File lpFile, LightHandler handler) throws IOException, Utils.LPException{
+        try(LPReader reader = new LPReader(lpFile)){
+            while(reader.next()){
+                handler.light(reader.numRead - 1, reader.name, reader.x, reader.y, reader.z);
+            }
+            return reader.numRead;
+        }
+    }
+
+
+    /**
+     * Reads the next light in the file, which can then be got with {@link LPReader#getName()},
+     * {@link LPReader#getX()}, {@link LPReader#getY()} and {@link LPReader#getZ()}.
+     *
+     * @return                      whether there was another light, false once all the images have been read
+     * @throws Utils.LPException    if the next line isn't a name followed by three numbers, or the file ends before
+     *                              all the images have been read
+     */
+    public boolean next() throws Utils.LPException{
+        if(numRead >= numImages){return false;}
+
+        if(!nextLine()){
+            throw new Utils.LPException("File ended after " + numRead + " of " + numImages + " images");
+        }
+        int start = lineStart;
+        int end = lineEnd;
+
+        //the vector is the last three values on the line, and the name is everything before them
+        for(int i = 2; i >= 0; i--){
+            int valueEnd = end;
+            while(end > start && !isSpace(buffer.get(end - 1))){end--;}
+            if(end == valueEnd){throw lineError();}
+            vector[i] = parseFloat(end, valueEnd);
+            while(end > start && isSpace(buffer.get(end - 1))){end--;}
+        }
+        if(end == start){throw lineError();}
+
+        int length = end - start;
+        if(length > nameBytes.length){nameBytes = new byte[Math.max(length, 2 * nameBytes.length)];}
+        for(int i = 0; i < length; i++){nameBytes[i] = buffer.get(start + i);}
+
+        name = new String(nameBytes, 0, length, StandardCharsets.UTF_8);
+        x = vector[0];
+        y = vector[1];
+        z = vector[2];
+        numRead ++;
+        return true;
+    }
+
+
+    /**
+     * Finds the next line that isn't blank, sets {@link LPReader#lineStart} and {@link LPReader#lineEnd} to it, and
+     * moves the buffer past it.
+     *
+     * @return  whether there was another line that isn't blank
+     */
+    private boolean nextLine(){
+        int limit = buffer.limit();
+        int pos = buffer.position();
+
+        while(pos < limit){
+            //find the end of the line, which can end with \n, \r\n or \r
+            int start = pos;
+            while(pos < limit && buffer.get(pos) != '\n' && buffer.get(pos) != '\r'){pos++;}
+            int end = pos;
+            if(pos < limit && buffer.get(pos) == '\r'){pos++;}
+            if(pos < limit && buffer.get(pos) == '\n' && (pos == end || buffer.get(pos - 1) == '\r')){pos++;}
+            lineNumber ++;
+
+            while(start < end && isSpace(buffer.get(start))){start++;}
+            while(end > start && isSpace(buffer.get(end - 1))){end--;}
+            if(start < end){
+                buffer.position(pos);
+                lineStart = start;
+                lineEnd = end;
+                return true;
+            }
+        }
+
+        buffer.position(pos);
+        return false;
+    }
+
+
+    /**
+     * @param b     a byte of the file
+     * @return      whether it's a space or tab
+     */
+    private static boolean isSpace(byte b){
+        return b == ' ' || b == '\t';
+    }
+
+
+    /**
+     * @param start     index of the first byte of the number
+     * @param end       index after the last byte of the number
+     * @return          the non negative integer, or -1 if the bytes aren't one
+     */
+    private int parseInt(int start, int end){
+        if(end - start > 9){return -1;}
+
+        int value = 0;
+        for(int i = start; i < end; i++){
+            int digit = buffer.get(i) - '0';
+            if(digit < 0 || digit > 9){return -1;}
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+
+    /**
+     * Parses a decimal number with an optional sign, fraction and exponent. Numbers with up to 15 digits and small
+     * exponents, which are all the ones in normal LP files, are worked out exactly from the digits without making a
+     * string. Anything else is left to {@link Float#parseFloat(String)}.
+     *
+     * @param start                 index of the first byte of the number
+     * @param end                   index after the last byte of the number
+     * @return                      the number
+     * @throws Utils.LPException    if the bytes aren't a number
+     */
+    private float parseFloat(int start, int end) throws Utils.LPException{
+        int pos = start;
+        boolean negative = false;
+        if(buffer.get(pos) == '-' || buffer.get(pos) == '+'){
+            negative = buffer.get(pos) == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        boolean fraction = false;
+        for(; pos < end; pos++){
+            byte b = buffer.get(pos);
+            if(b >= '0' && b <= '9'){
+                anyDigits = true;
+                //leading zeros don't count towards the digits
+                if(mantissa != 0 || b != '0'){
+                    if(digits == MAX_FAST_DIGITS){return parseFloatSlow(start, end);}
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                }
+                if(fraction){exponent--;}
+            }else if(b == '.' && !fraction){
+                fraction = true;
+            }else{
+                break;
+            }
+        }
+        if(!anyDigits){return parseFloatSlow(start, end);}
+
+        if(pos < end){
+            byte b = buffer.get(pos);
+            if(b != 'e' && b != 'E'){throw lineError();}
+            pos++;
+
+            boolean negativeExponent = false;
+            if(pos < end && (buffer.get(pos) == '-' || buffer.get(pos) == '+')){
+                negativeExponent = buffer.get(pos) == '-';
+                pos++;
+            }
+            if(pos == end || end - pos > 3){return parseFloatSlow(start, end);}
+
+            int e = 0;
+            for(; pos < end; pos++){
+                int digit = buffer.get(pos) - '0';
+                if(digit < 0 || digit > 9){throw lineError();}
+                e = e * 10 + digit;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+
+        if(exponent < -22 || exponent > 22){return parseFloatSlow(start, end);}
+
+        //the mantissa and power of 10 are both exact, so the double is correctly rounded before it's made a float
+        double value = exponent < 0 ? mantissa / POWERS_OF_10[-exponent] : mantissa * POWERS_OF_10[exponent];
+        return (float) (negative ? -value : value);
+    }
+
+
+    /**
+     * @param start                 index of the first byte of the number
+     * @param end                   index after the last byte of the number
+     * @return                      the number parsed by {@link Float#parseFloat(String)}
+     * @throws Utils.LPException    if the bytes aren't a number
+     */
+    private float parseFloatSlow(int start, int end) throws Utils.LPException{
+        byte[] bytes = new byte[end - start];
+        for(int i = 0; i < bytes.length; i++){bytes[i] = buffer.get(start + i);}
+        try{
+            return Float.parseFloat(new String(bytes, StandardCharsets.US_ASCII));
+        }catch(NumberFormatException e){
+            throw lineError();
+        }
+    }
+
+
+    /**
+     * @return an exception for an error parsing the current line
+     */
+    private Utils.LPException lineError(){
+        return new Utils.LPException("Error parsing lp data on line: " + lineNumber);
+    }
+
+
+    /**
+     * @return {@link LPReader#numImages}
+     */
+    public int getNumImages() {
+        return numImages;
+    }
+
+
+    /**
+     * @return {@link LPReader#numRead}
+     */
+    public int getNumRead() {
+        return numRead;
+    }
+
+
+    /**
+     * @return {@link LPReader#lineNumber}
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+
+    /**
+     * @return {@link LPReader#name}
+     */
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * @return {@link LPReader#x}
+     */
+    public float getX() {
+        return x;
+    }
+
+
+    /**
+     * @return {@link LPReader#y}
+     */
+    public float getY() {
+        return y;
+    }
+
+
+    /**
+     * @return {@link LPReader#z}
+     */
+    public float getZ() {
+        return z;
+    }
+
+
+    /**
+     * @return the current light vector as a new {@link Utils.Vector3f}
+     */
+    public Utils.Vector3f getVector() {
+        return new Utils.Vector3f(x, y, z);
+    }
+
+
+    /**
+     * Closes the file. The mapped bytes are freed when they are garbage collected.
+     *
+     * @throws IOException  if there's an error closing the file
+     */
+    @Override
+    public void close() throws IOException{
+        buffer = null;
+        if(file != null){
+            file.close();
+            file = null;
+        }
+    }
+}
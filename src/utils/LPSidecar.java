@@ -0,0 +1,201 @@
+package utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A small binary file kept next to an LP file, named the LP file's name followed by
+ * {@link LPSidecar#SIDECAR_EXTENSION}. It holds the lights of the LP file along with the length and last modified time
+ * of each image. An existing project can be checked and opened from this one read, without parsing the LP file or
+ * opening any of the images to read their headers, as a sidecar is only written once the images have been checked to
+ * have the same width, height and format. The sidecar is only used while the LP file and all the images still have
+ * the lengths and modified times it recorded, otherwise it's out of date and the LP file and images have to be read
+ * again.
+ *
+ * The sidecar starts with {@link LPSidecar#MAGIC} and {@link LPSidecar#VERSION}, then the length and modified time of
+ * the LP file and the number of images, followed by the name, light vector, length and modified time of each image.
+ *
+ * Sidecars are only written for the LP files this application writes itself, never next to an LP file the user
+ * chose to open.
+ */
+public class LPSidecar {
+
+    /** What is added to the name of an LP file to get the name of its sidecar */
+    public static final String SIDECAR_EXTENSION = ".idx";
+
+    /** The first four bytes of every sidecar, 'LPIX' */
+    private static final int MAGIC = 0x4C504958;
+
+    /** Version of the layout of the sidecar, changed whenever the layout is */
+    private static final int VERSION = 2;
+
+    /** Fewest bytes each image can take up in the sidecar, with an empty name */
+    private static final int MIN_IMAGE_BYTES = 2 + 3 * 4 + 2 * 8;
+
+    /** The lights read from the sidecar */
+    private LightSet lights;
+
+    /** Length of the LP file when the sidecar was written */
+    private long lpLength;
+
+    /** Last modified time of the LP file when the sidecar was written */
+    private long lpModified;
+
+
+    /**
+     * @param lights        the lights read from the sidecar
+     * @param lpLength      length of the LP file when the sidecar was written
+     * @param lpModified    last modified time of the LP file when the sidecar was written
+     */
+    private LPSidecar(LightSet lights, long lpLength, long lpModified){
+        this.lights = lights;
+        this.lpLength = lpLength;
+        this.lpModified = lpModified;
+    }
+
+
+    /**
+     * @param lpFile    an LP file
+     * @return          the sidecar file of the LP file
+     */
+    public static File getSidecarFile(File lpFile){
+        return new File(lpFile.getPath() + SIDECAR_EXTENSION);
+    }
+
+
+    /**
+     * Reads the sidecar of an LP file, if it has one that is up to date.
+     *
+     * @param lpFile    the LP file
+     * @return          the lights in the sidecar, or null if there isn't a sidecar, it can't be
+     *                  read, or the LP file or any of the images have changed since it was written
+     */
+    public static LPSidecar read(File lpFile){
+        File sidecarFile = getSidecarFile(lpFile);
+        if(!sidecarFile.isFile()){return null;}
+
+        try{
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                                                                Files.readAllBytes(sidecarFile.toPath())));
+            if(in.readInt() != MAGIC || in.readInt() != VERSION){return null;}
+            long lpLength = in.readLong();
+            long lpModified = in.readLong();
+            if(lpLength != lpFile.length() || lpModified != lpFile.lastModified()){return null;}
+
+            //a corrupt number of images could be far more than the rest of the sidecar can hold
+            int numImages = in.readInt();
+            if(numImages < 0 || (long) numImages * MIN_IMAGE_BYTES > in.available()){return null;}
+
+            LightSet lights = new LightSet(Math.min(numImages, 4096));
+            for(int i = 0; i < numImages; i++){
+                String name = in.readUTF();
+                lights.put(name, in.readFloat(), in.readFloat(), in.readFloat());
+
+                //an image that has gone has a length and modified time of 0, so is out of date too
+                File imageFile = new File(name);
+                if(in.readLong() != imageFile.length() || in.readLong() != imageFile.lastModified()){return null;}
+            }
+
+            //a name written twice means the sidecar is corrupt, as it was written from lights with different names
+            if(lights.size() != numImages){return null;}
+            return new LPSidecar(lights, lpLength, lpModified);
+
+        }catch(IOException e){
+            //a sidecar that is cut short or can't be read is just out of date
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+
+    /**
+     * Writes the sidecar of an LP file, reading the headers of the images to put in it. Nothing is written if an
+     * image can't be read or the images don't all have the same width, height and format, as the project couldn't
+     * be opened from them anyway.
+     *
+     * @param lpFile    the LP file, which must already have been written
+     * @param lights    the lights in the LP file
+     */
+    public static void write(File lpFile, LightSet lights){
+        File[] imageFiles = new File[lights.size()];
+        for(int i = 0; i < lights.size(); i++){imageFiles[i] = new File(lights.getName(i));}
+
+        ImageHeaderScanner.ScanResult scan = new ImageHeaderScanner(ImageLoader.defaultNumWorkers())
+                                                                                            .scan(imageFiles);
+        if(scan.isConsistent()){writeChecked(lpFile, lights);}
+    }
+
+
+    /**
+     * Writes the sidecar of an LP file whose images have already been checked. The sidecar is written to a temporary
+     * file first, so a half written one is never read. Any errors are printed and the sidecar just isn't written, as
+     * the LP file can always be read instead.
+     *
+     * @param lpFile    the LP file, which must already have been written
+     * @param lights    the lights in the LP file
+     */
+    private static void writeChecked(File lpFile, LightSet lights){
+        File sidecarFile = getSidecarFile(lpFile);
+        File parent = sidecarFile.getAbsoluteFile().getParentFile();
+        try{
+            File tempFile = File.createTempFile("lpsidecar", ".tmp", parent);
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                                                                        new FileOutputStream(tempFile)))){
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(lpFile.length());
+                out.writeLong(lpFile.lastModified());
+
+                out.writeInt(lights.size());
+                for(int i = 0; i < lights.size(); i++){
+                    File imageFile = new File(lights.getName(i));
+                    out.writeUTF(lights.getName(i));
+                    out.writeFloat(lights.getX(i));
+                    out.writeFloat(lights.getY(i));
+                    out.writeFloat(lights.getZ(i));
+                    out.writeLong(imageFile.length());
+                    out.writeLong(imageFile.lastModified());
+                }
+            }catch(IOException e){
+                tempFile.delete();
+                throw e;
+            }
+            Files.move(tempFile.toPath(), sidecarFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+
+        }catch(IOException e){
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * @return {@link LPSidecar#lights}
+     */
+    public LightSet getLights() {
+        return lights;
+    }
+
+
+    /**
+     * @return {@link LPSidecar#lpLength}
+     */
+    public long getLPLength() {
+        return lpLength;
+    }
+
+
+    /**
+     * @return {@link LPSidecar#lpModified}
+     */
+    public long getLPModified() {
+        return lpModified;
+    }
+}
@@ -0,0 +1,161 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The light positions of a set of images, such as those read from or written to an LP file. The names of the images
+ * are kept in a table along with the x, y and z of their light vectors in separate arrays, so a light keeps the same
+ * index for as long as it is in the set, the lights are in the order they were added, and no objects are made for
+ * each light.
+ */
+public class LightSet {
+
+    /** Number of lights there is room for in a new set if it isn't given */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Name of each light's image */
+    private String[] names;
+
+    /** The x component of each light vector */
+    private float[] x;
+
+    /** The y component of each light vector */
+    private float[] y;
+
+    /** The z component of each light vector */
+    private float[] z;
+
+    /** Number of lights in the set */
+    private int size = 0;
+
+    /** The index of each light keyed by its name */
+    private HashMap<String, Integer> indices;
+
+
+    /**
+     * Creates a new, empty LightSet.
+     */
+    public LightSet(){
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Creates a new, empty LightSet with room for the given number of lights before it has to grow.
+     *
+     * @param capacity  number of lights expected
+     */
+    public LightSet(int capacity){
+        capacity = Math.max(1, capacity);
+        names = new String[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        z = new float[capacity];
+        indices = new HashMap<>(capacity * 4 / 3 + 1);
+    }
+
+
+    /**
+     * Adds a light to the end of the set, or changes its vector if a light with the same name is already in it, in
+     * which case it keeps its index.
+     *
+     * @param name  name of the light's image
+     * @param x     x component of the light vector
+     * @param y     y component of the light vector
+     * @param z     z component of the light vector
+     * @return      the index of the light
+     */
+    public int put(String name, float x, float y, float z){
+        Integer index = indices.get(name);
+        if(index == null){
+            if(size == names.length){grow(2 * size);}
+            index = size++;
+            names[index] = name;
+            indices.put(name, index);
+        }
+
+        this.x[index] = x;
+        this.y[index] = y;
+        this.z[index] = z;
+        return index;
+    }
+
+
+    /**
+     * @param capacity  the new number of lights there is room for
+     */
+    private void grow(int capacity){
+        names = Arrays.copyOf(names, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+    }
+
+
+    /**
+     * @return {@link LightSet#size}
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * @return whether there are no lights in the set
+     */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+
+    /**
+     * @param index     index of the light
+     * @return          the name of the light's image
+     */
+    public String getName(int index){
+        checkIndex(index);
+        return names[index];
+    }
+
+
+    /**
+     * @param index     index of the light
+     * @return          the x component of the light vector
+     */
+    public float getX(int index){
+        checkIndex(index);
+        return x[index];
+    }
+
+
+    /**
+     * @param index     index of the light
+     * @return          the y component of the light vector
+     */
+    public float getY(int index){
+        checkIndex(index);
+        return y[index];
+    }
+
+
+    /**
+     * @param index     index of the light
+     * @return          the z component of the light vector
+     */
+    public float getZ(int index){
+        checkIndex(index);
+        return z[index];
+    }
+
+
+    /**
+     * @param index     index of a light
+     * @throws IndexOutOfBoundsException    if there's no light at the index
+     */
+    private void checkIndex(int index){
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Light index: " + index + ", size: " + size);
+        }
+    }
+}
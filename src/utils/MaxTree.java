@@ -0,0 +1,327 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * The max-tree of a grey image, used to find the highlight on a specular sphere for a whole range of thresholds at
+ * once. Each node of the tree is a group of connected pixels that are all at or above the node's level, and its
+ * children are the groups inside it at higher levels. The groups that
+ * {@link ImageProcessing#findHighlight(byte[], int, int, int, SphereMask)} would find at a threshold are just the
+ * nodes whose level is at or above the threshold but whose parent's is below it, so once the tree is built the
+ * highlight for any threshold can be read off it without looking at the pixels again.
+ *
+ * The tree is built with the union-find algorithm of Berger et al, with pixels connected to all 8 of their
+ * neighbours. Each node keeps the area, sums of coords and bounding box of all the pixels in its subtree, and the
+ * index of its first pixel in row order, so the groups can be looked at in the same order findHighlight does. The
+ * buffers are kept and reused for the next image, so each thread should get its own with
+ * {@link MaxTree#forThread()}.
+ *
+ * @see ImageProcessing#findHighlight(byte[], int, int, int, SphereMask)
+ *
+ * @author Jed Mills
+ */
+public class MaxTree {
+
+    /** The MaxTree of each thread */
+    private static final ThreadLocal<MaxTree> threadTrees = new ThreadLocal<MaxTree>(){
+        @Override
+        protected MaxTree initialValue() {
+            return new MaxTree();
+        }
+    };
+
+    /** Width of the last image */
+    private int width;
+
+    /** Height of the last image */
+    private int height;
+
+    /** Grey level of each pixel of the last image */
+    private int[] level = new int[0];
+
+    /** Parent of each pixel in the tree, or -1 for pixels below the lowest level the tree was built for */
+    private int[] parent = new int[0];
+
+    /** Root of each pixel's partial tree while the tree is being built */
+    private int[] zpar = new int[0];
+
+    /** Mask the tree was last built with, the pixels outside it are all still out of the tree, or null */
+    private SphereMask lastMask;
+
+    /** Pixels in the order they are added to the tree, from the brightest down */
+    private int[] sorted = new int[0];
+
+    /** Number of pixels in {@link MaxTree#sorted} */
+    private int numSorted;
+
+    /** Number of pixels of each grey level, used to sort the pixels */
+    private int[] levelCounts = new int[257];
+
+    /** Nodes of the tree, the pixels that represent a group, in the order of their first pixel */
+    private int[] nodes = new int[0];
+
+    /** Number of nodes in {@link MaxTree#nodes} */
+    private int numNodes;
+
+    /** Number of pixels in the subtree of each node */
+    private int[] area = new int[0];
+
+    /** Sum of the x coords of the pixels in the subtree of each node */
+    private long[] sumX = new long[0];
+
+    /** Sum of the y coords of the pixels in the subtree of each node */
+    private long[] sumY = new long[0];
+
+    /** Smallest x in the subtree of each node */
+    private int[] minX = new int[0];
+
+    /** Smallest y in the subtree of each node */
+    private int[] minY = new int[0];
+
+    /** Largest x in the subtree of each node */
+    private int[] maxX = new int[0];
+
+    /** Largest y in the subtree of each node */
+    private int[] maxY = new int[0];
+
+    /** Smallest pixel index in the subtree of each node, the first pixel of its group in row order */
+    private int[] first = new int[0];
+
+
+    /**
+     * @return the MaxTree for the calling thread
+     */
+    public static MaxTree forThread(){
+        return threadTrees.get();
+    }
+
+
+    /**
+     * Creates a new MaxTree.
+     */
+    public MaxTree(){}
+
+
+    /**
+     * Builds the tree for the image. Pixels below the lowest level aren't part of the tree, so the highlight can
+     * only be found for thresholds at or above it.
+     *
+     * @param pixels        grey values of the image in row major order, read as unsigned bytes
+     * @param width         width of the image
+     * @param height        height of the image
+     * @param lowestLevel   lowest threshold the highlight will be found for
+     */
+    public void build(byte[] pixels, int width, int height, int lowestLevel){
+        build(pixels, width, height, lowestLevel, null);
+    }
+
+
+    /**
+     * Builds the tree for the square around a sphere, only looking at the pixels inside the sphere's mask. The
+     * pixels outside the mask are never read and aren't part of the tree.
+     *
+     * @param pixels        grey values of the square in row major order, read as unsigned bytes
+     * @param width         width of the square, the size of the mask
+     * @param height        height of the square, the size of the mask
+     * @param lowestLevel   lowest threshold the highlight will be found for
+     * @param mask          pixels of the square to look at, or null to look at all of them
+     */
+    public void build(byte[] pixels, int width, int height, int lowestLevel, SphereMask mask){
+        this.width = width;
+        this.height = height;
+        int numPixels = width * height;
+        if(level.length < numPixels){
+            ensureCapacity(numPixels);
+            Arrays.fill(parent, -1);
+        }else if(mask == null || mask != lastMask){
+            //pixels outside the mask are only looked at as neighbours and never written, so have to be out the tree
+            Arrays.fill(parent, 0, numPixels, -1);
+        }
+        lastMask = mask;
+        lowestLevel = Math.max(0, lowestLevel);
+
+        //sort the pixels at or above the lowest level from brightest to darkest with a counting sort
+        Arrays.fill(levelCounts, 0);
+        for(int y = 0; y < height; y++){
+            int end = y * width + (mask == null ? width : mask.getRowEnd(y));
+            for(int i = y * width + (mask == null ? 0 : mask.getRowStart(y)); i < end; i++){
+                level[i] = pixels[i] & 0xFF;
+                if(level[i] >= lowestLevel){levelCounts[255 - level[i] + 1]++;}
+            }
+        }
+        for(int l = 1; l < levelCounts.length; l++){levelCounts[l] += levelCounts[l - 1];}
+        numSorted = levelCounts[256];
+        for(int y = 0; y < height; y++){
+            int end = y * width + (mask == null ? width : mask.getRowEnd(y));
+            for(int i = y * width + (mask == null ? 0 : mask.getRowStart(y)); i < end; i++){
+                parent[i] = -1;
+                if(level[i] >= lowestLevel){sorted[levelCounts[255 - level[i]]++] = i;}
+            }
+        }
+
+        //add the pixels from brightest to darkest, joining each to the groups of its neighbours already added
+        for(int s = 0; s < numSorted; s++){
+            int p = sorted[s];
+            parent[p] = p;
+            zpar[p] = p;
+
+            int x = p % width;
+            int y = p / width;
+            for(int dy = -1; dy <= 1; dy++){
+                int ny = y + dy;
+                if(ny < 0 || ny >= height){continue;}
+
+                for(int dx = -1; dx <= 1; dx++){
+                    int nx = x + dx;
+                    if(nx < 0 || nx >= width || (dx == 0 && dy == 0)){continue;}
+
+                    int n = ny * width + nx;
+                    if(parent[n] == -1){continue;}
+
+                    int root = findRoot(n);
+                    if(root != p){
+                        parent[root] = p;
+                        zpar[root] = p;
+                    }
+                }
+            }
+        }
+
+        //make each pixel point at the node of its level, so every parent is a node
+        for(int s = numSorted - 1; s >= 0; s--){
+            int p = sorted[s];
+            int q = parent[p];
+            if(level[parent[q]] == level[q]){parent[p] = parent[q];}
+        }
+
+        //children are always added before their parent, so each node's subtree is complete by the time it's
+        //added to its parent
+        for(int s = 0; s < numSorted; s++){
+            int p = sorted[s];
+            area[p] = 1;
+            sumX[p] = p % width;
+            sumY[p] = p / width;
+            minX[p] = maxX[p] = p % width;
+            minY[p] = maxY[p] = p / width;
+            first[p] = p;
+        }
+        for(int s = 0; s < numSorted; s++){
+            int p = sorted[s];
+            int q = parent[p];
+            if(q == p){continue;}
+
+            area[q] += area[p];
+            sumX[q] += sumX[p];
+            sumY[q] += sumY[p];
+            if(minX[p] < minX[q]){minX[q] = minX[p];}
+            if(maxX[p] > maxX[q]){maxX[q] = maxX[p];}
+            if(minY[p] < minY[q]){minY[q] = minY[p];}
+            if(maxY[p] > maxY[q]){maxY[q] = maxY[p];}
+            if(first[p] < first[q]){first[q] = first[p];}
+        }
+
+        //the nodes are the roots and the pixels whose parent is at a lower level, put them in order of their first
+        //pixel with a counting sort. Nodes that share a first pixel are nested, so only one of them is ever a group
+        //at a threshold and the order between them doesn't matter
+        for(int s = 0; s < numSorted; s++){zpar[sorted[s]] = 0;}
+        numNodes = 0;
+        for(int s = 0; s < numSorted; s++){
+            int p = sorted[s];
+            if(isNode(p)){
+                zpar[first[p]]++;
+                numNodes++;
+            }
+        }
+        int start = 0;
+        for(int y = 0; y < height; y++){
+            int end = y * width + (mask == null ? width : mask.getRowEnd(y));
+            for(int i = y * width + (mask == null ? 0 : mask.getRowStart(y)); i < end; i++){
+                if(parent[i] == -1){continue;}
+
+                int count = zpar[i];
+                zpar[i] = start;
+                start += count;
+            }
+        }
+        for(int s = 0; s < numSorted; s++){
+            int p = sorted[s];
+            if(isNode(p)){nodes[zpar[first[p]]++] = p;}
+        }
+    }
+
+
+    /**
+     * @param p     index of a pixel in the tree
+     * @return      whether the pixel represents a node, which it does if it's a root or its parent is at a lower level
+     */
+    private boolean isNode(int p){
+        return parent[p] == p || level[parent[p]] != level[p];
+    }
+
+
+    /**
+     * Finds the root of the pixel's partial tree, compressing the path on the way.
+     *
+     * @param p     index of the pixel
+     * @return      index of the root
+     */
+    private int findRoot(int p){
+        int root = p;
+        while(zpar[root] != root){root = zpar[root];}
+        while(zpar[p] != root){
+            int next = zpar[p];
+            zpar[p] = root;
+            p = next;
+        }
+        return root;
+    }
+
+
+    /**
+     * Finds the highlight for a threshold in the image the tree was last built for. This gives the same highlight
+     * as {@link ImageProcessing#findHighlight(byte[], int, int, int, SphereMask)} with the same threshold.
+     *
+     * @param th    threshold, which should be at least the lowest level the tree was built for
+     * @return      the [x, y, r] of the light spot in the image, or [-1, -1, 0] if there isn't one
+     */
+    public float[] findHighlight(int th){
+        float[] center = {-1, -1, 0, 0};
+        float xc = width / 2.0f, yc = height / 2.0f;
+
+        for(int i = 0; i < numNodes; i++){
+            int n = nodes[i];
+            //a group at this threshold if it's at or above it, and its parent isn't
+            if(level[n] < th || (parent[n] != n && level[parent[n]] >= th)){continue;}
+
+            float r = Math.min(maxX[n] - minX[n], maxY[n] - minY[n]) / 2.0f;
+            ImageProcessing.chooseHighlight(center, area[n], (float) sumX[n] / area[n],
+                                                (float) sumY[n] / area[n], r, xc, yc);
+        }
+
+        return new float[]{center[0], center[1], center[2]};
+    }
+
+
+    /**
+     * Makes sure all the buffers can hold the given number of pixels.
+     *
+     * @param numPixels     number of pixels in the image
+     */
+    private void ensureCapacity(int numPixels){
+        if(level.length >= numPixels){return;}
+
+        level = new int[numPixels];
+        parent = new int[numPixels];
+        zpar = new int[numPixels];
+        sorted = new int[numPixels];
+        nodes = new int[numPixels];
+        area = new int[numPixels];
+        sumX = new long[numPixels];
+        sumY = new long[numPixels];
+        minX = new int[numPixels];
+        minY = new int[numPixels];
+        maxX = new int[numPixels];
+        maxY = new int[numPixels];
+        first = new int[numPixels];
+    }
+}
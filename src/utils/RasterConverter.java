@@ -0,0 +1,129 @@
+package utils;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritablePixelFormat;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Converts JavaFX images to BufferedImages for the processing that was all originally written for BufferedImages,
+ * like the highlight detection and writing JPEGs. The pixels are copied in one bulk {@link PixelReader#getPixels}
+ * call straight into the int array behind the BufferedImage, rather than one pixel at a time.
+ *
+ * When every frame of a project is converted one after the other, the BufferedImages can be taken from a pool with
+ * {@link RasterConverter#acquire(Image)} and given back with {@link RasterConverter#release(BufferedImage)}, so a
+ * new 24MP raster doesn't have to be allocated and cleared for every frame.
+ */
+public class RasterConverter {
+
+    /** BufferedImages that have been released and can be reused, of the size of the last frames converted */
+    private static final ConcurrentLinkedQueue<BufferedImage> pool = new ConcurrentLinkedQueue<>();
+
+
+    /**
+     * Creates a new TYPE_INT_RGB BufferedImage with the pixels of the given image.
+     *
+     * @param image     image to convert
+     * @return          a new BufferedImage
+     */
+    public static BufferedImage toBufferedImage(Image image){
+        BufferedImage raster = new BufferedImage((int) image.getWidth(), (int) image.getHeight(),
+                                                    BufferedImage.TYPE_INT_RGB);
+        copyPixels(image, raster);
+        return raster;
+    }
+
+
+    /**
+     * Gets a TYPE_INT_RGB BufferedImage from the pool, or makes a new one if there isn't one of the right size, and
+     * copies the pixels of the given image into it. The raster should be given back with
+     * {@link RasterConverter#release(BufferedImage)} once it has been used.
+     *
+     * @param image     image to convert
+     * @return          a BufferedImage with the pixels of the image
+     */
+    public static BufferedImage acquire(Image image){
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+
+        BufferedImage raster;
+        while((raster = pool.poll()) != null){
+            if(raster.getWidth() == width && raster.getHeight() == height){break;}
+        }
+        if(raster == null){
+            raster = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+
+        copyPixels(image, raster);
+        return raster;
+    }
+
+
+    /**
+     * Gives a raster from {@link RasterConverter#acquire(Image)} back to the pool so it can be reused.
+     *
+     * @param raster    raster that is no longer needed
+     */
+    public static void release(BufferedImage raster){
+        if(raster != null){pool.add(raster);}
+    }
+
+
+    /**
+     * Empties the pool, so the memory of the rasters can be freed once a batch of frames has been processed.
+     */
+    public static void clearPool(){
+        pool.clear();
+    }
+
+
+    /**
+     * Copies all the pixels of the image into a TYPE_INT_RGB BufferedImage of the same size. The alpha of the image
+     * ends up in the top byte of each pixel, which the RGB colour model ignores.
+     *
+     * @param image     image to copy the pixels of
+     * @param raster    TYPE_INT_RGB BufferedImage to copy the pixels into
+     */
+    private static void copyPixels(Image image, BufferedImage raster){
+        int[] data = ((DataBufferInt) raster.getRaster().getDataBuffer()).getData();
+        readPixels(image, 0, 0, raster.getWidth(), raster.getHeight(), data);
+    }
+
+
+    /**
+     * Copies a region of the image as ARGB ints into the given array, in row major order.
+     *
+     * @param image     image to read
+     * @param x         x of the top left of the region
+     * @param y         y of the top left of the region
+     * @param width     width of the region
+     * @param height    height of the region
+     * @param dest      array of at least width * height ints to copy the pixels into
+     */
+    public static void readPixels(Image image, int x, int y, int width, int height, int[] dest){
+        readPixels(image, x, y, width, height, dest, 0, width);
+    }
+
+
+    /**
+     * Copies a region of the image as ARGB ints into the given array, starting at the offset and with the given
+     * number of ints between the starts of each row.
+     *
+     * @param image     image to read
+     * @param x         x of the top left of the region
+     * @param y         y of the top left of the region
+     * @param width     width of the region
+     * @param height    height of the region
+     * @param dest      array to copy the pixels into
+     * @param offset    index in the array of the first pixel
+     * @param stride    number of ints from the start of one row to the next in the array
+     */
+    public static void readPixels(Image image, int x, int y, int width, int height, int[] dest, int offset,
+                                  int stride){
+        PixelReader reader = image.getPixelReader();
+        reader.getPixels(x, y, width, height, WritablePixelFormat.getIntArgbInstance(), dest, offset, stride);
+    }
+}
@@ -0,0 +1,880 @@
+package utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Decoder for baseline JPEG files that produces the image at 1/2, 1/4 or 1/8 of its full size directly from the DCT
+ * coefficients. Each 8x8 block of coefficients only has its low NxN frequencies put through an N point inverse DCT,
+ * which gives the NxN average of the block without ever making the full size pixels, and the chroma is upsampled at
+ * the reduced size. This is much quicker than decoding the full image and then scaling it down, and is used for the
+ * thumbnails in the image grids.
+ *
+ * Only baseline and extended sequential Huffman coded, 8 bit, greyscale, YCbCr or RGB files are supported, with any
+ * sampling factors and restart intervals. Anything else (eg. progressive or CMYK files) throws an
+ * {@link UnsupportedJPEGException}, so the caller can fall back to a full decoder.
+ */
+public class ScaledJPEGDecoder {
+
+    /** Maps the position of a coefficient in the zigzag order of the file to its position in the 8x8 block */
+    private static final int[] ZIGZAG = {
+             0,  1,  8, 16,  9,  2,  3, 10,
+            17, 24, 32, 25, 18, 11,  4,  5,
+            12, 19, 26, 33, 40, 48, 41, 34,
+            27, 20, 13,  6,  7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36,
+            29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46,
+            53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    /** Number of bits looked up at once when decoding a Huffman code, longer codes are decoded bit by bit */
+    private static final int LOOKAHEAD = 9;
+
+    /** The bytes of the whole file */
+    private final byte[] data;
+
+    /** Position of the next byte to read in {@link ScaledJPEGDecoder#data} */
+    private int pos;
+
+    /** Entropy coded bits that have been read but not used yet, in the lowest bitCount bits */
+    private long bitBuffer;
+
+    /** Number of bits in {@link ScaledJPEGDecoder#bitBuffer} */
+    private int bitCount;
+
+    /** Whether a marker has been found in the entropy coded data, after which only zeros are read */
+    private boolean markerHit;
+
+    /** Quantization tables, in zigzag order */
+    private int[][] quantTables = new int[4][];
+
+    /** Huffman tables for the DC coefficients */
+    private HuffmanTable[] dcTables = new HuffmanTable[4];
+
+    /** Huffman tables for the AC coefficients */
+    private HuffmanTable[] acTables = new HuffmanTable[4];
+
+    /** The components of the image, in the order of the frame header */
+    private Component[] components;
+
+    /** Full size width and height of the image */
+    private int width, height;
+
+    /** Largest horizontal and vertical sampling factors of the components */
+    private int hMax, vMax;
+
+    /** Number of interleaved MCUs across and down the image */
+    private int mcusPerLine, mcusPerColumn;
+
+    /** Number of MCUs between restart markers, or 0 if there are none */
+    private int restartInterval;
+
+    /** Colour transform from an Adobe APP14 segment, or -1 if there isn't one */
+    private int adobeTransform = -1;
+
+    /** Width and height that each 8x8 block is decoded to, 1, 2, 4 or 8 */
+    private int blockSize;
+
+    /** Size of the box the decoded image should cover, or 0 for the full size image */
+    private final int fitSize;
+
+    /** Cosine terms of the N point inverse DCT, indexed by [x * blockSize + u] */
+    private float[] cosTable;
+
+
+    /**
+     * Thrown when a JPEG file uses a feature this decoder doesn't support, such as progressive coding.
+     */
+    public static class UnsupportedJPEGException extends IOException{
+
+        /** Version of the serialised form of this exception */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates a new UnsupportedJPEGException.
+         *
+         * @param message reason why this exception was thrown
+         */
+        public UnsupportedJPEGException(String message) {
+            super(message);
+        }
+    }
+
+
+    /**
+     * A component (eg. Y, Cb or Cr) of the image, decoded into its own plane at the reduced size.
+     */
+    private static class Component{
+
+        /** Identifier of the component used in the scan headers */
+        private int id;
+
+        /** Horizontal and vertical sampling factors */
+        private int h, v;
+
+        /** Index of the quantization table */
+        private int quantTable;
+
+        /** Huffman tables used in the current scan */
+        private HuffmanTable dcTable, acTable;
+
+        /** Predicted DC coefficient, for the difference coding of the DC coefficients */
+        private int dcPred;
+
+        /** Decoded samples of the component */
+        private byte[] plane;
+
+        /** Width of {@link Component#plane} */
+        private int planeWidth;
+    }
+
+
+    /**
+     * A Huffman table, with a lookup table for the short codes which are by far the most common.
+     */
+    private static class HuffmanTable{
+
+        /** (length << 8) | value for every code of up to LOOKAHEAD bits, indexed by the next LOOKAHEAD bits */
+        private int[] lookup = new int[1 << LOOKAHEAD];
+
+        /** Largest code of each length, or -1 if there are no codes of that length */
+        private int[] maxCode = new int[17];
+
+        /** Offset from a code of each length to its index in {@link HuffmanTable#values} */
+        private int[] valueOffset = new int[17];
+
+        /** Values of the codes, in code order */
+        private int[] values;
+
+        /**
+         * Creates a new HuffmanTable from a DHT segment.
+         *
+         * @param counts    number of codes of each length from 1 to 16, at index 1 to 16
+         * @param values    values of the codes, in code order
+         */
+        private HuffmanTable(int[] counts, int[] values){
+            this.values = values;
+
+            int code = 0;
+            int k = 0;
+            for(int length = 1; length <= 16; length++){
+                valueOffset[length] = k - code;
+                for(int i = 0; i < counts[length]; i++){
+                    if(length <= LOOKAHEAD){
+                        int shift = LOOKAHEAD - length;
+                        for(int j = 0; j < (1 << shift); j++){
+                            lookup[(code << shift) | j] = (length << 8) | values[k];
+                        }
+                    }
+                    code++;
+                    k++;
+                }
+                maxCode[length] = counts[length] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+        }
+    }
+
+
+    /**
+     * Creates a new ScaledJPEGDecoder.
+     *
+     * @param data      bytes of the JPEG file
+     * @param fitSize   size of the box the decoded image should cover, or 0 for the full size image
+     */
+    private ScaledJPEGDecoder(byte[] data, int fitSize){
+        this.data = data;
+        this.fitSize = fitSize;
+    }
+
+
+    /**
+     * Decodes a JPEG file at the smallest of 1/8, 1/4, 1/2 or full size that is still at least as big as the
+     * thumbnail that fits in a box of the given size, so it can be scaled down to the thumbnail without losing detail.
+     *
+     * @param file                      JPEG file to decode
+     * @param fitSize                   size of the box the thumbnail should fit in, or 0 for the full size image
+     * @return                          the decoded image
+     * @throws UnsupportedJPEGException if the file uses a feature this decoder doesn't support
+     * @throws IOException              if the file couldn't be read or isn't a valid JPEG
+     */
+    public static BufferedImage decode(File file, int fitSize) throws IOException{
+        ScaledJPEGDecoder decoder = new ScaledJPEGDecoder(Files.readAllBytes(file.toPath()), fitSize);
+        try{
+            return decoder.decode();
+        }catch(IndexOutOfBoundsException | NullPointerException e){
+            //a missing table or truncated segment is just a broken file
+            throw new IOException("Invalid JPEG file " + file.getAbsolutePath(), e);
+        }
+    }
+
+
+    /**
+     * Reads all the segments of the file, decoding the scans as they are found.
+     *
+     * @return                  the decoded image
+     * @throws IOException      if the file isn't a valid or supported JPEG
+     */
+    private BufferedImage decode() throws IOException{
+        if(data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8){
+            throw new IOException("Not a JPEG file");
+        }
+        pos = 2;
+
+        boolean decodedScan = false;
+        while(true){
+            int marker = nextMarker();
+            if(marker < 0 || marker == 0xD9){break;}
+
+            switch(marker){
+                case 0xC0:
+                case 0xC1:
+                    readFrame();
+                    break;
+                case 0xC4:
+                    readHuffmanTables();
+                    break;
+                case 0xDB:
+                    readQuantTables();
+                    break;
+                case 0xDD:
+                    readUnsignedShort();
+                    restartInterval = readUnsignedShort();
+                    break;
+                case 0xDA:
+                    if(components == null){throw new IOException("Scan before frame header");}
+                    decodeScan(readScanHeader());
+                    decodedScan = true;
+                    break;
+                case 0xEE:
+                    readAdobeSegment();
+                    break;
+                case 0xC2: case 0xC3: case 0xC5: case 0xC6: case 0xC7:
+                case 0xC9: case 0xCA: case 0xCB: case 0xCD: case 0xCE: case 0xCF:
+                    throw new UnsupportedJPEGException("Only baseline Huffman coded JPEGs are supported");
+                default:
+                    //APPn, COM and anything else we don't need
+                    skipSegment();
+            }
+        }
+
+        if(!decodedScan){throw new IOException("JPEG has no image data");}
+        return toBufferedImage();
+    }
+
+
+    /**
+     * Finds the next marker after {@link ScaledJPEGDecoder#pos}, skipping any fill bytes, stuffed bytes and
+     * restart markers left at the end of entropy coded data.
+     *
+     * @return  the marker code, or -1 if the end of the file was reached
+     */
+    private int nextMarker(){
+        while(pos + 1 < data.length){
+            if((data[pos] & 0xFF) == 0xFF){
+                int code = data[pos + 1] & 0xFF;
+                if(code != 0x00 && code != 0xFF && (code & 0xF8) != 0xD0){
+                    pos += 2;
+                    return code;
+                }
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+
+    /**
+     * @return  the next two bytes as a big endian unsigned short
+     */
+    private int readUnsignedShort(){
+        int value = ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+        pos += 2;
+        return value;
+    }
+
+
+    /**
+     * Skips over a segment using its length field.
+     */
+    private void skipSegment(){
+        int length = readUnsignedShort();
+        pos += length - 2;
+    }
+
+
+    /**
+     * Reads an SOF0 or SOF1 frame header, and works out the size to decode the image at.
+     *
+     * @throws IOException  if the frame isn't supported
+     */
+    private void readFrame() throws IOException{
+        int end = pos + readUnsignedShort();
+        int precision = data[pos++] & 0xFF;
+        height = readUnsignedShort();
+        width = readUnsignedShort();
+        int numComponents = data[pos++] & 0xFF;
+
+        if(precision != 8){throw new UnsupportedJPEGException("Only 8 bit JPEGs are supported");}
+        if(width == 0 || height == 0){throw new UnsupportedJPEGException("JPEGs with a DNL marker aren't supported");}
+        if(numComponents != 1 && numComponents != 3){
+            throw new UnsupportedJPEGException("Only greyscale and 3 component JPEGs are supported");
+        }
+
+        components = new Component[numComponents];
+        hMax = 1;
+        vMax = 1;
+        for(int i = 0; i < numComponents; i++){
+            Component component = new Component();
+            component.id = data[pos++] & 0xFF;
+            int sampling = data[pos++] & 0xFF;
+            component.h = sampling >> 4;
+            component.v = sampling & 0x0F;
+            component.quantTable = data[pos++] & 0x03;
+            if(component.h < 1 || component.v < 1){throw new IOException("Invalid sampling factors");}
+
+            hMax = Math.max(hMax, component.h);
+            vMax = Math.max(vMax, component.v);
+            components[i] = component;
+        }
+        pos = end;
+
+        for(Component component : components){
+            if(hMax % component.h != 0 || vMax % component.v != 0){
+                throw new UnsupportedJPEGException("Non integral sampling factors aren't supported");
+            }
+        }
+
+        blockSize = chooseBlockSize();
+        cosTable = new float[blockSize * blockSize];
+        for(int x = 0; x < blockSize; x++){
+            for(int u = 0; u < blockSize; u++){
+                double c = u == 0 ? Math.sqrt(0.5) : 1.0;
+                //half of C(u) cos(...) so that the product of the row and column terms has the 1/4 of the IDCT
+                cosTable[x * blockSize + u] = (float) (0.5 * c * Math.cos((2 * x + 1) * u * Math.PI / (2 * blockSize)));
+            }
+        }
+
+        mcusPerLine = (width + 8 * hMax - 1) / (8 * hMax);
+        mcusPerColumn = (height + 8 * vMax - 1) / (8 * vMax);
+        for(Component component : components){
+            component.planeWidth = mcusPerLine * component.h * blockSize;
+            component.plane = new byte[component.planeWidth * mcusPerColumn * component.v * blockSize];
+        }
+    }
+
+
+    /**
+     * Chooses the smallest block size whose image is still at least as big as the thumbnail that fits in a box
+     * of {@link ScaledJPEGDecoder#fitSize}.
+     *
+     * @return  the width and height to decode each 8x8 block to
+     */
+    private int chooseBlockSize(){
+        if(fitSize <= 0){return 8;}
+
+        for(int size = 1; size < 8; size *= 2){
+            //the thumbnail is scaled by min(fit / width, fit / height), so one of the sides has to cover the box
+            if((long) width * size >= 8L * fitSize || (long) height * size >= 8L * fitSize){
+                return size;
+            }
+        }
+        return 8;
+    }
+
+
+    /**
+     * Reads a DHT segment, which can hold several Huffman tables.
+     */
+    private void readHuffmanTables(){
+        int end = pos + readUnsignedShort();
+        while(pos < end){
+            int info = data[pos++] & 0xFF;
+            int[] counts = new int[17];
+            int total = 0;
+            for(int i = 1; i <= 16; i++){
+                counts[i] = data[pos++] & 0xFF;
+                total += counts[i];
+            }
+
+            int[] values = new int[total];
+            for(int i = 0; i < total; i++){
+                values[i] = data[pos++] & 0xFF;
+            }
+
+            HuffmanTable table = new HuffmanTable(counts, values);
+            if((info >> 4) == 0){
+                dcTables[info & 0x03] = table;
+            }else{
+                acTables[info & 0x03] = table;
+            }
+        }
+        pos = end;
+    }
+
+
+    /**
+     * Reads a DQT segment, which can hold several quantization tables of 8 or 16 bit values.
+     */
+    private void readQuantTables(){
+        int end = pos + readUnsignedShort();
+        while(pos < end){
+            int info = data[pos++] & 0xFF;
+            int[] table = new int[64];
+            for(int i = 0; i < 64; i++){
+                table[i] = (info >> 4) == 0 ? data[pos++] & 0xFF : readUnsignedShort();
+            }
+            quantTables[info & 0x03] = table;
+        }
+        pos = end;
+    }
+
+
+    /**
+     * Reads an Adobe APP14 segment, which says whether a 3 component image is YCbCr or RGB.
+     */
+    private void readAdobeSegment(){
+        int start = pos;
+        int length = readUnsignedShort();
+        if(length >= 14 && data[pos] == 'A' && data[pos + 1] == 'd' && data[pos + 2] == 'o' &&
+                data[pos + 3] == 'b' && data[pos + 4] == 'e'){
+            adobeTransform = data[pos + 11] & 0xFF;
+        }
+        pos = start + length;
+    }
+
+
+    /**
+     * Reads an SOS header, setting the Huffman tables of the components in the scan.
+     *
+     * @return                  the components in the scan, in scan order
+     * @throws IOException      if the scan refers to a component that isn't in the frame
+     */
+    private Component[] readScanHeader() throws IOException{
+        int end = pos + readUnsignedShort();
+        int numComponents = data[pos++] & 0xFF;
+        Component[] scanComponents = new Component[numComponents];
+
+        for(int i = 0; i < numComponents; i++){
+            int id = data[pos++] & 0xFF;
+            int tables = data[pos++] & 0xFF;
+
+            for(Component component : components){
+                if(component.id == id){scanComponents[i] = component;}
+            }
+            if(scanComponents[i] == null){throw new IOException("Scan component not in frame");}
+
+            scanComponents[i].dcTable = dcTables[tables >> 4];
+            scanComponents[i].acTable = acTables[tables & 0x03];
+        }
+        pos = end;
+        return scanComponents;
+    }
+
+
+    /**
+     * Decodes the entropy coded data of a scan, writing every block into the planes of its component. Scans with
+     * one component aren't interleaved, so each MCU is a single block.
+     *
+     * @param scanComponents    the components in the scan
+     * @throws IOException      if the data can't be decoded
+     */
+    private void decodeScan(Component[] scanComponents) throws IOException{
+        resetBits();
+        for(Component component : scanComponents){component.dcPred = 0;}
+
+        int mcusX = mcusPerLine;
+        int mcusY = mcusPerColumn;
+        if(scanComponents.length == 1){
+            Component component = scanComponents[0];
+            int componentWidth = (width * component.h + hMax - 1) / hMax;
+            int componentHeight = (height * component.v + vMax - 1) / vMax;
+            mcusX = (componentWidth + 7) / 8;
+            mcusY = (componentHeight + 7) / 8;
+        }
+
+        float[] coefficients = new float[blockSize * blockSize];
+        float[] temp = new float[blockSize * blockSize];
+        int totalMCUs = mcusX * mcusY;
+
+        for(int mcu = 0; mcu < totalMCUs; mcu++){
+            if(restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0){
+                restart(scanComponents);
+            }
+
+            int mcuX = mcu % mcusX;
+            int mcuY = mcu / mcusX;
+
+            if(scanComponents.length == 1){
+                Component component = scanComponents[0];
+                decodeBlock(component, coefficients);
+                writeBlock(component, coefficients, temp, mcuY, mcuX);
+
+            }else{
+                for(Component component : scanComponents){
+                    for(int v = 0; v < component.v; v++){
+                        for(int h = 0; h < component.h; h++){
+                            decodeBlock(component, coefficients);
+                            writeBlock(component, coefficients, temp, mcuY * component.v + v, mcuX * component.h + h);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Skips to the data after a restart marker, and resets the DC predictions.
+     *
+     * @param scanComponents    the components in the scan
+     */
+    private void restart(Component[] scanComponents){
+        while(pos + 1 < data.length &&
+                !((data[pos] & 0xFF) == 0xFF && ((data[pos + 1] & 0xFF) & 0xF8) == 0xD0)){
+            pos++;
+        }
+        pos += 2;
+
+        resetBits();
+        for(Component component : scanComponents){component.dcPred = 0;}
+    }
+
+
+    /**
+     * Decodes the next block of a component, keeping only the low frequency coefficients that are needed for the
+     * block size. The other coefficients still have to be read to get past them, but aren't dequantized.
+     *
+     * @param component         component the block belongs to
+     * @param coefficients      filled with the dequantized blockSize x blockSize low frequency coefficients
+     * @throws IOException      if the data can't be decoded
+     */
+    private void decodeBlock(Component component, float[] coefficients) throws IOException{
+        int[] quant = quantTables[component.quantTable];
+        int n = blockSize;
+        Arrays.fill(coefficients, 0f);
+
+        int t = decodeHuffman(component.dcTable);
+        int diff = t == 0 ? 0 : extend(readBits(t), t);
+        component.dcPred += diff;
+        coefficients[0] = component.dcPred * quant[0];
+
+        HuffmanTable acTable = component.acTable;
+        for(int k = 1; k < 64; ){
+            int rs = decodeHuffman(acTable);
+            int r = rs >> 4;
+            int s = rs & 0x0F;
+
+            if(s == 0){
+                //ZRL skips 16 zeros, anything else is the end of the block
+                if(r == 15){
+                    k += 16;
+                    continue;
+                }
+                break;
+            }
+
+            k += r;
+            if(k > 63){break;}
+
+            int bits = readBits(s);
+            int z = ZIGZAG[k];
+            int row = z >> 3;
+            int col = z & 7;
+            if(row < n && col < n){
+                coefficients[row * n + col] = extend(bits, s) * quant[k];
+            }
+            k++;
+        }
+    }
+
+
+    /**
+     * Puts the low frequency coefficients of a block through an N point inverse DCT and writes the samples into the
+     * plane of the component.
+     *
+     * @param component         component the block belongs to
+     * @param coefficients      the blockSize x blockSize low frequency coefficients, [v * blockSize + u]
+     * @param temp              reusable array for the row pass
+     * @param blockRow          row of the block in the component
+     * @param blockCol          column of the block in the component
+     */
+    private void writeBlock(Component component, float[] coefficients, float[] temp, int blockRow, int blockCol){
+        int n = blockSize;
+        int planeWidth = component.planeWidth;
+        int offset = blockRow * n * planeWidth + blockCol * n;
+        byte[] plane = component.plane;
+
+        if(n == 1){
+            //only the DC coefficient, which is 8 times the average of the block
+            plane[offset] = clamp(coefficients[0] / 8f + 128f);
+            return;
+        }
+
+        //horizontal pass over each row of frequencies
+        for(int v = 0; v < n; v++){
+            for(int x = 0; x < n; x++){
+                float sum = 0;
+                for(int u = 0; u < n; u++){
+                    sum += cosTable[x * n + u] * coefficients[v * n + u];
+                }
+                temp[v * n + x] = sum;
+            }
+        }
+
+        //vertical pass, giving the samples
+        for(int y = 0; y < n; y++){
+            for(int x = 0; x < n; x++){
+                float sum = 0;
+                for(int v = 0; v < n; v++){
+                    sum += cosTable[y * n + v] * temp[v * n + x];
+                }
+                plane[offset + y * planeWidth + x] = clamp(sum + 128f);
+            }
+        }
+    }
+
+
+    /**
+     * @param value     a sample value
+     * @return          the value rounded and clamped to 0-255, as a byte
+     */
+    private static byte clamp(float value){
+        int rounded = Math.round(value);
+        if(rounded < 0){return 0;}
+        if(rounded > 255){return (byte) 255;}
+        return (byte) rounded;
+    }
+
+
+    /**
+     * Turns the s bit magnitude category of a coefficient into its signed value.
+     *
+     * @param bits  the s extra bits of the coefficient
+     * @param s     number of extra bits
+     * @return      the signed value
+     */
+    private static int extend(int bits, int s){
+        return bits < (1 << (s - 1)) ? bits - (1 << s) + 1 : bits;
+    }
+
+
+    /**
+     * Decodes the next Huffman code in the entropy coded data.
+     *
+     * @param table             table to decode with
+     * @return                  the value of the code
+     * @throws IOException      if the bits don't match any code in the table
+     */
+    private int decodeHuffman(HuffmanTable table) throws IOException{
+        int entry = table.lookup[peekBits(LOOKAHEAD)];
+        if(entry != 0){
+            bitCount -= entry >> 8;
+            return entry & 0xFF;
+        }
+
+        for(int length = LOOKAHEAD + 1; length <= 16; length++){
+            int code = peekBits(length);
+            if(code <= table.maxCode[length]){
+                bitCount -= length;
+                return table.values[code + table.valueOffset[length]];
+            }
+        }
+        throw new IOException("Invalid Huffman code");
+    }
+
+
+    /**
+     * Empties the bit buffer, at the start of a scan or after a restart marker.
+     */
+    private void resetBits(){
+        bitBuffer = 0;
+        bitCount = 0;
+        markerHit = false;
+    }
+
+
+    /**
+     * Fills the bit buffer from the entropy coded data, removing the stuffed zero after every 0xFF. Once a marker
+     * is reached only zeros are added, and the marker is left for {@link ScaledJPEGDecoder#nextMarker()}.
+     */
+    private void fillBits(){
+        while(bitCount <= 56){
+            int b = 0;
+            if(!markerHit && pos < data.length){
+                b = data[pos] & 0xFF;
+                if(b == 0xFF){
+                    int next = pos + 1 < data.length ? data[pos + 1] & 0xFF : 0xD9;
+                    if(next == 0x00){
+                        pos += 2;
+                    }else{
+                        markerHit = true;
+                        b = 0;
+                    }
+                }else{
+                    pos++;
+                }
+            }
+            bitBuffer = (bitBuffer << 8) | b;
+            bitCount += 8;
+        }
+    }
+
+
+    /**
+     * @param n     number of bits, at most 16
+     * @return      the next n bits, without using them up
+     */
+    private int peekBits(int n){
+        if(bitCount < n){fillBits();}
+        return (int) (bitBuffer >>> (bitCount - n)) & ((1 << n) - 1);
+    }
+
+
+    /**
+     * @param n     number of bits, at most 16
+     * @return      the next n bits
+     */
+    private int readBits(int n){
+        int bits = peekBits(n);
+        bitCount -= n;
+        return bits;
+    }
+
+
+    /**
+     * Converts the decoded planes to RGB, upsampling any subsampled components to the reduced size of the image.
+     *
+     * @return  the decoded image
+     */
+    private BufferedImage toBufferedImage(){
+        int outWidth = (width * blockSize + 7) / 8;
+        int outHeight = (height * blockSize + 7) / 8;
+        BufferedImage image = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        if(components.length == 1){
+            Component grey = components[0];
+            for(int y = 0; y < outHeight; y++){
+                int rowOffset = y * grey.planeWidth;
+                for(int x = 0; x < outWidth; x++){
+                    int g = grey.plane[rowOffset + x] & 0xFF;
+                    pixels[y * outWidth + x] = (g << 16) | (g << 8) | g;
+                }
+            }
+            return image;
+        }
+
+        Component c0 = components[0];
+        Component c1 = components[1];
+        Component c2 = components[2];
+
+        //an Adobe segment says whether the image is RGB, otherwise RGB images are marked by their component ids
+        boolean isRGB = adobeTransform == 0 || (adobeTransform < 0 && c0.id == 'R' && c1.id == 'G' && c2.id == 'B');
+
+        float[] p0 = upsample(c0, outWidth, outHeight);
+        float[] p1 = upsample(c1, outWidth, outHeight);
+        float[] p2 = upsample(c2, outWidth, outHeight);
+
+        for(int i = 0; i < pixels.length; i++){
+            int red, green, blue;
+            if(isRGB){
+                red = clampInt(p0[i]);
+                green = clampInt(p1[i]);
+                blue = clampInt(p2[i]);
+            }else{
+                float y = p0[i];
+                float cb = p1[i] - 128f;
+                float cr = p2[i] - 128f;
+                red = clampInt(y + 1.402f * cr);
+                green = clampInt(y - 0.344136f * cb - 0.714136f * cr);
+                blue = clampInt(y + 1.772f * cb);
+            }
+            pixels[i] = (red << 16) | (green << 8) | blue;
+        }
+        return image;
+    }
+
+
+    /**
+     * Upsamples the plane of a component to the size of the decoded image with bilinear interpolation between the
+     * centres of its samples. Chroma is usually only kept for every 2x2 pixels, so at 1/8 size each chroma sample
+     * covers 2x2 pixels of the image, and just repeating it leaves the colours visibly blocky.
+     *
+     * @param component     a component of the image
+     * @param outWidth      width of the decoded image
+     * @param outHeight     height of the decoded image
+     * @return              the samples of the component at every pixel of the decoded image
+     */
+    private float[] upsample(Component component, int outWidth, int outHeight){
+        int sampleWidth = (outWidth * component.h + hMax - 1) / hMax;
+        int sampleHeight = (outHeight * component.v + vMax - 1) / vMax;
+
+        int[] col0 = new int[outWidth];
+        int[] col1 = new int[outWidth];
+        float[] colWeight = new float[outWidth];
+        interpolationWeights(component.h, hMax, sampleWidth, col0, col1, colWeight);
+
+        int[] row0 = new int[outHeight];
+        int[] row1 = new int[outHeight];
+        float[] rowWeight = new float[outHeight];
+        interpolationWeights(component.v, vMax, sampleHeight, row0, row1, rowWeight);
+
+        byte[] plane = component.plane;
+        int planeWidth = component.planeWidth;
+        float[] out = new float[outWidth * outHeight];
+
+        for(int y = 0; y < outHeight; y++){
+            int top = row0[y] * planeWidth;
+            int bottom = row1[y] * planeWidth;
+            float wy = rowWeight[y];
+
+            for(int x = 0; x < outWidth; x++){
+                float wx = colWeight[x];
+                float t = (plane[top + col0[x]] & 0xFF) * (1 - wx) + (plane[top + col1[x]] & 0xFF) * wx;
+                float b = (plane[bottom + col0[x]] & 0xFF) * (1 - wx) + (plane[bottom + col1[x]] & 0xFF) * wx;
+                out[y * outWidth + x] = t * (1 - wy) + b * wy;
+            }
+        }
+        return out;
+    }
+
+
+    /**
+     * Works out which two samples of a component each pixel lies between along one axis, and how far between them.
+     *
+     * @param sampling      sampling factor of the component along the axis
+     * @param maxSampling   largest sampling factor of all the components along the axis
+     * @param numSamples    number of valid samples of the component along the axis
+     * @param index0        filled with the sample before each pixel
+     * @param index1        filled with the sample after each pixel
+     * @param weight        filled with the weight of the sample after each pixel
+     */
+    private static void interpolationWeights(int sampling, int maxSampling, int numSamples,
+                                             int[] index0, int[] index1, float[] weight){
+        for(int i = 0; i < index0.length; i++){
+            //position of the centre of the pixel in sample coordinates, where sample centres are at whole numbers
+            float position = (i + 0.5f) * sampling / maxSampling - 0.5f;
+            position = Math.max(0, Math.min(numSamples - 1, position));
+
+            index0[i] = (int) position;
+            index1[i] = Math.min(index0[i] + 1, numSamples - 1);
+            weight[i] = position - index0[i];
+        }
+    }
+
+
+    /**
+     * @param value     a colour value
+     * @return          the value rounded and clamped to 0-255
+     */
+    private static int clampInt(float value){
+        int rounded = Math.round(value);
+        return rounded < 0 ? 0 : (rounded > 255 ? 255 : rounded);
+    }
+}
@@ -0,0 +1,250 @@
+package utils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the grey, masked squares around the spheres that the highlight detection is run on, so that running the
+ * detection again with a different threshold, or comparing thresholds, only has to find the highlights and not read
+ * the spheres from the images again. The squares of all the spheres in an image are kept together for each image
+ * file along with the spheres they were read for, and the whole cache is emptied when squares for different spheres
+ * are put in it, as the user has moved a sphere and the old ones won't be needed again. An image that has changed on
+ * the disk since its squares were cached is read again. Like the {@link FrameCache}, the cache has a budget in bytes,
+ * and when it is full the squares of the least recently used images are evicted and just read again when needed.
+ *
+ * When the spheres are tracked in each frame, the squares of each image are around the spheres where they were found
+ * in that frame, which are kept along with them, and the cache is for the spheres the user set and how far they were
+ * tracked from.
+ *
+ * @see SphereROI
+ */
+public class SphereCache {
+
+    /**
+     * The squares around the spheres of one image.
+     */
+    private static class Entry{
+        /** Length of the image file when the squares were read */
+        private long length;
+
+        /** Last modified time of the image file when the squares were read */
+        private long modified;
+
+        /** Grey pixels of the square of each sphere, with the pixels outside the sphere set to 0 */
+        private byte[][] grey;
+
+        /** The [x, y, r] of each sphere in this image that the squares are around */
+        private int[][] spheres;
+
+        /** Number of bytes the squares take up */
+        private long bytes;
+    }
+
+    /** System property that sets the budget of the cache in megabytes, eg. -Drticreator.sphereCacheMB=512 */
+    public static final String BUDGET_PROPERTY = "rticreator.sphereCacheMB";
+
+    /** The cached squares keyed by the absolute file of their image, in least to most recently used order */
+    private LinkedHashMap<File, Entry> squares;
+
+    /** Maximum number of bytes of squares that the cache holds */
+    private long budget;
+
+    /** Number of bytes of squares currently in the cache */
+    private long usedBytes;
+
+    /** The [x, y, r] of each sphere that the cached squares were read for */
+    private int[][] spheres;
+
+    /** How far the spheres were tracked from where they were set in each image, 0 if they weren't */
+    private int trackWindow;
+
+    /** The singleton instance of this class */
+    private static SphereCache ourInstance = new SphereCache();
+
+    /**
+     * @return {@link SphereCache#ourInstance}
+     */
+    public static SphereCache getInstance() {
+        return ourInstance;
+    }
+
+
+    /**
+     * Creates a new, empty SphereCache. The budget is taken from the {@link SphereCache#BUDGET_PROPERTY} system
+     * property, or is an eighth of the maximum heap size if that isn't set.
+     */
+    private SphereCache(){
+        squares = new LinkedHashMap<>(16, 0.75f, true);
+
+        long defaultMB = Runtime.getRuntime().maxMemory() / 8 / (1024 * 1024);
+        budget = Long.getLong(BUDGET_PROPERTY, defaultMB) * 1024 * 1024;
+    }
+
+
+    /**
+     * Gets the grey squares around the spheres for the image, and where the spheres were in the image when they were
+     * read, if they have been cached for those spheres tracked the same distance. Both come from the same entry in
+     * one call, so the entry can't be evicted by another thread in between. The arrays of the squares that are
+     * returned are shared with the cache so must not be written to.
+     *
+     * @param file          image file
+     * @param spheres       the [x, y, r] of each sphere set by the user
+     * @param window        how far the spheres were tracked in each image, 0 if they weren't
+     * @param imageSpheres  the [x, y, r] of each sphere in the image is put in here if the squares are in the cache
+     * @return              the grey pixels of the square of each sphere, or null if they aren't in the cache
+     */
+    public synchronized byte[][] get(File file, int[][] spheres, int window, int[][] imageSpheres){
+        Entry entry = getEntry(file, spheres, window);
+        if(entry == null){return null;}
+
+        int[][] cached = copy(entry.spheres);
+        System.arraycopy(cached, 0, imageSpheres, 0, cached.length);
+        return entry.grey.clone();
+    }
+
+
+    /**
+     * @param file      image file
+     * @param spheres   the [x, y, r] of each sphere set by the user
+     * @param window    how far the spheres were tracked in each image, 0 if they weren't
+     * @return          the cached squares of the image, or null if they aren't in the cache or are out of date
+     */
+    private Entry getEntry(File file, int[][] spheres, int window){
+        if(!isSpheres(spheres, window)){return null;}
+
+        File key = file.getAbsoluteFile();
+        Entry entry = squares.get(key);
+        if(entry == null){return null;}
+
+        //the image has been changed since the squares were read
+        if(entry.length != key.length() || entry.modified != key.lastModified()){
+            squares.remove(key);
+            usedBytes -= entry.bytes;
+            return null;
+        }
+        return entry;
+    }
+
+
+    /**
+     * Puts the grey squares around the spheres in the image in the cache. If the spheres or the distance they were
+     * tracked are different to the ones the cached squares were read for, they are all evicted first, and then the
+     * least recently used images are evicted until the squares fit in the budget. Squares bigger than the whole
+     * budget aren't cached at all. The squares are kept rather than copied, so must not be changed once they have
+     * been put in the cache.
+     *
+     * @param file          image file
+     * @param spheres       the [x, y, r] of each sphere set by the user
+     * @param window        how far the spheres were tracked in each image, 0 if they weren't
+     * @param imageSpheres  the [x, y, r] of each sphere in this image that the squares are around
+     * @param grey          grey pixels of the square of each sphere
+     * @return              the squares that were put in the cache
+     */
+    public synchronized byte[][] put(File file, int[][] spheres, int window, int[][] imageSpheres, byte[][] grey){
+        if(!isSpheres(spheres, window)){
+            squares.clear();
+            usedBytes = 0;
+            this.spheres = copy(spheres);
+            trackWindow = window;
+        }
+
+        File key = file.getAbsoluteFile();
+        Entry entry = new Entry();
+        entry.length = key.length();
+        entry.modified = key.lastModified();
+        entry.grey = grey.clone();
+        entry.spheres = copy(imageSpheres);
+        for(byte[] square : grey){entry.bytes += square.length;}
+
+        Entry old = squares.remove(key);
+        if(old != null){usedBytes -= old.bytes;}
+        if(entry.bytes <= budget){
+            squares.put(key, entry);
+            usedBytes += entry.bytes;
+            evictToBudget();
+        }
+
+        return entry.grey.clone();
+    }
+
+
+    /**
+     * Evicts the squares of the least recently used images until the cache is within its budget.
+     */
+    private void evictToBudget(){
+        Iterator<Map.Entry<File, Entry>> iterator = squares.entrySet().iterator();
+        while(usedBytes > budget && iterator.hasNext()){
+            usedBytes -= iterator.next().getValue().bytes;
+            iterator.remove();
+        }
+    }
+
+
+    /**
+     * @param spheres   the [x, y, r] of some spheres
+     * @param window    how far the spheres were tracked in each image
+     * @return          whether they're the spheres the cached squares were read for
+     */
+    private boolean isSpheres(int[][] spheres, int window){
+        return this.spheres != null && Arrays.deepEquals(spheres, this.spheres) && window == trackWindow;
+    }
+
+
+    /**
+     * @param spheres   the [x, y, r] of some spheres
+     * @return          a deep copy of them
+     */
+    private static int[][] copy(int[][] spheres){
+        int[][] copy = new int[spheres.length][];
+        for(int i = 0; i < spheres.length; i++){copy[i] = spheres[i].clone();}
+        return copy;
+    }
+
+
+    /**
+     * Removes all the squares from the cache.
+     */
+    public synchronized void clear(){
+        squares.clear();
+        usedBytes = 0;
+        spheres = null;
+    }
+
+
+    /**
+     * Sets the maximum number of bytes of squares that the cache holds, evicting images if it is now over budget.
+     *
+     * @param budget    the new budget in bytes
+     */
+    public synchronized void setBudget(long budget){
+        this.budget = budget;
+        evictToBudget();
+    }
+
+
+    /**
+     * @return {@link SphereCache#budget}
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+
+    /**
+     * @return {@link SphereCache#usedBytes}
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+
+    /**
+     * @return the number of images with squares in the cache
+     */
+    public synchronized int size(){
+        return squares.size();
+    }
+}
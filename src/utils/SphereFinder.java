@@ -0,0 +1,464 @@
+package utils;
+
+import javafx.scene.image.Image;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the specular sphere in a frame, so the user doesn't have to drag the circle selector onto it by hand. The
+ * search is done in two steps:
+ *
+ * 1. The frame is shrunk so its longest side is about {@link SphereFinder#COARSE_SIZE} pixels and the strongest edges
+ *    in it are found. Each edge pixel votes for the centres of the circles of each radius it could be on, along the
+ *    direction of its gradient, and the centre with the most votes for the length of its circle is the best circle
+ *    for that radius. The radii are split between worker threads, each with its own votes.
+ * 2. The best few circles are scaled back up to the full frame, and each one is moved and resized in a small window
+ *    around where it was found to where the edge around it is strongest in the full size frame.
+ *
+ * The same search as the second step is used to track a sphere that drifts between the frames of a capture, with
+ * {@link SphereFinder#trackSphere(int[], int, int, int, int, int, int, int, int)}.
+ *
+ * @see ImageProcessing
+ */
+public class SphereFinder {
+
+    /** Longest side of the shrunk frame the circles are searched for in */
+    private static final int COARSE_SIZE = 400;
+
+    /** Smallest radius of the sphere in the shrunk frame */
+    private static final int MIN_COARSE_RADIUS = 6;
+
+    /** Fraction of the pixels of the shrunk frame with the strongest gradients that vote for circles */
+    private static final double EDGE_FRACTION = 0.08;
+
+    /** Number of circles from the shrunk frame that are refined in the full size frame */
+    private static final int NUM_CANDIDATES = 3;
+
+
+    /**
+     * The best circle for one radius in the shrunk frame.
+     */
+    private static class Candidate{
+        /** Centre and radius of the circle */
+        private int x, y, r;
+
+        /** Votes for the circle for the length of the circle */
+        private double score;
+    }
+
+
+    /**
+     * Finds the sphere in the image.
+     *
+     * @param image     the frame to find the sphere in
+     * @return          the [x, y, r] of the sphere in the image's pixels, or null if no circle could be found
+     */
+    public static int[] findSphere(Image image){
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+
+        //factor the image is shrunk by, so the longest side is about COARSE_SIZE
+        int factor = Math.max(1, (int) Math.ceil(Math.max(width, height) / (double) COARSE_SIZE));
+        int coarseW = width / factor;
+        int coarseH = height / factor;
+        int maxR = Math.min(coarseW, coarseH) / 2 - 1;
+        if(maxR < MIN_COARSE_RADIUS){return null;}
+
+        int[] grey = shrink(image, factor, coarseW, coarseH);
+        ArrayList<Candidate> candidates = houghCircles(grey, coarseW, coarseH, MIN_COARSE_RADIUS, maxR);
+        if(candidates.isEmpty()){return null;}
+
+        //refine the best circles that aren't the same sphere as a better one
+        int[] best = null;
+        double bestScore = -1;
+        ArrayList<Candidate> refined = new ArrayList<>();
+        for(Candidate candidate : candidates){
+            if(refined.size() == NUM_CANDIDATES){break;}
+            if(overlaps(candidate, refined)){continue;}
+            refined.add(candidate);
+
+            int x = candidate.x * factor + factor / 2;
+            int y = candidate.y * factor + factor / 2;
+            int r = candidate.r * factor;
+            double[] score = new double[1];
+            int[] circle = refine(image, x, y, r, factor + 1, score);
+            if(circle != null && score[0] > bestScore){
+                best = circle;
+                bestScore = score[0];
+            }
+        }
+
+        return best;
+    }
+
+
+    /**
+     * Shrinks the image by the given factor, averaging the grey values of each factor x factor block of pixels. The
+     * image is read a strip of rows at a time so the whole frame is never copied at once.
+     *
+     * @param image     image to shrink
+     * @param factor    width and height of the blocks that are averaged
+     * @param coarseW   width of the shrunk image
+     * @param coarseH   height of the shrunk image
+     * @return          grey values of the shrunk image in row major order
+     */
+    private static int[] shrink(Image image, int factor, int coarseW, int coarseH){
+        int[] grey = new int[coarseW * coarseH];
+        int stripW = coarseW * factor;
+        int[] strip = new int[stripW * factor];
+        int blockArea = factor * factor;
+
+        for(int cy = 0; cy < coarseH; cy++){
+            RasterConverter.readPixels(image, 0, cy * factor, stripW, factor, strip);
+
+            for(int cx = 0; cx < coarseW; cx++){
+                int sum = 0;
+                for(int y = 0; y < factor; y++){
+                    int start = y * stripW + cx * factor;
+                    for(int i = start; i < start + factor; i++){
+                        sum += luma(strip[i]);
+                    }
+                }
+                grey[cy * coarseW + cx] = sum / blockArea;
+            }
+        }
+
+        return grey;
+    }
+
+
+    /**
+     * Finds the best circle for each radius in the image with a Hough transform, where each of the strongest edge
+     * pixels votes for the centres a radius away from it either way along its gradient. The radii are split between
+     * worker threads that each have their own votes.
+     *
+     * @param grey      grey values of the image
+     * @param width     width of the image
+     * @param height    height of the image
+     * @param minR      smallest radius to look for
+     * @param maxR      largest radius to look for
+     * @return          the best circle for each radius, best first
+     */
+    private static ArrayList<Candidate> houghCircles(int[] grey, int width, int height, int minR, int maxR){
+        //sobel gradients of the inside pixels
+        float[] gx = new float[width * height];
+        float[] gy = new float[width * height];
+        float[] magnitude = new float[width * height];
+        for(int y = 1; y < height - 1; y++){
+            for(int x = 1; x < width - 1; x++){
+                int i = y * width + x;
+                float dx = (grey[i - width + 1] + 2 * grey[i + 1] + grey[i + width + 1]) -
+                            (grey[i - width - 1] + 2 * grey[i - 1] + grey[i + width - 1]);
+                float dy = (grey[i + width - 1] + 2 * grey[i + width] + grey[i + width + 1]) -
+                            (grey[i - width - 1] + 2 * grey[i - width] + grey[i - width + 1]);
+                gx[i] = dx;
+                gy[i] = dy;
+                magnitude[i] = (float) Math.sqrt(dx * dx + dy * dy);
+            }
+        }
+
+        //only the strongest edges vote
+        float[] sorted = magnitude.clone();
+        Arrays.sort(sorted);
+        float edgeThreshold = Math.max(1, sorted[(int) ((sorted.length - 1) * (1 - EDGE_FRACTION))]);
+
+        int numEdges = 0;
+        for(float m : magnitude){
+            if(m >= edgeThreshold){numEdges++;}
+        }
+        int[] edgeX = new int[numEdges];
+        int[] edgeY = new int[numEdges];
+        float[] edgeUX = new float[numEdges];
+        float[] edgeUY = new float[numEdges];
+        int e = 0;
+        for(int i = 0; i < magnitude.length; i++){
+            if(magnitude[i] >= edgeThreshold){
+                edgeX[e] = i % width;
+                edgeY[e] = i / width;
+                edgeUX[e] = gx[i] / magnitude[i];
+                edgeUY[e] = gy[i] / magnitude[i];
+                e++;
+            }
+        }
+
+        //split the radii into chunks for the worker threads
+        int numWorkers = Runtime.getRuntime().availableProcessors();
+        int numRadii = maxR - minR + 1;
+        int chunk = Math.max(1, (numRadii + numWorkers * 4 - 1) / (numWorkers * 4));
+        Candidate[] best = new Candidate[numRadii];
+
+        ThreadPoolExecutor executor = ImageLoader.createExecutor("sphere-finder", numWorkers);
+        for(int start = minR; start <= maxR; start += chunk){
+            final int firstR = start;
+            final int lastR = Math.min(maxR, start + chunk - 1);
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int[] votes = new int[width * height];
+                    for(int r = firstR; r <= lastR; r++){
+                        Arrays.fill(votes, 0);
+                        for(int i = 0; i < edgeX.length; i++){
+                            vote(votes, width, height, Math.round(edgeX[i] + r * edgeUX[i]),
+                                    Math.round(edgeY[i] + r * edgeUY[i]));
+                            vote(votes, width, height, Math.round(edgeX[i] - r * edgeUX[i]),
+                                    Math.round(edgeY[i] - r * edgeUY[i]));
+                        }
+                        best[r - minR] = bestCentre(votes, width, height, r);
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+        try{
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }catch(InterruptedException ex){
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        }
+
+        ArrayList<Candidate> candidates = new ArrayList<>();
+        for(Candidate candidate : best){
+            if(candidate != null){candidates.add(candidate);}
+        }
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                return Double.compare(b.score, a.score);
+            }
+        });
+        return candidates;
+    }
+
+
+    /**
+     * Adds a vote for the centre at (x, y) if it's in the image.
+     *
+     * @param votes     votes for each centre
+     * @param width     width of the image
+     * @param height    height of the image
+     * @param x         x of the centre
+     * @param y         y of the centre
+     */
+    private static void vote(int[] votes, int width, int height, int x, int y){
+        if(x >= 0 && x < width && y >= 0 && y < height){
+            votes[y * width + x]++;
+        }
+    }
+
+
+    /**
+     * Finds the centre with the most votes for circles of the given radius that fit inside the image. The votes of
+     * the 3 x 3 pixels around each centre are added together, as the votes for a circle are spread out a bit by
+     * rounding.
+     *
+     * @param votes     votes for each centre
+     * @param width     width of the image
+     * @param height    height of the image
+     * @param r         radius the votes are for
+     * @return          the best circle, or null if there were no votes for a circle inside the image
+     */
+    private static Candidate bestCentre(int[] votes, int width, int height, int r){
+        int bestVotes = 0;
+        int bestX = -1, bestY = -1;
+        for(int y = Math.max(1, r); y < Math.min(height - 1, height - r); y++){
+            for(int x = Math.max(1, r); x < Math.min(width - 1, width - r); x++){
+                int i = y * width + x;
+                if(votes[i] == 0){continue;}
+
+                int sum = votes[i - width - 1] + votes[i - width] + votes[i - width + 1] +
+                            votes[i - 1] + votes[i] + votes[i + 1] +
+                            votes[i + width - 1] + votes[i + width] + votes[i + width + 1];
+                if(sum > bestVotes){
+                    bestVotes = sum;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+        }
+        if(bestX < 0){return null;}
+
+        Candidate candidate = new Candidate();
+        candidate.x = bestX;
+        candidate.y = bestY;
+        candidate.r = r;
+        candidate.score = bestVotes / (2 * Math.PI * r);
+        return candidate;
+    }
+
+
+    /**
+     * @param candidate     a circle
+     * @param others        circles already chosen
+     * @return              whether the circle's centre is inside any of the others, so it's the same sphere
+     */
+    private static boolean overlaps(Candidate candidate, ArrayList<Candidate> others){
+        for(Candidate other : others){
+            int dx = candidate.x - other.x;
+            int dy = candidate.y - other.y;
+            if(dx * dx + dy * dy < other.r * other.r){return true;}
+        }
+        return false;
+    }
+
+
+    /**
+     * Moves and resizes a circle found in the shrunk image to where the edge around it is strongest in the full size
+     * image, looking within the given distance of it.
+     *
+     * @param image     the full size image
+     * @param x         x of the centre of the circle
+     * @param y         y of the centre of the circle
+     * @param r         radius of the circle
+     * @param window    how far the centre and radius can move
+     * @param score     the score of the refined circle is put in the first element
+     * @return          the [x, y, r] of the refined circle, or null if it doesn't fit in the image
+     */
+    private static int[] refine(Image image, int x, int y, int r, int window, double[] score){
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+
+        //read the box the circle can move around in, plus a pixel for the gradients
+        int extent = r + 2 * window + 2;
+        int left = Math.max(0, x - extent);
+        int top = Math.max(0, y - extent);
+        int boxW = Math.min(width, x + extent + 1) - left;
+        int boxH = Math.min(height, y + extent + 1) - top;
+        if(boxW <= 0 || boxH <= 0){return null;}
+
+        int[] box = new int[boxW * boxH];
+        RasterConverter.readPixels(image, left, top, boxW, boxH, box);
+        for(int i = 0; i < box.length; i++){box[i] = luma(box[i]);}
+
+        int[] circle = search(box, boxW, boxH, left, top, x, y, r, window, true, score);
+
+        //shrink the circle to fit in the image if it pokes out
+        circle[2] = Math.min(circle[2], Math.min(Math.min(circle[0], width - circle[0]),
+                                                    Math.min(circle[1], height - circle[1])));
+        if(circle[2] <= 0){return null;}
+
+        return circle;
+    }
+
+
+    /**
+     * Tracks a sphere that has drifted a little from where it was set, as happens when the camera or the sphere
+     * creeps over a long capture. The centre is moved to where the edge of the sphere is strongest within the given
+     * distance of where it was, keeping the same radius.
+     *
+     * @param argb      ARGB pixels of a box of the frame around the sphere, in row major order
+     * @param boxW      width of the box
+     * @param boxH      height of the box
+     * @param boxX      x of the top left of the box in the frame
+     * @param boxY      y of the top left of the box in the frame
+     * @param x         x pos of the sphere where it was set in the frame
+     * @param y         y pos of the sphere where it was set in the frame
+     * @param r         radius of the sphere
+     * @param window    how far the centre can move
+     * @return          the [x, y, r] of the sphere in this frame
+     */
+    public static int[] trackSphere(int[] argb, int boxW, int boxH, int boxX, int boxY, int x, int y, int r,
+                                    int window){
+        int[] grey = new int[boxW * boxH];
+        for(int i = 0; i < grey.length; i++){grey[i] = luma(argb[i]);}
+
+        return search(grey, boxW, boxH, boxX, boxY, x, y, r, window, false, new double[1]);
+    }
+
+
+    /**
+     * Searches for the circle with the strongest edge within the given distance of a circle. The search starts with
+     * big steps that are halved around the best circle so far until they are a pixel, so not every circle in the
+     * window has to be tried.
+     *
+     * @param grey          grey values of a box of the frame around the circle
+     * @param boxW          width of the box
+     * @param boxH          height of the box
+     * @param boxX          x of the top left of the box in the frame
+     * @param boxY          y of the top left of the box in the frame
+     * @param x             x of the centre of the circle in the frame
+     * @param y             y of the centre of the circle in the frame
+     * @param r             radius of the circle
+     * @param window        how far the centre, and radius if it can change, can move
+     * @param fitRadius     whether the radius can change as well as the centre
+     * @param score         the score of the best circle is put in the first element
+     * @return              the [x, y, r] of the best circle in the frame
+     */
+    private static int[] search(int[] grey, int boxW, int boxH, int boxX, int boxY, int x, int y, int r,
+                                int window, boolean fitRadius, double[] score){
+        int bestX = x, bestY = y, bestR = r;
+        double bestScore = edgeScore(grey, boxW, boxH, x - boxX, y - boxY, r);
+        int rSteps = fitRadius ? 1 : 0;
+        for(int step = Math.max(1, window / 2); step >= 1; step /= 2){
+            int centreX = bestX, centreY = bestY, centreR = bestR;
+            for(int dr = -step * rSteps; dr <= step * rSteps; dr += step){
+                for(int dy = -step; dy <= step; dy += step){
+                    for(int dx = -step; dx <= step; dx += step){
+                        int cx = centreX + dx, cy = centreY + dy, cr = centreR + dr;
+                        if(Math.abs(cx - x) > window || Math.abs(cy - y) > window || Math.abs(cr - r) > window){
+                            continue;
+                        }
+
+                        double s = edgeScore(grey, boxW, boxH, cx - boxX, cy - boxY, cr);
+                        if(s > bestScore){
+                            bestScore = s;
+                            bestX = cx;
+                            bestY = cy;
+                            bestR = cr;
+                        }
+                    }
+                }
+            }
+        }
+
+        score[0] = bestScore;
+        return new int[]{bestX, bestY, bestR};
+    }
+
+
+    /**
+     * Gives how strong the edge is along a circle, as the mean difference between the grey values just inside and
+     * just outside it. The difference isn't signed, so a dark sphere on a light background is found as well as a
+     * light one on a dark background.
+     *
+     * @param grey      grey values of the image
+     * @param width     width of the image
+     * @param height    height of the image
+     * @param x         x of the centre of the circle in the image
+     * @param y         y of the centre of the circle in the image
+     * @param r         radius of the circle
+     * @return          the mean difference across the edge, or -1 for a circle that doesn't fit in the image
+     */
+    private static double edgeScore(int[] grey, int width, int height, int x, int y, int r){
+        if(r < 2 || x - r - 2 < 0 || y - r - 2 < 0 || x + r + 2 >= width || y + r + 2 >= height){return -1;}
+
+        int numSamples = Math.max(64, Math.min(1440, (int) (2 * Math.PI * r)));
+        long total = 0;
+        for(int i = 0; i < numSamples; i++){
+            double theta = 2 * Math.PI * i / numSamples;
+            double cos = Math.cos(theta), sin = Math.sin(theta);
+
+            int inside = grey[(int) Math.round(y + (r - 1) * sin) * width + (int) Math.round(x + (r - 1) * cos)];
+            int outside = grey[(int) Math.round(y + (r + 1) * sin) * width + (int) Math.round(x + (r + 1) * cos)];
+            total += Math.abs(inside - outside);
+        }
+
+        return total / (double) numSamples;
+    }
+
+
+    /**
+     * @param argb      an ARGB pixel
+     * @return          its grey value from 0 to 255
+     */
+    private static int luma(int argb){
+        return (((argb >> 16) & 0xFF) * 77 + ((argb >> 8) & 0xFF) * 150 + (argb & 0xFF) * 29) >> 8;
+    }
+}
@@ -0,0 +1,140 @@
+package utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The pixels of the 2r x 2r square around a sphere that are inside the sphere, which are the only ones the highlight
+ * detection looks at. The rim of the sphere often catches light, so only pixels within 0.95 of the radius are kept.
+ * The pixels kept in each row of the square are one run either side of the centre, so the mask is just the
+ * [start, end) of each row, and the highlight detection loops over these runs rather than testing every pixel.
+ *
+ * The spheres are the same for every image in a project so the mask for each radius is made once and shared between
+ * all the threads and images, with {@link SphereMask#forRadius(int)}.
+ *
+ * @see SphereROI
+ * @see ComponentLabeller
+ * @see MaxTree
+ */
+public class SphereMask {
+
+    /** Fraction of the sphere's radius that is kept */
+    private static final double MASK_FRACTION = 0.95;
+
+    /** Most masks kept at once, there is one for each sphere in the project so this is only ever a few */
+    private static final int MAX_MASKS = 16;
+
+    /** The masks that have been made, which are given out again for the same radius */
+    private static final ConcurrentHashMap<Integer, SphereMask> masks = new ConcurrentHashMap<>();
+
+    /** Radius of the sphere */
+    private final int radius;
+
+    /** Width and height of the square around the sphere */
+    private final int size;
+
+    /** First x of each row of the square that is inside the sphere */
+    private final int[] rowStart;
+
+    /** One past the last x of each row of the square that is inside the sphere */
+    private final int[] rowEnd;
+
+    /** Number of pixels inside the sphere */
+    private final int area;
+
+
+    /**
+     * Gets the mask for a sphere of the given radius, only making a new one if there isn't one for that radius
+     * already. The masks of old spheres are thrown away once there are too many.
+     *
+     * @param radius    radius of the sphere
+     * @return          the mask for the sphere
+     */
+    public static SphereMask forRadius(int radius){
+        SphereMask mask = masks.get(radius);
+        if(mask == null){
+            if(masks.size() >= MAX_MASKS){masks.clear();}
+            mask = new SphereMask(radius);
+            SphereMask existing = masks.putIfAbsent(radius, mask);
+            if(existing != null){mask = existing;}
+        }
+        return mask;
+    }
+
+
+    /**
+     * Creates a new SphereMask. Keeps the same pixels as the original viewer did, those whose distance from the
+     * centre of the square is at most 0.95 of the radius, but works it out with integer squared distances.
+     *
+     * @param radius    radius of the sphere
+     */
+    private SphereMask(int radius){
+        this.radius = radius;
+        size = 2 * radius;
+
+        //largest squared distance from the centre that is kept, the same pixels as sqrt(d) <= 0.95 * r
+        double limit = MASK_FRACTION * radius;
+        long maxDistSq = (long) Math.floor(limit * limit);
+        while(Math.sqrt(maxDistSq + 1) <= limit){maxDistSq++;}
+        while(maxDistSq >= 0 && Math.sqrt(maxDistSq) > limit){maxDistSq--;}
+
+        rowStart = new int[size];
+        rowEnd = new int[size];
+        int total = 0;
+        for(int y = 0; y < size; y++){
+            long dy = y - radius;
+            long remaining = maxDistSq - dy * dy;
+            if(remaining < 0){continue;}
+
+            int halfWidth = (int) Math.sqrt(remaining);
+            while((long) (halfWidth + 1) * (halfWidth + 1) <= remaining){halfWidth++;}
+            while((long) halfWidth * halfWidth > remaining){halfWidth--;}
+
+            rowStart[y] = Math.max(0, radius - halfWidth);
+            rowEnd[y] = Math.min(size, radius + halfWidth + 1);
+            total += rowEnd[y] - rowStart[y];
+        }
+        area = total;
+    }
+
+
+    /**
+     * @return {@link SphereMask#radius}
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+
+    /**
+     * @return {@link SphereMask#size}
+     */
+    public int getSize() {
+        return size;
+    }
+
+
+    /**
+     * @param y     row of the square
+     * @return      the first x in the row that is inside the sphere
+     */
+    public int getRowStart(int y) {
+        return rowStart[y];
+    }
+
+
+    /**
+     * @param y     row of the square
+     * @return      one past the last x in the row that is inside the sphere, equal to the start if none are
+     */
+    public int getRowEnd(int y) {
+        return rowEnd[y];
+    }
+
+
+    /**
+     * @return {@link SphereMask#area}
+     */
+    public int getArea() {
+        return area;
+    }
+}
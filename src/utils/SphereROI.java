@@ -0,0 +1,166 @@
+package utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * The square around a specular sphere in a frame, as the grey bytes that the highlight detection thresholds. Reading
+ * the sphere is done in one pass over just the pixels inside the sphere, given by its {@link SphereMask}: each pixel
+ * is converted to grey as it goes and the pixels outside the sphere are left black, so the cost of detecting a
+ * highlight depends on the size of the sphere rather than the size of the frame. The square is read from the pixels
+ * of a box around the sphere that has already been decoded from the image file.
+ *
+ * The arrays are kept and reused for the next frame, so each thread doing highlight detection should get its own
+ * with {@link SphereROI#forThread()}.
+ *
+ * @see ImageProcessing#findHighlight(byte[], int, int, int, SphereMask)
+ *
+ * @author Jed Mills
+ */
+public class SphereROI {
+
+    /**
+     * Contribution of each 8 bit sRGB red, green and blue value to the grey value, in 16.16 fixed point. These
+     * linearise the sRGB values and weight them by the D50 luminance of the sRGB primaries, which gives the same
+     * grey values as a ColorConvertOp to the CS_GRAY colour space.
+     */
+    private static final int[] RED_LUMA = new int[256];
+    private static final int[] GREEN_LUMA = new int[256];
+    private static final int[] BLUE_LUMA = new int[256];
+
+    static{
+        for(int i = 0; i < 256; i++){
+            double c = i / 255.0;
+            double linear = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+            RED_LUMA[i] = (int) Math.round(0.2225 * linear * 255 * 65536);
+            GREEN_LUMA[i] = (int) Math.round(0.7169 * linear * 255 * 65536);
+            BLUE_LUMA[i] = (int) Math.round(0.0606 * linear * 255 * 65536);
+        }
+    }
+
+    /** The SphereROI of each thread */
+    private static final ThreadLocal<SphereROI> threadROIs = new ThreadLocal<SphereROI>(){
+        @Override
+        protected SphereROI initialValue() {
+            return new SphereROI();
+        }
+    };
+
+    /** Width and height of the square around the sphere the arrays are currently sized for */
+    private int size = -1;
+
+    /** The pixels of the square that are inside the sphere the arrays are currently sized for */
+    private SphereMask mask;
+
+    /** ARGB pixels of the square, as read from the frame */
+    private int[] argb;
+
+    /** Grey value of each pixel in the square, the pixels outside the sphere are never written so are always 0 */
+    private byte[] grey;
+
+    /** TYPE_BYTE_GRAY image that uses the {@link SphereROI#grey} array for its pixels */
+    private BufferedImage greyImage;
+
+
+    /**
+     * @return the SphereROI for the calling thread
+     */
+    public static SphereROI forThread(){
+        return threadROIs.get();
+    }
+
+
+    /**
+     * Creates a new SphereROI.
+     */
+    private SphereROI(){}
+
+
+    /**
+     * Reads the square around the sphere from ARGB pixels of a box of the frame that has already been read, with the
+     * pixels outside the sphere cleared. The returned image is reused by the next call on this SphereROI.
+     *
+     * @param box       ARGB pixels of the box in row major order, which the square must be inside
+     * @param boxW      width of the box
+     * @param boxX      x of the top left of the box in the frame
+     * @param boxY      y of the top left of the box in the frame
+     * @param sphereX   x pos of the sphere in the frame
+     * @param sphereY   y pos of the sphere in the frame
+     * @param sphereR   radius of the sphere in the frame
+     * @return          the grey image of the square around the sphere
+     */
+    public BufferedImage read(int[] box, int boxW, int boxX, int boxY, int sphereX, int sphereY, int sphereR){
+        setSphereRadius(sphereR);
+
+        int left = sphereX - sphereR - boxX;
+        int top = sphereY - sphereR - boxY;
+        for(int y = 0; y < size; y++){
+            int start = mask.getRowStart(y);
+            int end = mask.getRowEnd(y);
+            if(end > start){
+                System.arraycopy(box, (top + y) * boxW + left + start, argb, y * size + start, end - start);
+            }
+        }
+        toGrey();
+
+        return greyImage;
+    }
+
+
+    /**
+     * Sizes the arrays and gets the mask for a sphere of the given radius, if they aren't already.
+     *
+     * @param sphereR   radius of the sphere
+     */
+    private void setSphereRadius(int sphereR){
+        if(mask != null && mask.getRadius() == sphereR){return;}
+
+        mask = SphereMask.forRadius(sphereR);
+        size = mask.getSize();
+        argb = new int[size * size];
+        grey = new byte[size * size];
+        greyImage = wrapGrey(grey, size);
+    }
+
+
+    /**
+     * @return the mask of the sphere last read, whose pixels are the only ones set in the grey image
+     */
+    public SphereMask getMask() {
+        return mask;
+    }
+
+
+    /**
+     * Creates a TYPE_BYTE_GRAY image whose pixels are the given array, so writing to the array changes the image.
+     *
+     * @param pixels    grey pixels of the image, in row major order
+     * @param size      width and height of the image
+     * @return          the image
+     */
+    private static BufferedImage wrapGrey(byte[] pixels, int size){
+        ColorModel greyModel = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY).getColorModel();
+        WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(pixels, pixels.length),
+                                                                size, size, size, 1, new int[]{0}, null);
+        return new BufferedImage(greyModel, raster, false, null);
+    }
+
+
+    /**
+     * Converts the pixels in {@link SphereROI#argb} that are inside the sphere to grey. The pixels outside it
+     * are skipped, they are left as 0 in the grey array from when it was made.
+     */
+    private void toGrey(){
+        for(int y = 0; y < size; y++){
+            int end = y * size + mask.getRowEnd(y);
+            for(int i = y * size + mask.getRowStart(y); i < end; i++){
+                int pixel = argb[i];
+                int luma = RED_LUMA[(pixel >> 16) & 0xFF] + GREEN_LUMA[(pixel >> 8) & 0xFF] + BLUE_LUMA[pixel & 0xFF];
+                grey[i] = (byte) ((luma + 32768) >> 16);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package utils;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent store of image thumbnails on the disk, so that reopening the same images (eg. after pressing the back
+ * button, or starting a new project with the same images) doesn't mean decoding all the full images again. Each
+ * image gets its own folder in the store, named from a hash of its absolute path and the thumbnail size, and the
+ * thumbnail in it is named from the size and last modified time of the image. If the image changes on the disk the
+ * name no longer matches, so the old thumbnail is deleted and a new one is made.
+ *
+ * Thumbnails are touched whenever they are used, and the first time the store is used in each run the entries that
+ * haven't been used for {@link ThumbnailStore#MAX_AGE_PROPERTY} days are deleted on a background thread, so the
+ * thumbnails of images that have been moved or deleted don't build up forever.
+ */
+public class ThumbnailStore {
+
+    /** System property that sets the folder for the store, eg. -Drticreator.thumbnailDir=/tmp/thumbs */
+    public static final String DIR_PROPERTY = "rticreator.thumbnailDir";
+
+    /** System property that sets how many days an unused thumbnail is kept for, eg. -Drticreator.thumbnailMaxDays=7 */
+    public static final String MAX_AGE_PROPERTY = "rticreator.thumbnailMaxDays";
+
+    /** Number of days an unused thumbnail is kept for if the property isn't set */
+    private static final long DEFAULT_MAX_AGE_DAYS = 30;
+
+    /** Folder that all the thumbnails are stored in */
+    private File directory;
+
+    /** How long in milliseconds a thumbnail that hasn't been used is kept for */
+    private long maxAge;
+
+    /** Set once the old entries have been pruned in this run */
+    private final AtomicBoolean pruned = new AtomicBoolean(false);
+
+    /** The singleton instance of this class */
+    private static ThumbnailStore ourInstance = new ThumbnailStore();
+
+    /**
+     * @return {@link ThumbnailStore#ourInstance}
+     */
+    public static ThumbnailStore getInstance() {
+        return ourInstance;
+    }
+
+
+    /**
+     * Creates a new ThumbnailStore in the folder given by the {@link ThumbnailStore#DIR_PROPERTY} system property,
+     * or in the .rticreator/thumbnails folder in the user's home directory if that isn't set.
+     */
+    private ThumbnailStore() {
+        String defaultDir = System.getProperty("user.home") + File.separator + ".rticreator" +
+                                File.separator + "thumbnails";
+        directory = new File(System.getProperty(DIR_PROPERTY, defaultDir));
+        maxAge = TimeUnit.DAYS.toMillis(Long.getLong(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE_DAYS));
+    }
+
+
+    /**
+     * Gets the stored thumbnail of the given image, if there is one and the image hasn't changed since it was made.
+     * Any out of date thumbnails for the image are deleted.
+     *
+     * @param imageFile         the full size image file
+     * @param thumbnailSize     size of the box the thumbnail fits in
+     * @return                  the thumbnail, or null if there isn't an up to date one
+     */
+    public Image get(File imageFile, int thumbnailSize){
+        pruneOnce();
+        File entryDir = entryDirectory(imageFile, thumbnailSize);
+        File thumbnailFile = new File(entryDir, entryName(imageFile));
+
+        if(thumbnailFile.isFile()){
+            Image thumbnail = new Image("file:" + thumbnailFile.getAbsolutePath());
+            if(!thumbnail.isError()){
+                //so it isn't pruned while it's still being used
+                thumbnailFile.setLastModified(System.currentTimeMillis());
+                return thumbnail;
+            }
+        }
+
+        //either there's no thumbnail or the image has changed since it was made, so clear out the old ones
+        deleteStale(entryDir, null);
+        return null;
+    }
+
+
+    /**
+     * Stores the thumbnail of the given image, replacing any out of date thumbnails for it.
+     *
+     * @param imageFile         the full size image file
+     * @param thumbnailSize     size of the box the thumbnail fits in
+     * @param thumbnail         the thumbnail to store
+     */
+    public void put(File imageFile, int thumbnailSize, Image thumbnail){
+        pruneOnce();
+        File entryDir = entryDirectory(imageFile, thumbnailSize);
+        if(!entryDir.isDirectory() && !entryDir.mkdirs()){return;}
+
+        String name = entryName(imageFile);
+        File tempFile = null;
+        try{
+            //write to a temporary file first so a half written thumbnail is never read
+            tempFile = File.createTempFile("thumb", ".tmp", entryDir);
+            ImageIO.write(SwingFXUtils.fromFXImage(thumbnail, null), "png", tempFile);
+            Files.move(tempFile.toPath(), new File(entryDir, name).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        }catch(IOException e){
+            e.printStackTrace();
+            if(tempFile != null){tempFile.delete();}
+        }
+
+        deleteStale(entryDir, name);
+    }
+
+
+    /**
+     * Starts pruning the store on a background thread the first time this is called.
+     */
+    private void pruneOnce(){
+        if(!pruned.compareAndSet(false, true)){return;}
+
+        Thread pruner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prune(System.currentTimeMillis() - maxAge);
+            }
+        }, "thumbnail-pruner");
+        pruner.setDaemon(true);
+        pruner.start();
+    }
+
+
+    /**
+     * Deletes the entries of the store whose files were all last used before the given time, along with their
+     * folders.
+     *
+     * @param before    time in milliseconds that entries not used since are deleted
+     */
+    void prune(long before){
+        File[] entryDirs = directory.listFiles();
+        if(entryDirs == null){return;}
+
+        for(File entryDir : entryDirs){
+            if(!entryDir.isDirectory()){continue;}
+            File[] files = entryDir.listFiles();
+            if(files == null){continue;}
+
+            long lastUsed = 0;
+            for(File file : files){lastUsed = Math.max(lastUsed, file.lastModified());}
+            if(lastUsed < before){
+                deleteStale(entryDir, null);
+                entryDir.delete();
+            }
+        }
+    }
+
+
+    /**
+     * Deletes all the files in the given entry folder apart from the one with the given name.
+     *
+     * @param entryDir      entry folder for an image
+     * @param keep          name of the file to keep, or null to delete them all
+     */
+    private void deleteStale(File entryDir, String keep){
+        File[] files = entryDir.listFiles();
+        if(files == null){return;}
+
+        for(File file : files){
+            if(!file.getName().equals(keep)){file.delete();}
+        }
+    }
+
+
+    /**
+     * @param imageFile         the full size image file
+     * @param thumbnailSize     size of the box the thumbnail fits in
+     * @return                  the folder the thumbnails of the image are stored in
+     */
+    private File entryDirectory(File imageFile, int thumbnailSize){
+        return new File(directory, hash(imageFile.getAbsolutePath() + "|" + thumbnailSize));
+    }
+
+
+    /**
+     * @param imageFile     the full size image file
+     * @return              the name of the thumbnail file, which changes whenever the image file changes
+     */
+    private static String entryName(File imageFile){
+        return imageFile.length() + "_" + imageFile.lastModified() + ".png";
+    }
+
+
+    /**
+     * @param key   string to hash
+     * @return      the SHA-1 hash of the string as hex
+     */
+    private static String hash(String key){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder builder = new StringBuilder();
+            for(byte b : bytes){
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+
+        }catch(NoSuchAlgorithmException e){
+            //every java platform has to have SHA-1, so this won't happen
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -18,12 +18,9 @@ import main.Main;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Set;
 
 /**
@@ -117,79 +114,29 @@ public class Utils {
 
 
     /**
-     * Reads an LP file and converts all the information into a mpa of image names and the light vector for that image.
+     * Reads an LP file and converts all the information into a set of image names and the light vector for that image,
+     * in the order the images are in the file. The file is parsed by {@link LPReader}, so image names and paths can
+     * have spaces in them and blank lines anywhere in the file are skipped.
      *
      * @param lpFile            file to read
-     * @return                  map of images and their light vector
+     * @return                  the images and their light vector, in the order they are in the file
      * @throws IOException      if there's an error accessing the lp file.
-     * @throws LPException
+     * @throws LPException      if there's an error parsing the lp file
      */
-    public static HashMap<String, Vector3f> readLPFile(File lpFile) throws IOException, LPException{
+    public static LightSet readLPFile(File lpFile) throws IOException, LPException{
         //check the file actually exists and is an  .lp file
         if(lpFile.isDirectory()){throw new RuntimeException("LP file is directory.");}
         if(!lpFile.getName().endsWith(".lp")){throw new RuntimeException("LP file does not end with '.lp'.");}
 
-        BufferedReader reader = new BufferedReader(new FileReader(lpFile));
-        String line = reader.readLine();
-        int currentLine = 1;
-
-        //check the first line contains a number for the number of images
-        int numImages;
-        try{
-            numImages = Integer.parseInt(line);
-        }catch(NumberFormatException e){
-            throw new LPException("File did not contain number of images on line 1.");
-        }
-
-        //will store all the image names an light positions
-        HashMap<String, Vector3f> lpData = new HashMap<>();
-        int numLPData = 0;
-        line = reader.readLine();
-        currentLine ++;
-
-        //read through the rest of the lines and get the file name, and light vector from them
-        String[] lineItems;
-        String fileName;
-        float lightX, lightY, lightZ;
-        while(numLPData < numImages){
-            while(line.equals("")){
-                currentLine ++;
-                line = reader.readLine();
-            }
-
-            lineItems = line.split("\\s+");
-
-            //if there's a space in the directory path, this will mean more than 3 items on the line, and
-            //we don't want spaces anywhere in the program as the fitters can't deal with them
-            if(lineItems.length > 4){
-                throw new LPException("Error parsing lp data on line: " + currentLine + ", check there are no " +
-                                        "spaces in the specified file paths or names.");
-            }
-
-            try{
-                //get the info
-                fileName = lineItems[0];
-                lightX = Float.parseFloat(lineItems[1]);
-                lightY = Float.parseFloat(lineItems[2]);
-                lightZ = Float.parseFloat(lineItems[3]);
-
-            }catch(NumberFormatException|IndexOutOfBoundsException e){
-                e.printStackTrace();
-                throw new LPException("Error parsing lp data on line: " + currentLine);
+        try(LPReader reader = new LPReader(lpFile)){
+            //will store all the image names an light positions, the number in the file could be wrong so don't
+            //trust it too far
+            LightSet lpData = new LightSet(Math.min(reader.getNumImages(), 4096));
+            while(reader.next()){
+                lpData.put(reader.getName(), reader.getX(), reader.getY(), reader.getZ());
             }
-
-            //put the info in the map
-            lpData.put(fileName, new Vector3f(lightX, lightY, lightZ));
-            numLPData ++;
-
-            line = reader.readLine();
-            currentLine ++;
-
-            if(line == null){break;}
+            return lpData;
         }
-
-        reader.close();
-        return lpData;
     }
 
 
@@ -325,23 +272,13 @@ public class Utils {
 
     /**
      * Turns a JavaFX image int oa buffered image. Useful for te highlight detection, which was all originally
-     * written for BufferedImages.
+     * written for BufferedImages. The pixels are bulk copied by the {@link RasterConverter}.
      *
      * @param image     image to convert
      * @return          new buferred image
      */
     public static BufferedImage fxImageToBufferedJPEG(Image image){
-        BufferedImage bufImg = SwingFXUtils.fromFXImage(image, null);
-        BufferedImage newImg = new BufferedImage(bufImg.getWidth(), bufImg.getHeight(), BufferedImage.TYPE_INT_RGB);
-
-        //basically just copy all the pixels over
-        for(int x = 0; x < bufImg.getWidth(); x++){
-            for(int y = 0; y < bufImg.getHeight(); y++){
-                newImg.setRGB(x, y, bufImg.getRGB(x, y));
-            }
-        }
-
-        return newImg;
+        return RasterConverter.toBufferedImage(image);
     }
 
 
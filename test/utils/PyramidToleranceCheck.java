@@ -0,0 +1,122 @@
+package utils;
+
+import java.util.Random;
+
+/**
+ * Measures how far the light vectors found by
+ * {@link ImageProcessing#findHighlightPyramid(byte[], int, int, int, SphereMask, int)} are from the ones found by
+ * {@link ImageProcessing#findHighlight(byte[], int, int, int, SphereMask)}, which is the tolerance given in their docs.
+ * Synthetic spheres of radius 300-1000 are made with one, two or three highlights of radius 5 and up on a noisy
+ * background, and each is searched both ways at the scale from {@link ImageProcessing#pyramidScale(int)}. Run it as a
+ * normal java program, eg:
+ *
+ *     java -cp out:test-out utils.PyramidToleranceCheck
+ *
+ * Prints, for each number of highlights, how often the same highlight was chosen and the largest angle between the
+ * light vectors when it was.
+ */
+public class PyramidToleranceCheck {
+
+    /** Threshold the highlights are found with */
+    private static final int THRESHOLD = 200;
+
+    /** Number of spheres made for each number of highlights */
+    private static final int SPHERES = 300;
+
+    /** Seed of the random spheres, so every run measures the same ones */
+    private static final long SEED = 20180601L;
+
+
+    /**
+     * Runs the check.
+     *
+     * @param args  not used
+     */
+    public static void main(String[] args){
+        Random random = new Random(SEED);
+
+        System.out.println("Pyramid search against the full size search, " + SPHERES + " spheres each:");
+        for(int numHighlights = 1; numHighlights <= 3; numHighlights++){
+            int same = 0;
+            double maxAngle = 0;
+            for(int i = 0; i < SPHERES; i++){
+                int r = 300 + random.nextInt(701);
+                SphereMask mask = SphereMask.forRadius(r);
+                byte[] square = createSphere(random, mask, numHighlights);
+                int size = mask.getSize();
+
+                float[] full = ImageProcessing.findHighlight(square, size, size, THRESHOLD, mask);
+                float[] pyramid = ImageProcessing.findHighlightPyramid(square, size, size, THRESHOLD, mask,
+                                                                        ImageProcessing.pyramidScale(r));
+                if(full[0] < 0 || pyramid[0] < 0){continue;}
+
+                //the same highlight was chosen if the centres are inside each other's highlight
+                double distance = Math.hypot(full[0] - pyramid[0], full[1] - pyramid[1]);
+                if(distance > Math.max(1, full[2])){continue;}
+
+                same++;
+                float[] ball = {r, r, r};
+                maxAngle = Math.max(maxAngle, angle(ImageProcessing.calculateLightPosition(ball, full),
+                                                    ImageProcessing.calculateLightPosition(ball, pyramid)));
+            }
+
+            System.out.printf("  %d highlight(s): same highlight in %5.1f%% of spheres, largest angle %.3f degrees%n",
+                                numHighlights, 100.0 * same / SPHERES, maxAngle);
+        }
+    }
+
+
+    /**
+     * Makes the grey square around a sphere, with noise inside the sphere, the pixels outside it left at 0, and some
+     * bright round highlights with soft edges.
+     *
+     * @param random            where the noise and highlights come from
+     * @param mask              mask of the sphere
+     * @param numHighlights     number of highlights to put on the sphere
+     * @return                  the grey pixels of the square
+     */
+    private static byte[] createSphere(Random random, SphereMask mask, int numHighlights){
+        int size = mask.getSize();
+        int r = mask.getRadius();
+        byte[] square = new byte[size * size];
+        for(int y = 0; y < size; y++){
+            for(int x = mask.getRowStart(y); x < mask.getRowEnd(y); x++){
+                square[y * size + x] = (byte) (40 + random.nextInt(100));
+            }
+        }
+
+        for(int h = 0; h < numHighlights; h++){
+            int hr = 5 + random.nextInt(36);
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double along = random.nextDouble() * 0.8 * r;
+            int cx = (int) Math.round(r + along * Math.cos(angle));
+            int cy = (int) Math.round(r + along * Math.sin(angle));
+
+            //the highlight is brightest in the middle and fades out over its last few pixels
+            for(int y = Math.max(0, cy - hr - 3); y < Math.min(size, cy + hr + 4); y++){
+                for(int x = Math.max(mask.getRowStart(y), cx - hr - 3); x < Math.min(mask.getRowEnd(y), cx + hr + 4);
+                        x++){
+                    double d = Math.hypot(x - cx, y - cy);
+                    int value = d <= hr ? 255 : (int) (255 - 40 * (d - hr));
+                    int old = square[y * size + x] & 0xFF;
+                    if(value > old){square[y * size + x] = (byte) value;}
+                }
+            }
+        }
+        return square;
+    }
+
+
+    /**
+     * @param a     a vector
+     * @param b     another vector
+     * @return      the angle between them in degrees
+     */
+    private static double angle(float[] a, float[] b){
+        double dot = a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+        double lengths = Math.sqrt(a[0] * a[0] + a[1] * a[1] + a[2] * a[2]) *
+                            Math.sqrt(b[0] * b[0] + b[1] * b[1] + b[2] * b[2]);
+        if(lengths == 0){return 0;}
+        return Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, dot / lengths))));
+    }
+}
@@ -0,0 +1,126 @@
+package utils;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Benchmark comparing the old per-pixel conversion of a JavaFX image to a BufferedImage with the bulk copy of the
+ * {@link RasterConverter}, on frames the size of a 24MP camera. Run it as a normal java program, eg:
+ *
+ *     java -cp out:test-out utils.RasterConversionBenchmark
+ *
+ * Prints the average time per frame of each method.
+ */
+public class RasterConversionBenchmark {
+
+    /** Width of a 24MP frame */
+    private static final int WIDTH = 6000;
+
+    /** Height of a 24MP frame */
+    private static final int HEIGHT = 4000;
+
+    /** Number of frames converted with each method before timing, so the JIT has compiled everything */
+    private static final int WARMUP = 3;
+
+    /** Number of frames converted with each method that are timed */
+    private static final int RUNS = 10;
+
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args  not used
+     */
+    public static void main(String[] args){
+        WritableImage frame = createFrame();
+
+        //check the methods actually give the same pixels before timing them
+        BufferedImage expected = perPixelConversion(frame);
+        BufferedImage actual = RasterConverter.toBufferedImage(frame);
+        for(int y = 0; y < HEIGHT; y += 97){
+            for(int x = 0; x < WIDTH; x += 89){
+                if(expected.getRGB(x, y) != actual.getRGB(x, y)){
+                    throw new IllegalStateException("Pixels differ at " + x + ", " + y);
+                }
+            }
+        }
+
+        System.out.println("Converting " + WIDTH + "x" + HEIGHT + " frames, average of " + RUNS + " runs:");
+
+        double perPixel = time(new Runnable() {
+            @Override
+            public void run() {
+                perPixelConversion(frame);
+            }
+        });
+        System.out.printf("  per pixel getRGB/setRGB:   %8.1f ms%n", perPixel);
+
+        double bulk = time(new Runnable() {
+            @Override
+            public void run() {
+                RasterConverter.toBufferedImage(frame);
+            }
+        });
+        System.out.printf("  bulk getPixels:            %8.1f ms  (%.1fx)%n", bulk, perPixel / bulk);
+
+        double pooled = time(new Runnable() {
+            @Override
+            public void run() {
+                RasterConverter.release(RasterConverter.acquire(frame));
+            }
+        });
+        System.out.printf("  bulk getPixels, pooled:    %8.1f ms  (%.1fx)%n", pooled, perPixel / pooled);
+        RasterConverter.clearPool();
+    }
+
+
+    /**
+     * @return a 24MP frame filled with a gradient
+     */
+    private static WritableImage createFrame(){
+        int[] row = new int[WIDTH];
+        WritableImage frame = new WritableImage(WIDTH, HEIGHT);
+        for(int y = 0; y < HEIGHT; y++){
+            for(int x = 0; x < WIDTH; x++){
+                row[x] = 0xFF000000 | ((x & 0xFF) << 16) | ((y & 0xFF) << 8) | ((x + y) & 0xFF);
+            }
+            frame.getPixelWriter().setPixels(0, y, WIDTH, 1, PixelFormat.getIntArgbInstance(), row, 0, WIDTH);
+        }
+        return frame;
+    }
+
+
+    /**
+     * The conversion that Utils.fxImageToBufferedJPEG used to do, for comparison.
+     *
+     * @param image     image to convert
+     * @return          the converted image
+     */
+    private static BufferedImage perPixelConversion(WritableImage image){
+        BufferedImage bufImg = SwingFXUtils.fromFXImage(image, null);
+        BufferedImage newImg = new BufferedImage(bufImg.getWidth(), bufImg.getHeight(), BufferedImage.TYPE_INT_RGB);
+
+        for(int x = 0; x < bufImg.getWidth(); x++){
+            for(int y = 0; y < bufImg.getHeight(); y++){
+                newImg.setRGB(x, y, bufImg.getRGB(x, y));
+            }
+        }
+        return newImg;
+    }
+
+
+    /**
+     * @param conversion    conversion to time
+     * @return              average time of the conversion in milliseconds
+     */
+    private static double time(Runnable conversion){
+        for(int i = 0; i < WARMUP; i++){conversion.run();}
+
+        long start = System.nanoTime();
+        for(int i = 0; i < RUNS; i++){conversion.run();}
+        return (System.nanoTime() - start) / 1e6 / RUNS;
+    }
+}